@@ -0,0 +1,186 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import net.sourceforge.pmd.RuleSets;
+
+/**
+ * Unit tests for {@link AnalysisQueue}.
+ *
+ * @author Philip Graf
+ */
+public class AnalysisQueueTest {
+
+    private static final int MAX_FILES = 100;
+
+    private final RuleSets ruleSets = new RuleSets();
+
+    /**
+     * Verifies that repeated requests for the same file are coalesced into a single analysis.
+     */
+    @Test
+    public void addCoalescesRequests() {
+        final IFile file = mock(IFile.class);
+        final AnalysisQueue queue = newQueue();
+
+        queue.add(ImmutableList.of(file), ruleSets, 100);
+        queue.add(ImmutableList.of(file), ruleSets, 200);
+        queue.add(ImmutableList.of(file), ruleSets, 300);
+
+        assertEquals("Number of pending files", 1, queue.size());
+        assertEquals("Due files", ImmutableList.of(file), queue.takeDueFiles(300, MAX_FILES).get(ruleSets));
+        assertEquals("Number of pending files", 0, queue.size());
+    }
+
+    /**
+     * Verifies that a file is not analyzed before its quiet period has passed and that a new request restarts the
+     * quiet period.
+     */
+    @Test
+    public void takeDueFilesWaitsForQuietPeriod() {
+        final IFile file = mock(IFile.class);
+        final AnalysisQueue queue = newQueue();
+
+        queue.add(ImmutableList.of(file), ruleSets, 100);
+        queue.add(ImmutableList.of(file), ruleSets, 200);
+
+        assertTrue("No file should be due before the quiet period has passed", queue.takeDueFiles(150, MAX_FILES).isEmpty());
+        assertEquals("Next due time", Optional.of(200L), queue.getNextDueTime());
+        assertEquals("Due files", ImmutableList.of(file), queue.takeDueFiles(200, MAX_FILES).get(ruleSets));
+        assertFalse("Next due time of empty queue", queue.getNextDueTime().isPresent());
+    }
+
+    /**
+     * Verifies that a file that is requested while it is being analyzed is analyzed exactly once more after the
+     * running analysis has completed, and that the result of the running analysis is discarded.
+     */
+    @Test
+    public void requestWhileRunningMakesAnalysisStale() {
+        final IFile file = mock(IFile.class);
+        final AnalysisQueue queue = newQueue();
+        queue.add(ImmutableList.of(file), ruleSets, 0);
+        queue.takeDueFiles(0, MAX_FILES);
+
+        queue.add(ImmutableList.of(file), ruleSets, 10);
+        queue.add(ImmutableList.of(file), ruleSets, 20);
+
+        assertTrue("A running file must not be taken again", queue.takeDueFiles(100, MAX_FILES).isEmpty());
+        assertFalse("The result of a stale analysis should be discarded", queue.complete(file));
+        final Map<RuleSets, List<IFile>> rerun = queue.takeDueFiles(100, MAX_FILES);
+        assertEquals("Rerun files", ImmutableList.of(file), rerun.get(ruleSets));
+        assertTrue("The result of the rerun should be kept", queue.complete(file));
+        assertTrue("The file should be analyzed only once more", queue.takeDueFiles(100, MAX_FILES).isEmpty());
+    }
+
+    /**
+     * Verifies that the due files are grouped by the rule sets they have been requested with.
+     */
+    @Test
+    public void takeDueFilesGroupsByRuleSets() {
+        final IFile file1 = mock(IFile.class);
+        final IFile file2 = mock(IFile.class);
+        final IFile file3 = mock(IFile.class);
+        final RuleSets otherRuleSets = new RuleSets();
+        final AnalysisQueue queue = newQueue();
+
+        queue.add(ImmutableList.of(file1, file2), ruleSets, 0);
+        queue.add(ImmutableList.of(file3), otherRuleSets, 0);
+
+        final Map<RuleSets, List<IFile>> files = queue.takeDueFiles(0, MAX_FILES);
+        assertEquals("Number of groups", 2, files.size());
+        assertEquals("Files of first rule sets", ImmutableList.of(file1, file2), files.get(ruleSets));
+        assertEquals("Files of second rule sets", ImmutableList.of(file3), files.get(otherRuleSets));
+    }
+
+    /**
+     * Verifies that files whose analysis failed or was canceled can be analyzed again.
+     */
+    @Test
+    public void completeAllReleasesFiles() {
+        final IFile file = mock(IFile.class);
+        final AnalysisQueue queue = newQueue();
+        queue.add(ImmutableList.of(file), ruleSets, 0);
+        queue.takeDueFiles(0, MAX_FILES);
+
+        queue.completeAll(ImmutableList.of(file));
+        queue.add(ImmutableList.of(file), ruleSets, 0);
+
+        assertEquals("Due files", ImmutableList.of(file), queue.takeDueFiles(0, MAX_FILES).get(ruleSets));
+    }
+
+    /**
+     * Verifies that the files are taken in the order of their priority and then in the order they have been requested.
+     */
+    @Test
+    public void takeDueFilesOrdersByPriority() {
+        final IFile other = mock(IFile.class);
+        final IFile selected = mock(IFile.class);
+        final IFile open1 = mock(IFile.class);
+        final IFile open2 = mock(IFile.class);
+        final AnalysisQueue.Prioritizer prioritizer = mock(AnalysisQueue.Prioritizer.class);
+        when(prioritizer.getPriority(other)).thenReturn(AnalysisPriority.DEFAULT);
+        when(prioritizer.getPriority(selected)).thenReturn(AnalysisPriority.SELECTED);
+        when(prioritizer.getPriority(open1)).thenReturn(AnalysisPriority.OPEN);
+        when(prioritizer.getPriority(open2)).thenReturn(AnalysisPriority.OPEN);
+        final AnalysisQueue queue = new AnalysisQueue(prioritizer);
+
+        queue.add(ImmutableList.of(other, open1, selected, open2), ruleSets, 0);
+
+        assertEquals("First batch", ImmutableList.of(open1, open2), queue.takeDueFiles(0, 2).get(ruleSets));
+        assertEquals("Second batch", ImmutableList.of(selected, other), queue.takeDueFiles(0, 2).get(ruleSets));
+    }
+
+    /**
+     * Verifies that a pending file moves to the front of the queue when its priority rises, e.g. because it has been
+     * opened in an editor.
+     */
+    @Test
+    public void takeDueFilesUpdatesPriorities() {
+        final IFile file1 = mock(IFile.class);
+        final IFile file2 = mock(IFile.class);
+        final IFile file3 = mock(IFile.class);
+        final AnalysisQueue.Prioritizer prioritizer = mock(AnalysisQueue.Prioritizer.class);
+        when(prioritizer.getPriority(any(IFile.class))).thenReturn(AnalysisPriority.DEFAULT);
+        final AnalysisQueue queue = new AnalysisQueue(prioritizer);
+        queue.add(ImmutableList.of(file1, file2, file3), ruleSets, 0);
+        assertEquals("First batch", ImmutableList.of(file1), queue.takeDueFiles(0, 1).get(ruleSets));
+
+        when(prioritizer.getPriority(file3)).thenReturn(AnalysisPriority.OPEN);
+        when(prioritizer.getChangeCount()).thenReturn(1);
+
+        assertEquals("Second batch", ImmutableList.of(file3), queue.takeDueFiles(0, 1).get(ruleSets));
+        assertEquals("Third batch", ImmutableList.of(file2), queue.takeDueFiles(0, 1).get(ruleSets));
+    }
+
+    private AnalysisQueue newQueue() {
+        final AnalysisQueue.Prioritizer prioritizer = mock(AnalysisQueue.Prioritizer.class);
+        when(prioritizer.getPriority(any(IFile.class))).thenReturn(AnalysisPriority.DEFAULT);
+        return new AnalysisQueue(prioritizer);
+    }
+
+}
@@ -11,10 +11,16 @@
 
 package ch.acanda.eclipse.pmd.builder;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -23,20 +29,29 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.util.Properties;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.junit.Test;
 import org.mockito.ArgumentMatcher;
 
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
+import ch.acanda.eclipse.pmd.cache.AnalysisCache;
+import ch.acanda.eclipse.pmd.profiler.BuildProfiler;
+import ch.acanda.eclipse.pmd.profiler.Cost;
 import net.sourceforge.pmd.PMD;
 import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleContext;
@@ -225,6 +240,21 @@ public class AnalyzerTest {
         analyze(file, "rulesets/java/basic.xml/ExtendsObject");
     }
 
+    /**
+     * Verifies that {@link Analyzer#runPMD(IFile, RuleSets)} does not walk up the ancestors of a file to find out
+     * whether it is derived, since the builder does not descend into derived folders.
+     */
+    @Test
+    public void runPMDDoesNotCheckAncestors() throws IOException, CoreException, RuleSetNotFoundException {
+        final IFile file = mockFile("class A extends Object {}", "UTF-8", "java", false, true);
+        final RuleSets ruleSets = RulesetsFactoryUtils.defaultFactory().createRuleSets("category/java/codestyle.xml/ExtendsObject");
+
+        final AnalysisResult result = new Analyzer().runPMD(file, ruleSets);
+
+        assertTrue("Violations", new RuleViolationIteratorMatcher("ExtendsObject").matches(result.getViolations()));
+        verify(file, never()).isDerived(IResource.CHECK_ANCESTORS);
+    }
+
     /**
      * Verifies that {@link Analyzer#analyze(IFile, RuleSets, ViolationProcessor)} doesn't analyze an inaccessible file.
      */
@@ -245,9 +275,127 @@ public class AnalyzerTest {
                 "MethodArgumentCouldBeFinal", "MethodArgumentCouldBeFinal");
     }
 
+    /**
+     * Verifies that {@link Analyzer#analyze(IFile, Reader, RuleSets)} analyzes the provided content instead of the
+     * content of the file on disk.
+     */
+    @Test
+    public void analyzeContent() throws IOException, CoreException, RuleSetNotFoundException {
+        final IFile file = mockFile("class A {}", "UTF-8", "java", false, true);
+        final RuleSets ruleSets = RulesetsFactoryUtils.defaultFactory().createRuleSets("rulesets/java/basic.xml/ExtendsObject");
+
+        final Optional<ImmutableList<RuleViolation>> violations =
+                new Analyzer().analyze(file, new StringReader("class A extends Object {}"), ruleSets,
+                        new NullProgressMonitor(), 0);
+
+        assertTrue("The content should have been analyzed", violations.isPresent());
+        assertTrue("Violations", new RuleViolationIteratorMatcher("ExtendsObject").matches(violations.get()));
+    }
+
+    /**
+     * Verifies that {@link Analyzer#analyze(IFile, Reader, RuleSets)} does not return any violations if the syntax of
+     * the content is incorrect, as it usually is while the content is being edited.
+     */
+    @Test
+    public void analyzeContentWithIncorrectSyntax() throws IOException, CoreException, RuleSetNotFoundException {
+        final IFile file = mockFile("class A {}", "UTF-8", "java", false, true);
+        final RuleSets ruleSets = RulesetsFactoryUtils.defaultFactory().createRuleSets("rulesets/java/basic.xml/ExtendsObject");
+
+        final Optional<ImmutableList<RuleViolation>> violations =
+                new Analyzer().analyze(file, new StringReader("class A extends Object {"), ruleSets,
+                        new NullProgressMonitor(), 0);
+
+        assertFalse("Content with incorrect syntax cannot be analyzed", violations.isPresent());
+    }
+
+    /**
+     * Verifies that the analysis of content that has not been saved yet skips its rules and returns no violations once
+     * its monitor has been canceled.
+     */
+    @Test
+    public void analyzeContentCanceled() throws IOException, CoreException, RuleSetNotFoundException {
+        final IFile file = mockFile("class A {}", "UTF-8", "java", false, true);
+        final RuleSets ruleSets = new RuleWatchdog(mock(IProject.class), 0, 1)
+                .guard(RulesetsFactoryUtils.defaultFactory().createRuleSets("category/java/codestyle.xml/ExtendsObject"));
+        final NullProgressMonitor monitor = new NullProgressMonitor();
+        monitor.setCanceled(true);
+
+        final Optional<ImmutableList<RuleViolation>> violations =
+                new Analyzer().analyze(file, new StringReader("class A extends Object {}"), ruleSets, monitor, 0);
+
+        assertFalse("The violations of a canceled analysis are incomplete", violations.isPresent());
+    }
+
+    /**
+     * Verifies that the analyzer does not cache the violations of a file while a rule is quarantined, so the rule's
+     * violations are found again once the quarantine is lifted.
+     */
+    @Test
+    public void analyzeWithQuarantinedRuleIsNotCached() throws IOException, CoreException, RuleSetNotFoundException {
+        final RuleSets ruleSets =
+                RulesetsFactoryUtils.defaultFactory().createRuleSets("category/java/bestpractices.xml/UnusedPrivateField");
+        final RuleWatchdog quarantiningWatchdog = spy(new RuleWatchdog(mock(IProject.class), 0, 1));
+        doReturn(true).when(quarantiningWatchdog).isQuarantined(anyString());
+        final Analyzer analyzer = new Analyzer(new AnalysisCache(new File("does-not-exist"), 100));
+        final String content = "class A { private int a; }";
+
+        final AnalysisResult quarantined =
+                analyzer.runPMD(mockFile(content, "UTF-8", "java", false, true), quarantiningWatchdog.guard(ruleSets));
+        final AnalysisResult lifted = analyzer.runPMD(mockFile(content, "UTF-8", "java", false, true),
+                new RuleWatchdog(mock(IProject.class), 0, 1).guard(ruleSets));
+
+        assertTrue("A quarantined rule should not be applied", Iterables.isEmpty(quarantined.getViolations()));
+        assertTrue("Violations after the quarantine has been lifted",
+                new RuleViolationIteratorMatcher("UnusedPrivateField").matches(lifted.getViolations()));
+    }
+
+    /**
+     * Verifies that a guarded rule that PMD would otherwise apply with its rule chain is not applied while it is
+     * quarantined.
+     */
+    @Test
+    public void analyzeWithQuarantinedRuleChainRule() throws IOException, CoreException, RuleSetNotFoundException {
+        final IFile file = mockFile("class A {}", "UTF-8", "java", false, true);
+        final RuleSets ruleSets = RulesetsFactoryUtils.defaultFactory().createRuleSets("category/java/codestyle.xml/ExtendsObject");
+        assertTrue("ExtendsObject should be a rule chain rule", ruleSets.getAllRules().iterator().next().isRuleChain());
+        final RuleWatchdog quarantiningWatchdog = spy(new RuleWatchdog(mock(IProject.class), 0, 1));
+        doReturn(true).when(quarantiningWatchdog).isQuarantined(anyString());
+
+        final Optional<ImmutableList<RuleViolation>> violations =
+                new Analyzer().analyze(file, new StringReader("class A extends Object {}"),
+                        quarantiningWatchdog.guard(ruleSets), new NullProgressMonitor(), 0);
+
+        assertTrue("The content should be analyzed", violations.isPresent());
+        assertTrue("A quarantined rule chain rule should not be applied", violations.get().isEmpty());
+    }
+
+    /**
+     * Verifies that the analyzer records the costs of the rules and of the parser while the build profiler is enabled,
+     * including the costs of rules that PMD would otherwise apply with its rule chain.
+     */
+    @Test
+    public void analyzeContentRecordsCosts() throws IOException, CoreException, RuleSetNotFoundException {
+        final IFile file = mockFile("class A {}", "UTF-8", "java", false, true);
+        final RuleSets ruleSets = RulesetsFactoryUtils.defaultFactory().createRuleSets("rulesets/java/basic.xml/ExtendsObject");
+        final RuleSets guardedRuleSets = new RuleWatchdog(mock(IProject.class), 0, 1).guard(ruleSets);
+        final BuildProfiler profiler = new BuildProfiler();
+        profiler.setEnabled(true);
+
+        new Analyzer(null, profiler).analyze(file, new StringReader("class A extends Object {}"), guardedRuleSets,
+                new NullProgressMonitor(), 0);
+
+        final ImmutableList<Cost> costs = profiler.getCosts();
+        assertEquals("Number of costs", 2, costs.size());
+        assertEquals("Category of the first cost", Cost.Category.RULE, costs.get(0).getCategory());
+        assertEquals("Number of times the rule has been applied", 1, costs.get(0).getCount());
+        assertEquals("Number of violations of the rule", 1, costs.get(0).getViolations());
+        assertEquals("Category of the second cost", Cost.Category.PARSER, costs.get(1).getCategory());
+        assertEquals("Language of the parser", "java", costs.get(1).getName());
+    }
+
     /**
      * Prepares the arguments, calls {@link Analyzer#analyze(IFile, RuleSets, ViolationProcessor), and verifies that it
-     * invokes {@link ViolationProcessor#annotate(IFile, Iterable) with the correct rule violations.
+     * invokes {@link ViolationProcessor#annotate(IFile, CharSequence, Iterable) with the correct rule violations.
      */
     public void analyze(final String content, final String charset, final String fileExtension, final String ruleSetRefId,
             final String... violatedRules) {
@@ -261,7 +409,7 @@ public class AnalyzerTest {
 
     /**
      * Prepares the arguments, calls {@link Analyzer#analyze(IFile, RuleSets, ViolationProcessor), and verifies that it
-     * invokes {@link ViolationProcessor#annotate(IFile, Iterable) with the correct rule violations and that it invokes
+     * invokes {@link ViolationProcessor#annotate(IFile, CharSequence, Iterable) with the correct rule violations and that it invokes
      * {@link RuleSets#start(RuleContext)} as well as {@link RuleSets#end(RuleContext)} if the file is valid.
      */
     public void analyze(final IFile file, final String ruleSetRefId, final String... violatedRules) {
@@ -270,7 +418,7 @@ public class AnalyzerTest {
             final RuleSets ruleSets = spy(RulesetsFactoryUtils.defaultFactory().createRuleSets(ruleSetRefId));
             new Analyzer().analyze(file, ruleSets, violationProcessor);
 
-            verify(violationProcessor).annotate(same(file), violations(violatedRules));
+            verify(violationProcessor).annotate(same(file), any(), violations(violatedRules));
 
             final boolean isValidFile = violatedRules.length > 0;
             if (isValidFile) {
@@ -281,7 +429,7 @@ public class AnalyzerTest {
         } catch (final RuleSetNotFoundException e) {
             throw new AssertionError("Failed to create rule sets", e);
 
-        } catch (CoreException | IOException e) {
+        } catch (final CoreException e) {
             throw new AssertionError("Failed to annotate file", e);
         }
     }
@@ -289,9 +437,11 @@ public class AnalyzerTest {
     private IFile mockFile(final String content, final String charset, final String fileExtension, final boolean isDerived,
             final boolean isAccessible) throws CoreException, UnsupportedEncodingException {
         final IFile file = mock(IFile.class);
+        when(file.isDerived()).thenReturn(isDerived);
         when(file.isDerived(IResource.CHECK_ANCESTORS)).thenReturn(isDerived);
         when(file.isAccessible()).thenReturn(isAccessible);
         when(file.getFileExtension()).thenReturn(fileExtension);
+        when(file.getName()).thenReturn("test." + fileExtension);
         when(file.getCharset()).thenReturn(charset);
         when(file.getContents()).thenReturn(new ByteArrayInputStream(content.getBytes(charset)));
         final IPath path = mock(IPath.class);
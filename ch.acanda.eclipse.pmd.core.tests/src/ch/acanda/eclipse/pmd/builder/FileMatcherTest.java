@@ -0,0 +1,193 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.runtime.Path;
+import org.junit.Test;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RulesetsFactoryUtils;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+
+/**
+ * Unit tests for {@link FileMatcher}.
+ *
+ * @author Philip Graf
+ */
+public class FileMatcherTest {
+
+    private static final List<String> NONE = Collections.emptyList();
+
+    /**
+     * Verifies that all files are accepted if there are no patterns.
+     */
+    @Test
+    public void acceptAllWithoutPatterns() {
+        final FileMatcher matcher = FileMatcher.create(NONE, NONE, ruleSets(ruleSet(NONE, NONE)));
+
+        assertTrue("Folder", matcher.acceptsFolder(mockFolder("src/main")));
+        assertTrue("File", matcher.acceptsFile(mockFile("src/main/A.java")));
+    }
+
+    /**
+     * Verifies that no file is accepted if the project does not have any rule sets.
+     */
+    @Test
+    public void rejectAllWithoutRuleSets() {
+        final FileMatcher matcher = FileMatcher.create(NONE, NONE, new RuleSets());
+
+        assertFalse("File", matcher.acceptsFile(mockFile("src/main/A.java")));
+    }
+
+    /**
+     * Verifies the translation of the glob patterns and that an excluded folder excludes all its files.
+     */
+    @Test
+    public void excludePatterns() {
+        final FileMatcher matcher = FileMatcher.create(NONE, Arrays.asList("**/generated/**", "src/*.java", "doc?"),
+                ruleSets(ruleSet(NONE, NONE)));
+
+        assertFalse("Excluded folder", matcher.acceptsFolder(mockFolder("src/generated")));
+        assertFalse("Excluded nested folder", matcher.acceptsFolder(mockFolder("a/b/generated")));
+        assertFalse("File in excluded folder", matcher.acceptsFile(mockFile("generated/a/A.java")));
+        assertFalse("Excluded file", matcher.acceptsFile(mockFile("src/A.java")));
+        assertFalse("Excluded folder with single character wildcard", matcher.acceptsFolder(mockFolder("docs")));
+        assertTrue("Single star does not match slash", matcher.acceptsFile(mockFile("src/a/A.java")));
+        assertTrue("Folder", matcher.acceptsFolder(mockFolder("src/main")));
+        assertTrue("Folder with similar name", matcher.acceptsFolder(mockFolder("src/generated2")));
+    }
+
+    /**
+     * Verifies that only the folders that might contain included files are accepted and that the exclude patterns
+     * take precedence over the include patterns.
+     */
+    @Test
+    public void includePatterns() {
+        final FileMatcher matcher = FileMatcher.create(Arrays.asList("src/main/**/*.java"), Arrays.asList("src/main/java/gen"),
+                ruleSets(ruleSet(NONE, NONE)));
+
+        assertTrue("Ancestor of include folder", matcher.acceptsFolder(mockFolder("src")));
+        assertTrue("Include folder", matcher.acceptsFolder(mockFolder("src/main")));
+        assertTrue("Descendant of include folder", matcher.acceptsFolder(mockFolder("src/main/java/a")));
+        assertFalse("Folder outside include folder", matcher.acceptsFolder(mockFolder("src/test")));
+        assertFalse("Excluded folder", matcher.acceptsFolder(mockFolder("src/main/java/gen")));
+        assertTrue("Included file", matcher.acceptsFile(mockFile("src/main/java/a/A.java")));
+        assertTrue("Included file directly in include folder", matcher.acceptsFile(mockFile("src/main/A.java")));
+        assertFalse("File not matching include pattern", matcher.acceptsFile(mockFile("src/main/java/a/package.html")));
+        assertFalse("Excluded file", matcher.acceptsFile(mockFile("src/main/java/gen/A.java")));
+    }
+
+    /**
+     * Verifies that an include pattern starting with a wildcard does not prune any folders.
+     */
+    @Test
+    public void includePatternStartingWithWildcard() {
+        final FileMatcher matcher = FileMatcher.create(Arrays.asList("**/*.java"), NONE, ruleSets(ruleSet(NONE, NONE)));
+
+        assertTrue("Folder", matcher.acceptsFolder(mockFolder("a/b")));
+        assertTrue("Java file", matcher.acceptsFile(mockFile("A.java")));
+        assertFalse("HTML file", matcher.acceptsFile(mockFile("a/b/package.html")));
+    }
+
+    /**
+     * Verifies that the patterns of the rule sets are applied the same way as PMD applies them.
+     */
+    @Test
+    public void ruleSetPatterns() {
+        final RuleSets ruleSets = ruleSets(ruleSet(Arrays.asList(".*/Keep.*"), Arrays.asList(".*/generated/.*", ".*/Test.*")));
+        final FileMatcher matcher = FileMatcher.create(NONE, NONE, ruleSets);
+
+        assertFileMatchesRuleSets(matcher, ruleSets, "/ws/project/src/A.java", true);
+        assertFileMatchesRuleSets(matcher, ruleSets, "/ws/project/generated/A.java", false);
+        assertFileMatchesRuleSets(matcher, ruleSets, "/ws/project/generated/KeepA.java", true);
+        assertFileMatchesRuleSets(matcher, ruleSets, "/ws/project/TestA.java", false);
+    }
+
+    /**
+     * Verifies that a file is accepted if at least one rule set applies to it.
+     */
+    @Test
+    public void anyRuleSetApplies() {
+        final RuleSets ruleSets = ruleSets(ruleSet(NONE, Arrays.asList(".*/test/.*")), ruleSet(NONE, Arrays.asList(".*/A\\..*")));
+        final FileMatcher matcher = FileMatcher.create(NONE, NONE, ruleSets);
+
+        assertFileMatchesRuleSets(matcher, ruleSets, "/ws/project/test/A.java", false);
+        assertFileMatchesRuleSets(matcher, ruleSets, "/ws/project/test/B.java", true);
+        assertFileMatchesRuleSets(matcher, ruleSets, "/ws/project/A.java", true);
+    }
+
+    /**
+     * Verifies that the files of a language without any rules are rejected.
+     */
+    @Test
+    public void rejectFilesWithoutRules() {
+        final FileMatcher matcher = FileMatcher.create(NONE, NONE, ruleSets(ruleSet(NONE, NONE)));
+
+        assertTrue("Java file", matcher.acceptsFile(mockFile("src/A.java")));
+        assertFalse("XML file", matcher.acceptsFile(mockFile("pom.xml")));
+        assertFalse("JavaScript file", matcher.acceptsFile(mockFile("web/app.js")));
+        assertFalse("Unknown file type", matcher.acceptsFile(mockFile("README.md")));
+        assertFalse("File without extension", matcher.acceptsFile(mockFile("LICENSE")));
+    }
+
+    private static void assertFileMatchesRuleSets(final FileMatcher matcher, final RuleSets ruleSets, final String location,
+            final boolean expected) {
+        final IFile file = mockFile(new Path(location).lastSegment());
+        when(file.getRawLocation()).thenReturn(new Path(location));
+        final boolean pmdApplies = ruleSets.applies(new Path(location).toFile());
+        assertTrue("PMD should " + (expected ? "" : "not ") + "apply the rule sets to " + location, pmdApplies == expected);
+        assertTrue("Matcher should " + (expected ? "" : "not ") + "accept " + location, matcher.acceptsFile(file) == expected);
+    }
+
+    private static RuleSets ruleSets(final RuleSet... ruleSets) {
+        final RuleSets result = new RuleSets();
+        for (final RuleSet ruleSet : ruleSets) {
+            result.addRuleSet(ruleSet);
+        }
+        return result;
+    }
+
+    private static RuleSet ruleSet(final List<String> includePatterns, final List<String> excludePatterns) {
+        final Rule rule = mock(Rule.class);
+        when(rule.getLanguage()).thenReturn(LanguageRegistry.getLanguage(JavaLanguageModule.NAME));
+        return RulesetsFactoryUtils.defaultFactory().createNewRuleSet("test", "test", "test.xml", excludePatterns, includePatterns,
+                Arrays.asList(rule));
+    }
+
+    private static IFolder mockFolder(final String path) {
+        final IFolder folder = mock(IFolder.class);
+        when(folder.getProjectRelativePath()).thenReturn(new Path(path));
+        return folder;
+    }
+
+    private static IFile mockFile(final String path) {
+        final IFile file = mock(IFile.class);
+        when(file.getProjectRelativePath()).thenReturn(new Path(path));
+        when(file.getFileExtension()).thenReturn(new Path(path).getFileExtension());
+        return file;
+    }
+
+}
@@ -20,6 +20,7 @@ import static org.mockito.Mockito.when;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -27,10 +28,13 @@ import java.nio.file.Paths;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRoot;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.google.common.base.Optional;
 
+import ch.acanda.eclipse.pmd.cache.RemoteRuleSetMirror;
 import ch.acanda.eclipse.pmd.domain.Location;
 import ch.acanda.eclipse.pmd.domain.LocationContext;
 
@@ -41,6 +45,9 @@ import ch.acanda.eclipse.pmd.domain.LocationContext;
  */
 public class LocationResolverTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     /**
      * Verifies that {@link LocationResolver#resolveIfExists(Location, IProject)} resolves the loacation in a file
      * system context correctly.
@@ -92,23 +99,22 @@ public class LocationResolverTest {
 
     /**
      * Verifies that {@link LocationResolver#resolveIfExists(Location, IProject)} resolves the location in a remote
-     * context correctly.
+     * context to the local copy of the remote file.
      */
     @Test
     public void resolveIfExistsRemoteLocation() throws IOException {
-        final Path ruleSetFile = Files.createTempFile(LocationResolverTest.class.getSimpleName(), ".xml");
-        try {
-            final Location location = new Location(ruleSetFile.toUri().toString(), LocationContext.REMOTE);
-            final IProject project = mock(IProject.class);
-
-            final Optional<String> result = LocationResolver.resolveIfExists(location, project);
-
-            assertTrue("A valid remote location should resolve", result.isPresent());
-            assertEquals("The resolved location in a remote context should be the provided location",
-                    ruleSetFile.toUri().toString(), result.get());
-        } finally {
-            Files.deleteIfExists(ruleSetFile);
-        }
+        final Path ruleSetFile = folder.newFile("pmd.xml").toPath();
+        Files.write(ruleSetFile, "<ruleset/>".getBytes(StandardCharsets.UTF_8));
+        final RemoteRuleSetMirror mirror = new RemoteRuleSetMirror(folder.newFolder("mirror").toPath());
+        final Location location = new Location(ruleSetFile.toUri().toString(), LocationContext.REMOTE);
+
+        final Optional<String> result = LocationResolver.resolveRemoteLocationIfExists(location, mirror);
+
+        assertTrue("A valid remote location should resolve", result.isPresent());
+        assertEquals("The resolved location in a remote context should be the local copy of the remote file",
+                mirror.getFile(ruleSetFile.toUri().toString()).get().toString(), result.get());
+        final String content = new String(Files.readAllBytes(Paths.get(result.get())), StandardCharsets.UTF_8);
+        assertEquals("Content of the local copy", "<ruleset/>", content);
     }
 
     /**
@@ -116,11 +122,12 @@ public class LocationResolverTest {
      * remote context when the file does not exist.
      */
     @Test
-    public void resolveIfExistsRemoteLocationWithMissingFile() {
-        final Location location = new Location("http://example.org/pmd.xml", LocationContext.REMOTE);
-        final IProject project = mock(IProject.class);
+    public void resolveIfExistsRemoteLocationWithMissingFile() throws IOException {
+        final RemoteRuleSetMirror mirror = new RemoteRuleSetMirror(folder.newFolder("mirror").toPath());
+        final String missingFile = folder.getRoot().toPath().resolve("missing.xml").toUri().toString();
+        final Location location = new Location(missingFile, LocationContext.REMOTE);
 
-        final Optional<String> result = LocationResolver.resolveIfExists(location, project);
+        final Optional<String> result = LocationResolver.resolveRemoteLocationIfExists(location, mirror);
 
         assertFalse("The location should not resolve", result.isPresent());
     }
@@ -130,11 +137,11 @@ public class LocationResolverTest {
      * remote context if the URI is invalid.
      */
     @Test
-    public void resolveIfExistsRemoteLocationWithInvalidURI() {
+    public void resolveIfExistsRemoteLocationWithInvalidURI() throws IOException {
+        final RemoteRuleSetMirror mirror = new RemoteRuleSetMirror(folder.newFolder("mirror").toPath());
         final Location location = new Location("http:#", LocationContext.REMOTE);
-        final IProject project = mock(IProject.class);
 
-        final Optional<String> result = LocationResolver.resolveIfExists(location, project);
+        final Optional<String> result = LocationResolver.resolveRemoteLocationIfExists(location, mirror);
 
         assertFalse("The location should not resolve", result.isPresent());
     }
@@ -0,0 +1,150 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+
+import net.sourceforge.pmd.RuleSetNotFoundException;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RulesetsFactoryUtils;
+
+/**
+ * Unit tests for {@link ParallelAnalyzer}.
+ *
+ * @author Philip Graf
+ */
+public class ParallelAnalyzerTest {
+
+    private static final String RULE_SET_REF_ID = "category/java/codestyle.xml/ExtendsObject";
+
+    /**
+     * Verifies that {@link ParallelAnalyzer#analyze(java.util.Collection, RuleSets, ParallelAnalyzer.ResultHandler,
+     * IProgressMonitor)} handles the result of every file exactly once when there are more files than threads.
+     */
+    @Test
+    public void analyzeHandlesAllFiles() throws CoreException, RuleSetNotFoundException, InterruptedException {
+        final List<IFile> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            files.add(mockFile("class A" + i + " extends Object {}"));
+        }
+        final ParallelAnalyzer.ResultHandler handler = mock(ParallelAnalyzer.ResultHandler.class);
+
+        final ParallelAnalyzer analyzer = new ParallelAnalyzer(3, new Analyzer());
+        try {
+            analyzer.analyze(files, createRuleSets(), handler, new NullProgressMonitor());
+        } finally {
+            analyzer.shutdown();
+        }
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<List<AnalysisResult>> batches = ArgumentCaptor.forClass(List.class);
+        verify(handler, atLeastOnce()).handle(batches.capture());
+        final Set<IFile> handledFiles = new HashSet<>();
+        for (final List<AnalysisResult> batch : batches.getAllValues()) {
+            for (final AnalysisResult result : batch) {
+                assertTrue("The result of each file must be handled only once", handledFiles.add(result.getFile()));
+            }
+        }
+        assertEquals("Handled files", new HashSet<>(files), handledFiles);
+    }
+
+    /**
+     * Verifies that {@link ParallelAnalyzer#analyze(java.util.Collection, RuleSets, ParallelAnalyzer.ResultHandler,
+     * IProgressMonitor)} does not handle any results and throws an {@link OperationCanceledException} when the build has been canceled.
+     */
+    @Test
+    public void analyzeStopsWhenCanceled() throws CoreException, RuleSetNotFoundException, InterruptedException {
+        final List<IFile> files = new ArrayList<>();
+        files.add(mockFile("class A extends Object {}"));
+        final ParallelAnalyzer.ResultHandler handler = mock(ParallelAnalyzer.ResultHandler.class);
+        final IProgressMonitor monitor = new NullProgressMonitor();
+        monitor.setCanceled(true);
+
+        try {
+            new ParallelAnalyzer(2, new Analyzer()).analyze(files, createRuleSets(), handler, monitor);
+            throw new AssertionError("A canceled analysis must throw an OperationCanceledException");
+        } catch (final OperationCanceledException e) {
+            verify(handler, never()).handle(ArgumentMatchers.<List<AnalysisResult>>any());
+        }
+    }
+
+    /**
+     * Verifies that the workers reuse their copies of the rule sets in subsequent batches and that the copies are
+     * released when the analyzer is shut down.
+     */
+    @Test
+    public void reuseRuleSetsBetweenBatches() throws CoreException, RuleSetNotFoundException, InterruptedException {
+        final RuleSets ruleSets = createRuleSets();
+        final ParallelAnalyzer analyzer = new ParallelAnalyzer(2, new Analyzer());
+        final ParallelAnalyzer.ResultHandler handler = mock(ParallelAnalyzer.ResultHandler.class);
+        final List<RuleSets> copies = new ArrayList<>(analyzer.getWorkerRuleSets(ruleSets, 2));
+
+        final List<IFile> files = new ArrayList<>();
+        files.add(mockFile("class A extends Object {}"));
+        files.add(mockFile("class B extends Object {}"));
+        analyzer.analyze(files, ruleSets, handler, new NullProgressMonitor());
+
+        final List<RuleSets> reusedCopies = analyzer.getWorkerRuleSets(ruleSets, 2);
+        assertEquals("Number of copies", 2, reusedCopies.size());
+        assertSame("First copy", copies.get(0), reusedCopies.get(0));
+        assertSame("Second copy", copies.get(1), reusedCopies.get(1));
+
+        analyzer.shutdown();
+        assertNotSame("Copy after shutdown", copies.get(0), analyzer.getWorkerRuleSets(ruleSets, 1).get(0));
+        analyzer.shutdown();
+    }
+
+    private RuleSets createRuleSets() throws RuleSetNotFoundException {
+        return RulesetsFactoryUtils.defaultFactory().createRuleSets(RULE_SET_REF_ID);
+    }
+
+    private IFile mockFile(final String content) throws CoreException {
+        final IFile file = mock(IFile.class);
+        when(file.isDerived()).thenReturn(false);
+        when(file.isAccessible()).thenReturn(true);
+        when(file.getFileExtension()).thenReturn("java");
+        when(file.getName()).thenReturn("A.java");
+        when(file.getCharset()).thenReturn("UTF-8");
+        when(file.getContents()).thenReturn(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        final IPath path = mock(IPath.class);
+        when(file.getRawLocation()).thenReturn(path);
+        when(path.toFile()).thenReturn(new File("A.java"));
+        return file;
+    }
+
+}
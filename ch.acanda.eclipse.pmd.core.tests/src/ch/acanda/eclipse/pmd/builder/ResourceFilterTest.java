@@ -0,0 +1,96 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Unit tests for {@link ResourceFilter} and {@link JavaProjectLayout}.
+ *
+ * @author Philip Graf
+ */
+public class ResourceFilterTest {
+
+    private static final ResourceFilter NO_LAYOUT = new ResourceFilter(Optional.<JavaProjectLayout>absent());
+
+    /**
+     * Verifies that derived and team private resources are skipped.
+     */
+    @Test
+    public void skipDerivedAndTeamPrivateResources() {
+        final IResource derived = mockResource(IResource.FOLDER, "/project/bin");
+        when(derived.isDerived()).thenReturn(true);
+        final IResource teamPrivate = mockResource(IResource.FOLDER, "/project/.git");
+        when(teamPrivate.isTeamPrivateMember()).thenReturn(true);
+
+        assertFalse("Derived folder should be skipped", NO_LAYOUT.accepts(derived));
+        assertFalse("Team private folder should be skipped", NO_LAYOUT.accepts(teamPrivate));
+        assertTrue("Folder should be visited", NO_LAYOUT.accepts(mockResource(IResource.FOLDER, "/project/node_modules")));
+        assertTrue("Project should be visited", NO_LAYOUT.accepts(mockResource(IResource.PROJECT, "/project")));
+    }
+
+    /**
+     * Verifies that only the source folders, their ancestors and their subfolders of a Java project are visited.
+     */
+    @Test
+    public void skipNonSourceFoldersOfJavaProject() {
+        final JavaProjectLayout layout = new JavaProjectLayout(paths("/project/src/main/java", "/project/src/test/java"),
+                paths("/project/target/classes", "/project/target/test-classes"));
+        final ResourceFilter filter = new ResourceFilter(Optional.of(layout));
+
+        assertTrue("Ancestor of a source folder", filter.accepts(mockResource(IResource.FOLDER, "/project/src")));
+        assertTrue("Source folder", filter.accepts(mockResource(IResource.FOLDER, "/project/src/main/java")));
+        assertTrue("Package", filter.accepts(mockResource(IResource.FOLDER, "/project/src/main/java/a/b")));
+        assertFalse("Output folder", filter.accepts(mockResource(IResource.FOLDER, "/project/target/classes")));
+        assertFalse("Folder outside of the source folders", filter.accepts(mockResource(IResource.FOLDER, "/project/node_modules")));
+        assertTrue("File in the project", filter.accepts(mockResource(IResource.FILE, "/project/pom.xml")));
+    }
+
+    /**
+     * Verifies that an output folder that contains a source folder does not hide the source folder.
+     */
+    @Test
+    public void ignoreOutputFolderContainingSourceFolder() {
+        final JavaProjectLayout layout = new JavaProjectLayout(paths("/project"), paths("/project", "/project/bin"));
+        final ResourceFilter filter = new ResourceFilter(Optional.of(layout));
+
+        assertTrue("Package", filter.accepts(mockResource(IResource.FOLDER, "/project/a")));
+        assertFalse("Output folder", filter.accepts(mockResource(IResource.FOLDER, "/project/bin")));
+    }
+
+    private static IResource mockResource(final int type, final String path) {
+        final IResource resource = mock(IResource.class);
+        when(resource.getType()).thenReturn(type);
+        when(resource.getFullPath()).thenReturn(new Path(path));
+        return resource;
+    }
+
+    private static ImmutableList<IPath> paths(final String... paths) {
+        final ImmutableList.Builder<IPath> builder = ImmutableList.builder();
+        for (final String path : paths) {
+            builder.add(new Path(path));
+        }
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,94 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.resources.IProject;
+import org.junit.Test;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleSetNotFoundException;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RulesetsFactoryUtils;
+import net.sourceforge.pmd.lang.ast.Node;
+
+/**
+ * Unit tests for {@link RuleWatchdog} and {@link GuardedRule}.
+ *
+ * @author Philip Graf
+ */
+public class RuleWatchdogTest {
+
+    /**
+     * Verifies that {@link RuleWatchdog#guard(RuleSets)} wraps every rule in a guard and that copies of the
+     * guarded rule sets keep their guards.
+     */
+    @Test
+    public void guardKeepsGuardsInCopies() throws RuleSetNotFoundException {
+        final RuleSets ruleSets = RulesetsFactoryUtils.defaultFactory()
+                .createRuleSets("rulesets/java/basic.xml/ExtendsObject,rulesets/java/basic.xml/ForLoopShouldBeWhileLoop");
+
+        final RuleSets copy = new RuleSets(newWatchdog().guard(ruleSets));
+
+        assertEquals("Number of rules", ruleSets.getAllRules().size(), copy.getAllRules().size());
+        for (final Rule rule : copy.getAllRules()) {
+            assertTrue("Rule " + rule.getName() + " should be guarded", rule instanceof GuardedRule);
+        }
+    }
+
+    /**
+     * Verifies that a guarded rule is skipped once the budget of the file is exhausted.
+     */
+    @Test
+    public void skipRuleWhenBudgetIsExhausted() throws RuleSetNotFoundException, InterruptedException {
+        final RuleSets ruleSets = RulesetsFactoryUtils.defaultFactory().createRuleSets("rulesets/java/basic.xml/ExtendsObject");
+        final Rule rule = newWatchdog().guard(ruleSets).getAllRules().iterator().next();
+        final RuleContext context = new RuleContext();
+        final AnalysisBudget budget = new AnalysisBudget(1);
+        budget.attachTo(context);
+        Thread.sleep(10);
+
+        final List<Node> nodes = Collections.emptyList();
+        rule.apply(nodes, context);
+
+        assertEquals("Skipped rules", 1, budget.getSkippedRules());
+    }
+
+    /**
+     * Verifies that a guarded rule is applied as long as the budget of the file is not exhausted.
+     */
+    @Test
+    public void applyRuleWithinBudget() throws RuleSetNotFoundException {
+        final RuleSets ruleSets = RulesetsFactoryUtils.defaultFactory().createRuleSets("rulesets/java/basic.xml/ExtendsObject");
+        final Rule rule = newWatchdog().guard(ruleSets).getAllRules().iterator().next();
+        final RuleContext context = new RuleContext();
+        final AnalysisBudget budget = new AnalysisBudget(0);
+        budget.attachTo(context);
+
+        final List<Node> nodes = Collections.emptyList();
+        rule.apply(nodes, context);
+
+        assertEquals("Skipped rules", 0, budget.getSkippedRules());
+    }
+
+    private static RuleWatchdog newWatchdog() {
+        return new RuleWatchdog(mock(IProject.class), 0, 1);
+    }
+
+}
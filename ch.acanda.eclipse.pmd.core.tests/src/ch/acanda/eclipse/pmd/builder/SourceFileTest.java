@@ -0,0 +1,108 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.io.CharStreams;
+
+/**
+ * Unit tests for {@link SourceFile}.
+ *
+ * @author Philip Graf
+ */
+public class SourceFileTest {
+
+    /**
+     * Verifies that {@link SourceFile#load(IFile)} decodes the content of a file with the file's charset and that the
+     * reader and the content return the same characters.
+     */
+    @Test
+    public void loadDecodesWithCharset() throws CoreException, IOException {
+        final String content = "class Ä { String s = \"ö\"; }";
+        final IFile file = mock(IFile.class);
+        when(file.getCharset()).thenReturn("ISO-8859-1");
+        when(file.getContents()).thenReturn(new ByteArrayInputStream(content.getBytes(StandardCharsets.ISO_8859_1)));
+
+        final SourceFile source = SourceFile.load(file);
+
+        assertEquals("Content", content, source.getContent().toString());
+        try (Reader reader = source.newReader()) {
+            assertEquals("Content read by the reader", content, CharStreams.toString(reader));
+        }
+    }
+
+    /**
+     * Verifies that {@link SourceFile#load(IFile)} reads a large local file directly from the file system instead of
+     * reading it through the workspace.
+     */
+    @Test
+    public void loadLargeLocalFile() throws CoreException, IOException {
+        final String content = Strings.repeat("// a long comment\n", 100_000);
+        final Path path = Files.createTempFile("SourceFileTest", ".java");
+        try {
+            Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+            final IFile file = mock(IFile.class);
+            when(file.getCharset()).thenReturn("UTF-8");
+            when(file.isSynchronized(IResource.DEPTH_ZERO)).thenReturn(true);
+            final IPath location = mock(IPath.class);
+            when(file.getLocation()).thenReturn(location);
+            when(location.toFile()).thenReturn(path.toFile());
+
+            final SourceFile source = SourceFile.load(file);
+
+            assertEquals("Content", content, source.getContent().toString());
+            verify(file, never()).getContents();
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Verifies that two source files with the same content have the same content hash.
+     */
+    @Test
+    public void getContentHash() throws CoreException, IOException {
+        final IFile file = mock(IFile.class);
+        when(file.getCharset()).thenReturn("UTF-8");
+        when(file.getContents()).thenReturn(new ByteArrayInputStream("a".getBytes(StandardCharsets.UTF_8)),
+                new ByteArrayInputStream("a".getBytes(StandardCharsets.UTF_8)),
+                new ByteArrayInputStream("b".getBytes(StandardCharsets.UTF_8)));
+
+        final SourceFile first = SourceFile.load(file);
+        final SourceFile second = SourceFile.load(file);
+        final SourceFile third = SourceFile.load(file);
+
+        assertEquals("Hash of equal content", first.getContentHash(), second.getContentHash());
+        assertNotEquals("Hash of different content", first.getContentHash(), third.getContentHash());
+    }
+
+}
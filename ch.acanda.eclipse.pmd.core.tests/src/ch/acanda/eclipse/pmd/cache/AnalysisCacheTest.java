@@ -0,0 +1,237 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSetNotFoundException;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.RulesetsFactoryUtils;
+
+/**
+ * Unit tests for {@link AnalysisCache}.
+ *
+ * @author Philip Graf
+ */
+public class AnalysisCacheTest {
+
+    private static final HashCode CONTENT = Hashing.sha256().hashUnencodedChars("class A extends Object {}");
+    private static final String FILE_NAME = "A.java";
+
+    /**
+     * Verifies that {@link AnalysisCache#get(HashCode, String, RuleSets)} returns the violations that were stored for
+     * the same content and rule sets.
+     */
+    @Test
+    public void getReturnsStoredViolations() throws RuleSetNotFoundException {
+        final AnalysisCache cache = new AnalysisCache(new File("does-not-exist"), 100);
+        final RuleSets ruleSets = createRuleSets("category/java/codestyle.xml/ExtendsObject");
+        final RuleViolation violation = mockViolation(ruleSets.getAllRules().iterator().next());
+        cache.put(CONTENT, FILE_NAME, ruleSets, ImmutableList.of(violation));
+
+        final Optional<ImmutableList<RuleViolation>> actual = cache.get(CONTENT, FILE_NAME, ruleSets);
+
+        assertTrue("The cache should contain the violations", actual.isPresent());
+        assertEquals("Number of violations", 1, actual.get().size());
+        assertViolation(violation, actual.get().get(0));
+    }
+
+    /**
+     * Verifies that {@link AnalysisCache#get(HashCode, String, RuleSets)} does not return violations that were stored
+     * for different content or different rule sets.
+     */
+    @Test
+    public void getReturnsAbsentWhenContentOrRuleSetsDiffer() throws RuleSetNotFoundException {
+        final AnalysisCache cache = new AnalysisCache(new File("does-not-exist"), 100);
+        final RuleSets ruleSets = createRuleSets("category/java/codestyle.xml/ExtendsObject");
+        cache.put(CONTENT, FILE_NAME, ruleSets, ImmutableList.<RuleViolation>of());
+        final HashCode otherContent = Hashing.sha256().hashUnencodedChars("class A {}");
+        final RuleSets otherRuleSets = createRuleSets("category/java/codestyle.xml/UnnecessaryReturn");
+
+        assertFalse("Different content must not hit the cache", cache.get(otherContent, FILE_NAME, ruleSets).isPresent());
+        assertFalse("Different rule sets must not hit the cache", cache.get(CONTENT, FILE_NAME, otherRuleSets).isPresent());
+        assertTrue("Identical rule sets must hit the cache", cache.get(CONTENT, FILE_NAME, new RuleSets(ruleSets)).isPresent());
+    }
+
+    /**
+     * Verifies that the fingerprint of the rule sets changes when their rule set file changes, even if the change is
+     * not reflected in the properties of the rules and the rule sets have been copied, as the builder does when it
+     * guards the rules, so they no longer carry PMD's checksum of the file.
+     */
+    @Test
+    public void fingerprintChangesWithRuleSetFile() throws RuleSetNotFoundException, IOException {
+        final File file = Files.createTempFile("ruleset", ".xml").toFile();
+        try {
+            Files.write(file.toPath(), createRuleSetXml("Before").getBytes(UTF_8));
+            final String before = AnalysisCache.createFingerprint(copy(createRuleSets(file.getAbsolutePath())));
+            Files.write(file.toPath(), createRuleSetXml("After").getBytes(UTF_8));
+            final String after = AnalysisCache.createFingerprint(copy(createRuleSets(file.getAbsolutePath())));
+
+            assertFalse("The fingerprint should change with the rule set file", before.equals(after));
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    /**
+     * Verifies that the entries saved by {@link AnalysisCache#save()} are available in a new cache using the same
+     * file.
+     */
+    @Test
+    public void saveAndLoad() throws RuleSetNotFoundException, IOException {
+        final File directory = Files.createTempDirectory("analysis-cache").toFile();
+        final File file = new File(directory, "analysis-cache.bin");
+        try {
+            final RuleSets ruleSets = createRuleSets("category/java/codestyle.xml/ExtendsObject");
+            final RuleViolation violation = mockViolation(ruleSets.getAllRules().iterator().next());
+            final AnalysisCache cache = new AnalysisCache(file, 100);
+            cache.put(CONTENT, FILE_NAME, ruleSets, ImmutableList.of(violation));
+            cache.save();
+
+            final Optional<ImmutableList<RuleViolation>> actual = new AnalysisCache(file, 100).get(CONTENT, FILE_NAME, ruleSets);
+
+            assertTrue("The loaded cache should contain the violations", actual.isPresent());
+            assertViolation(violation, actual.get().get(0));
+        } finally {
+            Files.deleteIfExists(file.toPath());
+            Files.deleteIfExists(directory.toPath());
+        }
+    }
+
+    /**
+     * Verifies that {@link AnalysisCache#save()} deletes its temporary file when it cannot replace the cache file and
+     * that it saves the entries on the next attempt.
+     */
+    @Test
+    public void saveFailsAndRetries() throws RuleSetNotFoundException, IOException {
+        final File directory = Files.createTempDirectory("analysis-cache").toFile();
+        final File file = new File(directory, "analysis-cache.bin");
+        final File blocker = new File(file, "blocker");
+        try {
+            final RuleSets ruleSets = createRuleSets("category/java/codestyle.xml/ExtendsObject");
+            final RuleViolation violation = mockViolation(ruleSets.getAllRules().iterator().next());
+            final AnalysisCache cache = new AnalysisCache(file, 100);
+            cache.put(CONTENT, FILE_NAME, ruleSets, ImmutableList.of(violation));
+            // a non-empty directory cannot be replaced by the cache file
+            Files.createDirectories(file.toPath());
+            Files.createFile(blocker.toPath());
+            try {
+                cache.save();
+                throw new AssertionError("Saving the cache should fail");
+            } catch (final IOException e) {
+                assertEquals("Files in the directory of the cache", 1, directory.list().length);
+            }
+
+            Files.delete(blocker.toPath());
+            Files.delete(file.toPath());
+            cache.save();
+
+            assertTrue("The entries should be saved on the next attempt", file.isFile());
+        } finally {
+            blocker.delete();
+            Files.deleteIfExists(file.toPath());
+            Files.deleteIfExists(directory.toPath());
+        }
+    }
+
+    /**
+     * Verifies that the entries released by {@link AnalysisCache#release()} are persisted and loaded again when the
+     * cache is accessed the next time.
+     */
+    @Test
+    public void releaseAndReload() throws RuleSetNotFoundException, IOException {
+        final File directory = Files.createTempDirectory("analysis-cache").toFile();
+        final File file = new File(directory, "analysis-cache.bin");
+        try {
+            final RuleSets ruleSets = createRuleSets("category/java/codestyle.xml/ExtendsObject");
+            final RuleViolation violation = mockViolation(ruleSets.getAllRules().iterator().next());
+            final AnalysisCache cache = new AnalysisCache(file, 100);
+            cache.put(CONTENT, FILE_NAME, ruleSets, ImmutableList.of(violation));
+
+            cache.release();
+
+            assertTrue("The released entries should be persisted", file.isFile());
+            final Optional<ImmutableList<RuleViolation>> actual = cache.get(CONTENT, FILE_NAME, ruleSets);
+            assertTrue("The released cache should load the violations again", actual.isPresent());
+            assertViolation(violation, actual.get().get(0));
+        } finally {
+            Files.deleteIfExists(file.toPath());
+            Files.deleteIfExists(directory.toPath());
+        }
+    }
+
+    private void assertViolation(final RuleViolation expected, final RuleViolation actual) {
+        assertSame("Rule", expected.getRule(), actual.getRule());
+        assertEquals("Description", expected.getDescription(), actual.getDescription());
+        assertEquals("Begin line", expected.getBeginLine(), actual.getBeginLine());
+        assertEquals("Begin column", expected.getBeginColumn(), actual.getBeginColumn());
+        assertEquals("End line", expected.getEndLine(), actual.getEndLine());
+        assertEquals("End column", expected.getEndColumn(), actual.getEndColumn());
+        assertEquals("Class name", expected.getClassName(), actual.getClassName());
+        assertEquals("Variable name", expected.getVariableName(), actual.getVariableName());
+    }
+
+    private static RuleSets copy(final RuleSets ruleSets) {
+        final RuleSets copy = new RuleSets();
+        for (final RuleSet ruleSet : ruleSets.getAllRuleSets()) {
+            copy.addRuleSet(RulesetsFactoryUtils.defaultFactory().createNewRuleSet(ruleSet.getName(), ruleSet.getDescription(),
+                    ruleSet.getFileName(), Collections.<String>emptyList(), Collections.<String>emptyList(), ruleSet.getRules()));
+        }
+        return copy;
+    }
+
+    private static String createRuleSetXml(final String description) {
+        return "<?xml version=\"1.0\"?>\n"
+                + "<ruleset name=\"test\" xmlns=\"http://pmd.sourceforge.net/ruleset/2.0.0\">\n"
+                + "  <description>" + description + "</description>\n"
+                + "  <rule ref=\"category/java/codestyle.xml/ExtendsObject\"/>\n"
+                + "</ruleset>\n";
+    }
+
+    private RuleSets createRuleSets(final String ruleSetRefId) throws RuleSetNotFoundException {
+        return RulesetsFactoryUtils.defaultFactory().createRuleSets(ruleSetRefId);
+    }
+
+    private RuleViolation mockViolation(final Rule rule) {
+        final RuleViolation violation = mock(RuleViolation.class);
+        when(violation.getRule()).thenReturn(rule);
+        when(violation.getDescription()).thenReturn("message");
+        when(violation.getBeginLine()).thenReturn(1);
+        when(violation.getBeginColumn()).thenReturn(17);
+        when(violation.getEndLine()).thenReturn(1);
+        when(violation.getEndColumn()).thenReturn(22);
+        when(violation.getClassName()).thenReturn("A");
+        return violation;
+    }
+
+}
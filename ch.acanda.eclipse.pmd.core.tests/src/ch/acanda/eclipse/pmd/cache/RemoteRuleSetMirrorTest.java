@@ -0,0 +1,258 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Optional;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import ch.acanda.eclipse.pmd.file.FileChangedListener;
+
+/**
+ * Unit tests for {@link RemoteRuleSetMirror}. The remote rule set file is served by a local HTTP server.
+ *
+ * @author Philip Graf
+ */
+public class RemoteRuleSetMirrorTest {
+
+    private static final String PATH = "/pmd.xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private RuleSetHandler handler;
+    private String url;
+
+    @Before
+    public void startServer() throws IOException {
+        handler = new RuleSetHandler();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(PATH, handler);
+        server.start();
+        url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + PATH;
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    /**
+     * Verifies that the first access downloads the remote file and that further accesses use the local copy.
+     */
+    @Test
+    public void getFileDownloadsOnlyOnce() throws IOException {
+        final RemoteRuleSetMirror mirror = new RemoteRuleSetMirror(folder.getRoot().toPath().resolve("mirror"));
+        handler.setContent("\"1\"", "<ruleset name=\"1\"/>");
+
+        final Optional<Path> first = mirror.getFile(url);
+        final Optional<Path> second = mirror.getFile(url);
+
+        assertTrue("The remote file should be downloaded", first.isPresent());
+        assertEquals("Content of the local copy", "<ruleset name=\"1\"/>", read(first.get()));
+        assertEquals("Both accesses should return the same local copy", first, second);
+        assertEquals("Number of requests", 1, handler.getRequests().size());
+    }
+
+    /**
+     * Verifies that the revalidation sends the validators of the last response and keeps the local copy if the server
+     * responds with {@code 304 Not Modified}.
+     */
+    @Test
+    public void revalidateUnchangedFile() throws IOException {
+        final RemoteRuleSetMirror mirror = new RemoteRuleSetMirror(folder.getRoot().toPath().resolve("mirror"));
+        handler.setContent("\"1\"", "<ruleset name=\"1\"/>");
+        final Path file = mirror.getFile(url).get();
+        final FileChangedListener listener = mock(FileChangedListener.class);
+        mirror.subscribe(url, listener);
+
+        final boolean changed = mirror.revalidate(url);
+
+        assertFalse("The local copy should not change", changed);
+        assertEquals("If-None-Match", "\"1\"", handler.getRequests().get(1).getRequestHeaders().getFirst("If-None-Match"));
+        assertEquals("If-Modified-Since", RuleSetHandler.LAST_MODIFIED,
+                handler.getRequests().get(1).getRequestHeaders().getFirst("If-Modified-Since"));
+        assertEquals("Content of the local copy", "<ruleset name=\"1\"/>", read(file));
+        verify(listener, never()).fileChanged(file);
+    }
+
+    /**
+     * Verifies that the revalidation replaces the local copy and notifies the subscribers if the remote file has
+     * changed.
+     */
+    @Test
+    public void revalidateChangedFile() throws IOException {
+        final RemoteRuleSetMirror mirror = new RemoteRuleSetMirror(folder.getRoot().toPath().resolve("mirror"));
+        handler.setContent("\"1\"", "<ruleset name=\"1\"/>");
+        final Path file = mirror.getFile(url).get();
+        final FileChangedListener listener = mock(FileChangedListener.class);
+        mirror.subscribe(url, listener);
+        handler.setContent("\"2\"", "<ruleset name=\"2\"/>");
+
+        final boolean changed = mirror.revalidate(url);
+
+        assertTrue("The local copy should change", changed);
+        assertEquals("Content of the local copy", "<ruleset name=\"2\"/>", read(file));
+        verify(listener).fileChanged(file);
+    }
+
+    /**
+     * Verifies that a cancelled subscription is not notified anymore.
+     */
+    @Test
+    public void cancelSubscription() throws IOException {
+        final RemoteRuleSetMirror mirror = new RemoteRuleSetMirror(folder.getRoot().toPath().resolve("mirror"));
+        handler.setContent("\"1\"", "<ruleset name=\"1\"/>");
+        final Path file = mirror.getFile(url).get();
+        final FileChangedListener listener = mock(FileChangedListener.class);
+        mirror.subscribe(url, listener).cancel();
+        handler.setContent("\"2\"", "<ruleset name=\"2\"/>");
+
+        mirror.revalidate(url);
+
+        verify(listener, never()).fileChanged(file);
+    }
+
+    /**
+     * Verifies that the last good copy is kept and served when the server is offline.
+     */
+    @Test
+    public void serveLastGoodCopyWhenOffline() throws IOException {
+        final RemoteRuleSetMirror mirror = new RemoteRuleSetMirror(folder.getRoot().toPath().resolve("mirror"));
+        handler.setContent("\"1\"", "<ruleset name=\"1\"/>");
+        final Path file = mirror.getFile(url).get();
+        server.stop(0);
+
+        try {
+            mirror.revalidate(url);
+            fail("The revalidation should fail when the server is offline");
+        } catch (final IOException e) {
+            // expected
+        }
+
+        final Optional<Path> result = mirror.getFile(url);
+        assertTrue("The last good copy should be served", result.isPresent());
+        assertEquals("Content of the local copy", "<ruleset name=\"1\"/>", read(result.get()));
+        assertEquals("Local copy", file, result.get());
+    }
+
+    /**
+     * Verifies that the local copy is kept if the server responds with an error.
+     */
+    @Test
+    public void keepLocalCopyOnServerError() throws IOException {
+        final RemoteRuleSetMirror mirror = new RemoteRuleSetMirror(folder.getRoot().toPath().resolve("mirror"));
+        handler.setContent("\"1\"", "<ruleset name=\"1\"/>");
+        final Path file = mirror.getFile(url).get();
+        handler.setStatus(500);
+
+        try {
+            mirror.revalidate(url);
+            fail("The revalidation should fail when the server responds with an error");
+        } catch (final IOException e) {
+            // expected
+        }
+
+        assertEquals("Content of the local copy", "<ruleset name=\"1\"/>", read(file));
+    }
+
+    /**
+     * Verifies that a remote file that cannot be downloaded does not resolve to a local copy.
+     */
+    @Test
+    public void getFileWithoutLocalCopyWhenOffline() {
+        final RemoteRuleSetMirror mirror = new RemoteRuleSetMirror(folder.getRoot().toPath().resolve("mirror"));
+        server.stop(0);
+
+        final Optional<Path> result = mirror.getFile(url);
+
+        assertFalse("There should not be a local copy", result.isPresent());
+    }
+
+    private static String read(final Path file) throws IOException {
+        return new String(Files.readAllBytes(file), UTF_8);
+    }
+
+    /**
+     * Serves a rule set file with an {@code ETag} and a {@code Last-Modified} header and answers conditional requests
+     * with {@code 304 Not Modified} if the entity tag matches.
+     */
+    private static final class RuleSetHandler implements HttpHandler {
+
+        static final String LAST_MODIFIED = "Wed, 01 Jan 2020 00:00:00 GMT";
+
+        private final List<HttpExchange> requests = Collections.synchronizedList(new ArrayList<HttpExchange>());
+        private volatile String etag;
+        private volatile byte[] content;
+        private volatile int status = 200;
+
+        void setContent(final String etag, final String content) {
+            this.etag = etag;
+            this.content = content.getBytes(UTF_8);
+        }
+
+        void setStatus(final int status) {
+            this.status = status;
+        }
+
+        List<HttpExchange> getRequests() {
+            return requests;
+        }
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            requests.add(exchange);
+            if (status != 200) {
+                exchange.sendResponseHeaders(status, -1);
+            } else if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.getResponseHeaders().add("ETag", etag);
+                exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+                exchange.sendResponseHeaders(200, content.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(content);
+                }
+            }
+            exchange.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,120 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Optional;
+
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSetNotFoundException;
+import net.sourceforge.pmd.RuleSets;
+
+/**
+ * Unit tests for {@link RuleSetsCacheLoader}.
+ *
+ * @author Philip Graf
+ */
+public class RuleSetsCacheLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Verifies that the fingerprint of the rule set files depends on their locations and their content.
+     */
+    @Test
+    public void fingerprint() throws IOException {
+        final String first = createFile("first.xml", "<ruleset/>");
+        final String second = createFile("second.xml", "<ruleset/>");
+
+        final Optional<String> fingerprint = RuleSetsCacheLoader.fingerprint(Arrays.asList(first, second));
+        assertTrue("Fingerprint should be present", fingerprint.isPresent());
+        assertEquals("Fingerprint of the same files", fingerprint, RuleSetsCacheLoader.fingerprint(Arrays.asList(first, second)));
+        assertNotEquals("Fingerprint of a different file with the same content", fingerprint,
+                RuleSetsCacheLoader.fingerprint(Arrays.asList(first, first)));
+
+        Files.write(folder.getRoot().toPath().resolve("second.xml"), "<ruleset></ruleset>".getBytes(UTF_8));
+        assertNotEquals("Fingerprint of changed file", fingerprint, RuleSetsCacheLoader.fingerprint(Arrays.asList(first, second)));
+    }
+
+    /**
+     * Verifies that there is no fingerprint if a rule set file cannot be read.
+     */
+    @Test
+    public void fingerprintOfMissingFile() throws IOException {
+        final String missing = folder.getRoot().toPath().resolve("missing.xml").toString();
+
+        assertFalse("Fingerprint should be absent", RuleSetsCacheLoader.fingerprint(Arrays.asList(missing)).isPresent());
+    }
+
+    /**
+     * Verifies that several rule set files are loaded in the order of the configuration and that their references to
+     * the built-in rules are resolved.
+     */
+    @Test
+    public void createRuleSets() throws IOException, RuleSetNotFoundException {
+        final String first = createFile("first.xml", ruleSet("First", "category/java/bestpractices.xml/UnusedPrivateField",
+                "category/java/bestpractices.xml/UnusedLocalVariable"));
+        final String second = createFile("second.xml", ruleSet("Second", "category/java/errorprone.xml/EmptyCatchBlock"));
+
+        final RuleSets ruleSets = RuleSetsCacheLoader.createRuleSets(Arrays.asList(first, second));
+
+        final RuleSet[] allRuleSets = ruleSets.getAllRuleSets();
+        assertEquals("Number of rule sets", 2, allRuleSets.length);
+        assertEquals("First rule set", "First", allRuleSets[0].getName());
+        assertEquals("Rules of first rule set", 2, allRuleSets[0].size());
+        assertEquals("Second rule set", "Second", allRuleSets[1].getName());
+        assertEquals("Rule of second rule set", "EmptyCatchBlock", allRuleSets[1].getRules().iterator().next().getName());
+    }
+
+    /**
+     * Verifies that a missing rule set file is reported as such.
+     */
+    @Test(expected = RuleSetNotFoundException.class)
+    public void createRuleSetsWithMissingFile() throws IOException, RuleSetNotFoundException {
+        final String first = createFile("first.xml", ruleSet("First", "category/java/bestpractices.xml/UnusedPrivateField"));
+        final String missing = folder.getRoot().toPath().resolve("missing.xml").toString();
+
+        RuleSetsCacheLoader.createRuleSets(Arrays.asList(first, missing));
+    }
+
+    private static String ruleSet(final String name, final String... refs) {
+        final StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\"?>\n<ruleset name=\"").append(name).append('"')
+                .append(" xmlns=\"http://pmd.sourceforge.net/ruleset/2.0.0\">\n<description>").append(name).append("</description>\n");
+        for (final String ref : refs) {
+            xml.append("<rule ref=\"").append(ref).append("\" />\n");
+        }
+        return xml.append("</ruleset>").toString();
+    }
+
+    private String createFile(final String name, final String content) throws IOException {
+        final Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(UTF_8));
+        return file.toString();
+    }
+
+}
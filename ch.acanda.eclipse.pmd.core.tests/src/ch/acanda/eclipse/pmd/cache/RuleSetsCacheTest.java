@@ -11,11 +11,16 @@
 
 package ch.acanda.eclipse.pmd.cache;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
 
 import net.sourceforge.pmd.RuleSets;
 
@@ -28,6 +33,9 @@ import ch.acanda.eclipse.pmd.domain.RuleSetModel;
 import ch.acanda.eclipse.pmd.domain.WorkspaceModel;
 
 import com.google.common.cache.CacheLoader;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.MoreExecutors;
 
 /**
  * Unit tests for {@link RuleSetsCache}.
@@ -50,7 +58,7 @@ public final class RuleSetsCacheTest {
      */
     @Test
     public void firstGetLoadsFromCache() throws Exception {
-        final RuleSetsCache cache = new RuleSetsCache(getCacheLoaderMock(), getWorkspaceModel());
+        final RuleSetsCache cache = new RuleSetsCache(getCacheLoader(), getWorkspaceModel(), MoreExecutors.directExecutor());
 
         final RuleSets actualRuleSets = cache.getRuleSets(PROJECT_NAME_1);
 
@@ -62,7 +70,7 @@ public final class RuleSetsCacheTest {
      */
     @Test
     public void secondGetDoesNotLoad() throws Exception {
-        final RuleSetsCache cache = new RuleSetsCache(getCacheLoaderMock(), getWorkspaceModel());
+        final RuleSetsCache cache = new RuleSetsCache(getCacheLoader(), getWorkspaceModel(), MoreExecutors.directExecutor());
 
         cache.getRuleSets(PROJECT_NAME_1);
         final RuleSets actualRuleSets = cache.getRuleSets(PROJECT_NAME_1);
@@ -77,7 +85,7 @@ public final class RuleSetsCacheTest {
     @Test
     public void secondGetLoadsWhenProjectRuleSetsWereChanged() throws Exception {
         final WorkspaceModel workspaceModel = getWorkspaceModel();
-        final RuleSetsCache cache = new RuleSetsCache(getCacheLoaderMock(), workspaceModel);
+        final RuleSetsCache cache = new RuleSetsCache(getCacheLoader(), workspaceModel, MoreExecutors.directExecutor());
         cache.getRuleSets(PROJECT_NAME_1);
         final RuleSetModel ruleSetModel = new RuleSetModel("abc", new Location("path", LocationContext.WORKSPACE));
         workspaceModel.getOrCreateProject(PROJECT_NAME_1).setRuleSets(Arrays.asList(ruleSetModel));
@@ -94,7 +102,7 @@ public final class RuleSetsCacheTest {
     @Test
     public void secondGetLoadsWhenLaterAddedProjectRuleSetsWereChanged() throws Exception {
         final WorkspaceModel workspaceModel = getWorkspaceModel();
-        final RuleSetsCache cache = new RuleSetsCache(getCacheLoaderMock(), workspaceModel);
+        final RuleSetsCache cache = new RuleSetsCache(getCacheLoader(), workspaceModel, MoreExecutors.directExecutor());
         workspaceModel.add(new ProjectModel(PROJECT_NAME_2));
         cache.getRuleSets(PROJECT_NAME_2);
         final RuleSetModel ruleSetModel = new RuleSetModel("abc", new Location("path", LocationContext.WORKSPACE));
@@ -112,7 +120,7 @@ public final class RuleSetsCacheTest {
     @Test
     public void secondGetLoadsWhenProjectWasREmovedAndAddedAfterFirstGet() throws Exception {
         final WorkspaceModel workspaceModel = getWorkspaceModel();
-        final RuleSetsCache cache = new RuleSetsCache(getCacheLoaderMock(), workspaceModel);
+        final RuleSetsCache cache = new RuleSetsCache(getCacheLoader(), workspaceModel, MoreExecutors.directExecutor());
         cache.getRuleSets(PROJECT_NAME_1);
         workspaceModel.remove(PROJECT_NAME_1);
         workspaceModel.add(new ProjectModel(PROJECT_NAME_1));
@@ -122,12 +130,50 @@ public final class RuleSetsCacheTest {
         assertSame("Second cache access should reload rule sets", RULE_SETS_FOO_2, actualRuleSets);
     }
 
-    private CacheLoader<String, RuleSets> getCacheLoaderMock() throws Exception {
-        @SuppressWarnings("unchecked")
-        final CacheLoader<String, RuleSets> loader = mock(CacheLoader.class);
-        when(loader.load(PROJECT_NAME_1)).thenReturn(RULE_SETS_FOO_1, RULE_SETS_FOO_2);
-        when(loader.load(PROJECT_NAME_2)).thenReturn(RULE_SETS_BAR_1, RULE_SETS_BAR_2);
-        return loader;
+    /**
+     * Verifies that the cache keeps returning the previous rule sets while the changed rule sets are reloaded in the
+     * background.
+     */
+    @Test
+    public void getReturnsPreviousRuleSetsWhileReloading() throws Exception {
+        final WorkspaceModel workspaceModel = getWorkspaceModel();
+        final Queue<Runnable> pendingReloads = new ArrayDeque<>();
+        final RuleSetsCache cache = new RuleSetsCache(getCacheLoader(), workspaceModel, new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                pendingReloads.add(command);
+            }
+        });
+        cache.getRuleSets(PROJECT_NAME_1);
+        final RuleSetModel ruleSetModel = new RuleSetModel("abc", new Location("path", LocationContext.WORKSPACE));
+        workspaceModel.getOrCreateProject(PROJECT_NAME_1).setRuleSets(Arrays.asList(ruleSetModel));
+
+        assertSame("Cache access should return previous rule sets while reloading", RULE_SETS_FOO_1, cache.getRuleSets(PROJECT_NAME_1));
+        assertEquals("Pending reloads", 1, pendingReloads.size());
+        pendingReloads.remove().run();
+        assertSame("Cache access should return reloaded rule sets", RULE_SETS_FOO_2, cache.getRuleSets(PROJECT_NAME_1));
+    }
+
+    /**
+     * Creates a cache loader that returns the first rule sets of a project on the first load and the second rule sets
+     * on all subsequent loads.
+     */
+    private CacheLoader<String, RuleSets> getCacheLoader() {
+        return new CacheLoader<String, RuleSets>() {
+            private final Map<String, Iterator<RuleSets>> ruleSets = ImmutableMap.of(
+                    PROJECT_NAME_1, Iterators.forArray(RULE_SETS_FOO_1, RULE_SETS_FOO_2),
+                    PROJECT_NAME_2, Iterators.forArray(RULE_SETS_BAR_1, RULE_SETS_BAR_2));
+            private final Map<String, RuleSets> last = new HashMap<>();
+
+            @Override
+            public synchronized RuleSets load(final String projectName) {
+                final Iterator<RuleSets> next = ruleSets.get(projectName);
+                if (next.hasNext()) {
+                    last.put(projectName, next.next());
+                }
+                return last.get(projectName);
+            }
+        };
     }
 
     private WorkspaceModel getWorkspaceModel() {
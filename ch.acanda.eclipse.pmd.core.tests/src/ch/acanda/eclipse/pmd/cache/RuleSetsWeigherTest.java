@@ -0,0 +1,125 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSetReference;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RulesetsFactoryUtils;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.rule.MockRule;
+import net.sourceforge.pmd.lang.rule.RuleReference;
+import net.sourceforge.pmd.lang.rule.XPathRule;
+
+/**
+ * Unit tests for {@link RuleSetsWeigher}.
+ *
+ * @author Philip Graf
+ */
+public class RuleSetsWeigherTest {
+
+    private static final List<String> NONE = Collections.emptyList();
+
+    /**
+     * Verifies that empty rule sets still have a weight.
+     */
+    @Test
+    public void emptyRuleSets() {
+        assertEquals("Shared weight of empty rule sets", 1, RuleSetsWeigher.SHARED.weigh(new RuleSets()));
+        assertEquals("Project weight of empty rule sets", 1, RuleSetsWeigher.PROJECT.weigh(new RuleSets()));
+    }
+
+    /**
+     * Verifies that the weight grows with the number of rules.
+     */
+    @Test
+    public void weightGrowsWithRules() {
+        final int oneRule = RuleSetsWeigher.SHARED.weigh(ruleSets(mockRules(1)));
+        final int tenRules = RuleSetsWeigher.SHARED.weigh(ruleSets(mockRules(10)));
+
+        assertTrue("Ten rules should weigh more than one rule", tenRules > oneRule);
+    }
+
+    /**
+     * Verifies that an XPath rule weighs more than a plain rule and that its weight grows with the length of its
+     * expression.
+     */
+    @Test
+    public void xpathRules() {
+        final int plainRule = RuleSetsWeigher.SHARED.weigh(ruleSets(mockRules(1)));
+        final String longExpression = "//A" + Strings.repeat("[@B]", 500);
+        final int shortXPath = RuleSetsWeigher.SHARED.weigh(ruleSets(Arrays.<Rule>asList(java(new XPathRule("//A")))));
+        final int longXPath = RuleSetsWeigher.SHARED.weigh(ruleSets(Arrays.<Rule>asList(java(new XPathRule(longExpression)))));
+
+        assertTrue("An XPath rule should weigh more than a plain rule", shortXPath > plainRule);
+        assertTrue("A long XPath expression should weigh more than a short one", longXPath > shortXPath);
+    }
+
+    /**
+     * Verifies that a reference to an XPath rule weighs as much as the rule itself.
+     */
+    @Test
+    public void ruleReferences() {
+        final Rule rule = java(new XPathRule("//A" + Strings.repeat("[@B]", 100)));
+        final RuleReference reference = new RuleReference(rule, new RuleSetReference("test.xml"));
+
+        assertEquals("Weight of a rule reference", RuleSetsWeigher.SHARED.weigh(ruleSets(Arrays.<Rule>asList(rule))),
+                RuleSetsWeigher.SHARED.weigh(ruleSets(Arrays.<Rule>asList(reference))));
+    }
+
+    /**
+     * Verifies that the weight of the rule sets of a project only includes the wrappers of the rules but not the shared
+     * rules they wrap.
+     */
+    @Test
+    public void projectDoesNotOwnRules() {
+        final Rule xpathRule = java(new XPathRule("//A" + Strings.repeat("[@B]", 100)));
+        final RuleReference reference = new RuleReference(xpathRule, new RuleSetReference("test.xml"));
+        final int plainRules = RuleSetsWeigher.PROJECT.weigh(ruleSets(mockRules(10)));
+
+        assertEquals("Project weight of an XPath rule", RuleSetsWeigher.PROJECT.weigh(ruleSets(mockRules(1))),
+                RuleSetsWeigher.PROJECT.weigh(ruleSets(Arrays.<Rule>asList(reference))));
+        assertTrue("The project should weigh less than the shared rules",
+                plainRules < RuleSetsWeigher.SHARED.weigh(ruleSets(mockRules(10))));
+    }
+
+    private static List<Rule> mockRules(final int count) {
+        final List<Rule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rules.add(java(new MockRule("Rule" + i, "", "", "")));
+        }
+        return rules;
+    }
+
+    private static Rule java(final Rule rule) {
+        rule.setLanguage(LanguageRegistry.getLanguage(JavaLanguageModule.NAME));
+        return rule;
+    }
+
+    private static RuleSets ruleSets(final List<Rule> rules) {
+        return new RuleSets(RulesetsFactoryUtils.defaultFactory().createNewRuleSet("test", "test", "test.xml", NONE, NONE, rules));
+    }
+
+}
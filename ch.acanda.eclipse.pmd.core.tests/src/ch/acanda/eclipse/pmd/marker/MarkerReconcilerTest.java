@@ -0,0 +1,115 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.marker;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.runtime.CoreException;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Unit tests for {@link MarkerReconciler}.
+ *
+ * @author Philip Graf
+ */
+public class MarkerReconcilerTest {
+
+    private static final String MARKER_TYPE = "ch.acanda.eclipse.pmd.core.pmdMarker";
+
+    /**
+     * Verifies that {@link MarkerReconciler#reconcile(String, java.util.Collection)} keeps unchanged markers, updates
+     * shifted markers in place, creates new markers and deletes obsolete markers.
+     */
+    @Test
+    public void reconcile() throws CoreException {
+        final IMarker unchanged = mockMarker("java.a.Rule1", "message 1", 10, 20);
+        final IMarker shifted = mockMarker("java.a.Rule2", "message 2", 30, 40);
+        final IMarker obsolete = mockMarker("java.a.Rule3", "message 3", 50, 60);
+        final IFile file = mock(IFile.class);
+        when(file.findMarkers(MARKER_TYPE, true, IResource.DEPTH_ZERO)).thenReturn(new IMarker[] { unchanged, shifted, obsolete });
+        final IWorkspace workspace = mock(IWorkspace.class);
+        when(file.getWorkspace()).thenReturn(workspace);
+        final IMarker created = mock(IMarker.class);
+        when(file.createMarker(MARKER_TYPE)).thenReturn(created);
+
+        final MarkerAttributes unchangedAttributes = createAttributes("java.a.Rule1", "message 1", 10, 20);
+        final MarkerAttributes shiftedAttributes = createAttributes("java.a.Rule2", "message 2", 35, 45);
+        final MarkerAttributes newAttributes = createAttributes("java.a.Rule4", "message 4", 70, 80);
+        final MarkerChanges changes =
+                new MarkerReconciler(file).reconcile(MARKER_TYPE, ImmutableList.of(unchangedAttributes, shiftedAttributes, newAttributes));
+
+        verify(unchanged, never()).setAttributes(any(String[].class), any(Object[].class));
+        verify(shifted).setAttributes(any(String[].class), any(Object[].class));
+        verify(file).createMarker(MARKER_TYPE);
+        verify(created).setAttributes(any(String[].class), any(Object[].class));
+        verify(workspace).deleteMarkers(new IMarker[] { obsolete });
+        assertEquals("Number of created markers", 1, changes.getCreated());
+        assertEquals("Number of deleted markers", 1, changes.getDeleted());
+    }
+
+    /**
+     * Verifies that {@link MarkerReconciler#reconcile(String, java.util.Collection)} neither creates nor deletes
+     * markers if the markers did not change.
+     */
+    @Test
+    public void reconcileWithoutChanges() throws CoreException {
+        final IMarker marker = mockMarker("java.a.Rule1", "message 1", 10, 20);
+        final IFile file = mock(IFile.class);
+        when(file.findMarkers(MARKER_TYPE, true, IResource.DEPTH_ZERO)).thenReturn(new IMarker[] { marker });
+
+        new MarkerReconciler(file).reconcile(MARKER_TYPE, ImmutableList.of(createAttributes("java.a.Rule1", "message 1", 10, 20)));
+
+        verify(marker, never()).setAttributes(any(String[].class), any(Object[].class));
+        verify(file, never()).createMarker(anyString());
+        verify(file, never()).getWorkspace();
+    }
+
+    private MarkerAttributes createAttributes(final String ruleId, final String message, final int start, final int end) {
+        return MarkerAttributes.builder(MARKER_TYPE)
+                .put(IMarker.MESSAGE, message)
+                .put(IMarker.CHAR_START, start)
+                .put(IMarker.CHAR_END, end)
+                .put(WrappingPMDMarker.RULE_ID, ruleId)
+                .build();
+    }
+
+    private IMarker mockMarker(final String ruleId, final String message, final int start, final int end) throws CoreException {
+        final Map<String, Object> attributes = new HashMap<>();
+        attributes.put(IMarker.MESSAGE, message);
+        attributes.put(IMarker.CHAR_START, start);
+        attributes.put(IMarker.CHAR_END, end);
+        attributes.put(WrappingPMDMarker.RULE_ID, ruleId);
+        final IMarker marker = mock(IMarker.class);
+        when(marker.getType()).thenReturn(MARKER_TYPE);
+        when(marker.getAttributes()).thenReturn(attributes);
+        for (final Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            when(marker.getAttribute(attribute.getKey())).thenReturn(attribute.getValue());
+        }
+        return marker;
+    }
+
+}
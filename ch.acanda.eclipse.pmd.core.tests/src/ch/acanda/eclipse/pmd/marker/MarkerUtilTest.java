@@ -11,23 +11,26 @@
 
 package ch.acanda.eclipse.pmd.marker;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
-import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.lang.java.JavaLanguageModule;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 /**
  * Unit tests for {@link MarkerUtil}.
@@ -84,14 +87,15 @@ public class MarkerUtilTest {
 
         assertNotNull("The method must always return a marker", actual);
         verify(file).createMarker(MARKER_TYPE);
-        verify(actual).setAttribute(IMarker.MESSAGE, "message");
-        verify(actual).setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
-        verify(actual).setAttribute(IMarker.LINE_NUMBER, 1);
-        verify(actual).setAttribute(IMarker.CHAR_START, 16);
-        verify(actual).setAttribute(IMarker.CHAR_END, 22);
-        verify(actual).setAttribute("ruleId", "java.basic.ExtendsObject");
-        verify(actual).setAttribute("violationClassName", "ClassName");
-        verify(actual).setAttribute("markerText", "Object");
+        final Map<String, Object> attributes = getAttributes(actual);
+        assertEquals("Message", "message", attributes.get(IMarker.MESSAGE));
+        assertEquals("Severity", IMarker.SEVERITY_WARNING, attributes.get(IMarker.SEVERITY));
+        assertEquals("Line number", 1, attributes.get(IMarker.LINE_NUMBER));
+        assertEquals("Start", 16, attributes.get(IMarker.CHAR_START));
+        assertEquals("End", 22, attributes.get(IMarker.CHAR_END));
+        assertEquals("Rule id", "java.basic.ExtendsObject", attributes.get("ruleId"));
+        assertEquals("Violation class name", "ClassName", attributes.get("violationClassName"));
+        assertEquals("Marker text", "Object", attributes.get("markerText"));
     }
 
     /**
@@ -120,14 +124,15 @@ public class MarkerUtilTest {
 
         assertNotNull("The method must always return a marker", actual);
         verify(file).createMarker(MARKER_TYPE);
-        verify(actual).setAttribute(IMarker.MESSAGE, "message");
-        verify(actual).setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
-        verify(actual).setAttribute(IMarker.LINE_NUMBER, 1);
-        verify(actual).setAttribute(IMarker.CHAR_START, 18);
-        verify(actual).setAttribute(IMarker.CHAR_END, 24);
-        verify(actual).setAttribute("ruleId", "java.basic.ExtendsObject");
-        verify(actual).setAttribute("violationClassName", "ClassName");
-        verify(actual).setAttribute("markerText", "Object");
+        final Map<String, Object> attributes = getAttributes(actual);
+        assertEquals("Message", "message", attributes.get(IMarker.MESSAGE));
+        assertEquals("Severity", IMarker.SEVERITY_WARNING, attributes.get(IMarker.SEVERITY));
+        assertEquals("Line number", 1, attributes.get(IMarker.LINE_NUMBER));
+        assertEquals("Start", 18, attributes.get(IMarker.CHAR_START));
+        assertEquals("End", 24, attributes.get(IMarker.CHAR_END));
+        assertEquals("Rule id", "java.basic.ExtendsObject", attributes.get("ruleId"));
+        assertEquals("Violation class name", "ClassName", attributes.get("violationClassName"));
+        assertEquals("Marker text", "Object", attributes.get("markerText"));
     }
 
     /**
@@ -156,14 +161,15 @@ public class MarkerUtilTest {
 
         assertNotNull("The method must always return a marker", actual);
         verify(file).createMarker(MARKER_TYPE);
-        verify(actual).setAttribute(IMarker.MESSAGE, "message");
-        verify(actual).setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
-        verify(actual).setAttribute(IMarker.LINE_NUMBER, 0);
-        verify(actual).setAttribute(IMarker.CHAR_START, 0);
-        verify(actual).setAttribute(IMarker.CHAR_END, 0);
-        verify(actual).setAttribute("ruleId", "java.basic.ExtendsObject");
-        verify(actual).setAttribute("violationClassName", "ClassName");
-        verify(actual).setAttribute("markerText", "");
+        final Map<String, Object> attributes = getAttributes(actual);
+        assertEquals("Message", "message", attributes.get(IMarker.MESSAGE));
+        assertEquals("Severity", IMarker.SEVERITY_WARNING, attributes.get(IMarker.SEVERITY));
+        assertEquals("Line number", 0, attributes.get(IMarker.LINE_NUMBER));
+        assertEquals("Start", 0, attributes.get(IMarker.CHAR_START));
+        assertEquals("End", 0, attributes.get(IMarker.CHAR_END));
+        assertEquals("Rule id", "java.basic.ExtendsObject", attributes.get("ruleId"));
+        assertEquals("Violation class name", "ClassName", attributes.get("violationClassName"));
+        assertEquals("Marker text", "", attributes.get("markerText"));
     }
 
     /**
@@ -193,14 +199,15 @@ public class MarkerUtilTest {
 
         assertNotNull("The method must always return a marker", actual);
         verify(file).createMarker(LONG_MARKER_TYPE);
-        verify(actual).setAttribute(IMarker.MESSAGE, "message");
-        verify(actual).setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
-        verify(actual).setAttribute(IMarker.LINE_NUMBER, 1);
-        verify(actual).setAttribute(IMarker.CHAR_START, 23);
-        verify(actual).setAttribute(IMarker.CHAR_END, 26);
-        verify(actual).setAttribute("ruleId", "java.basic.ExtendsObject");
-        verify(actual).setAttribute("violationClassName", "ClassName");
-        verify(actual, never()).setAttribute(eq("markerText"), anyString());
+        final Map<String, Object> attributes = getAttributes(actual);
+        assertEquals("Message", "message", attributes.get(IMarker.MESSAGE));
+        assertEquals("Severity", IMarker.SEVERITY_WARNING, attributes.get(IMarker.SEVERITY));
+        assertEquals("Line number", 1, attributes.get(IMarker.LINE_NUMBER));
+        assertEquals("Start", 23, attributes.get(IMarker.CHAR_START));
+        assertEquals("End", 26, attributes.get(IMarker.CHAR_END));
+        assertEquals("Rule id", "java.basic.ExtendsObject", attributes.get("ruleId"));
+        assertEquals("Violation class name", "ClassName", attributes.get("violationClassName"));
+        assertFalse("The marker must not have a marker text", attributes.containsKey("markerText"));
     }
 
     /**
@@ -230,13 +237,29 @@ public class MarkerUtilTest {
 
         assertNotNull("The method must always return a marker", actual);
         verify(file).createMarker(MARKER_TYPE);
-        verify(actual).setAttribute(IMarker.MESSAGE, "message");
-        verify(actual).setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
-        verify(actual).setAttribute(IMarker.LINE_NUMBER, 1);
-        verify(actual).setAttribute(IMarker.CHAR_START, 16);
-        verify(actual).setAttribute(IMarker.CHAR_END, 22);
-        verify(actual).setAttribute("ruleId", "java.basic.ExtendsObject");
-        verify(actual).setAttribute("violationClassName", "ClassName");
-        verify(actual).setAttribute("markerText", "Object");
+        final Map<String, Object> attributes = getAttributes(actual);
+        assertEquals("Message", "message", attributes.get(IMarker.MESSAGE));
+        assertEquals("Severity", IMarker.SEVERITY_WARNING, attributes.get(IMarker.SEVERITY));
+        assertEquals("Line number", 1, attributes.get(IMarker.LINE_NUMBER));
+        assertEquals("Start", 16, attributes.get(IMarker.CHAR_START));
+        assertEquals("End", 22, attributes.get(IMarker.CHAR_END));
+        assertEquals("Rule id", "java.basic.ExtendsObject", attributes.get("ruleId"));
+        assertEquals("Violation class name", "ClassName", attributes.get("violationClassName"));
+        assertEquals("Marker text", "Object", attributes.get("markerText"));
+    }
+
+    /**
+     * Returns the attributes that were set with a single call to {@link IMarker#setAttributes(String[], Object[])}.
+     */
+    private Map<String, Object> getAttributes(final IMarker marker) throws CoreException {
+        final ArgumentCaptor<String[]> names = ArgumentCaptor.forClass(String[].class);
+        final ArgumentCaptor<Object[]> values = ArgumentCaptor.forClass(Object[].class);
+        verify(marker).setAttributes(names.capture(), values.capture());
+        final Map<String, Object> attributes = new HashMap<>();
+        for (int i = 0; i < names.getValue().length; i++) {
+            attributes.put(names.getValue()[i], values.getValue()[i]);
+        }
+        return attributes;
     }
+
 }
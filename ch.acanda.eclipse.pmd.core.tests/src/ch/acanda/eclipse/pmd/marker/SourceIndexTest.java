@@ -0,0 +1,73 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.marker;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SourceIndex}.
+ *
+ * @author Philip Graf
+ */
+public class SourceIndexTest {
+
+    /**
+     * Verifies that {@link SourceIndex#getLineOffset(int)} recognizes all line delimiters.
+     */
+    @Test
+    public void getLineOffset() throws BadLocationException {
+        final SourceIndex index = new SourceIndex("a\nbc\r\nd\re\n");
+
+        assertEquals("Number of lines", 5, index.getNumberOfLines());
+        assertEquals("Offset of line 0", 0, index.getLineOffset(0));
+        assertEquals("Offset of line 1", 2, index.getLineOffset(1));
+        assertEquals("Offset of line 2", 6, index.getLineOffset(2));
+        assertEquals("Offset of line 3", 8, index.getLineOffset(3));
+        assertEquals("Offset of line 4", 10, index.getLineOffset(4));
+    }
+
+    /**
+     * Verifies that {@link SourceIndex#getLineOffset(int)} throws an exception if the line does not exist.
+     */
+    @Test(expected = BadLocationException.class)
+    public void getLineOffsetOfMissingLine() throws BadLocationException {
+        new SourceIndex("a\nb").getLineOffset(2);
+    }
+
+    /**
+     * Verifies that {@link SourceIndex#getAbsolutePosition(int, int)} expands tabulators to the next multiple of eight
+     * like PMD does.
+     */
+    @Test
+    public void getAbsolutePositionWithTabs() throws BadLocationException {
+        final SourceIndex index = new SourceIndex("class A {\n\tint\ta;\n  \t\tint b;\n}");
+
+        assertEquals("Offset after 'i' after a tab", 12, index.getAbsolutePosition(1, 9));
+        assertEquals("Offset after 'a' after the second tab", 16, index.getAbsolutePosition(1, 17));
+        assertEquals("Offset after 'b' after spaces and tabs", 27, index.getAbsolutePosition(2, 21));
+    }
+
+    /**
+     * Verifies that {@link SourceIndex#getAbsolutePosition(int, int)} never returns a position after the end of the
+     * content.
+     */
+    @Test
+    public void getAbsolutePositionAfterEndOfContent() throws BadLocationException {
+        final SourceIndex index = new SourceIndex("a\n\tb");
+
+        assertEquals("Offset", 4, index.getAbsolutePosition(1, 100));
+    }
+
+}
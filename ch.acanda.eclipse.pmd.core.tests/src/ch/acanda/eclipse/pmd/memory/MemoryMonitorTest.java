@@ -0,0 +1,123 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link MemoryMonitor}.
+ *
+ * @author Philip Graf
+ */
+public class MemoryMonitorTest {
+
+    private static final long MAX = 1000;
+
+    /**
+     * Verifies that the listeners are notified once when a pool exceeds the pressure threshold.
+     */
+    @Test
+    public void memoryLow() {
+        final MemoryPoolMXBean pool = mockPool("Old Gen", MemoryType.HEAP);
+        final MemoryMonitor monitor = new MemoryMonitor(Arrays.asList(pool));
+        final MemoryPressureListener listener = mock(MemoryPressureListener.class);
+        monitor.addListener(listener);
+
+        setUsedAfterCollection(pool, 800);
+        monitor.checkPressure();
+        assertFalse("Below the pressure threshold", monitor.isUnderPressure());
+
+        setUsedAfterCollection(pool, 900);
+        monitor.checkPressure();
+        monitor.checkPressure();
+        assertTrue("Above the pressure threshold", monitor.isUnderPressure());
+        verify(listener, times(1)).memoryLow();
+    }
+
+    /**
+     * Verifies that the heap only recovers once the usage drops below the recovery threshold.
+     */
+    @Test
+    public void memoryRecovered() {
+        final MemoryPoolMXBean pool = mockPool("Old Gen", MemoryType.HEAP);
+        final MemoryMonitor monitor = new MemoryMonitor(Arrays.asList(pool));
+        final MemoryPressureListener listener = mock(MemoryPressureListener.class);
+        monitor.addListener(listener);
+        setUsedAfterCollection(pool, 900);
+        monitor.checkPressure();
+
+        setUsedAfterCollection(pool, 800);
+        monitor.checkRecovery();
+        assertTrue("Between the thresholds the heap is still under pressure", monitor.isUnderPressure());
+        verify(listener, never()).memoryRecovered();
+
+        setUsedAfterCollection(pool, 600);
+        monitor.checkRecovery();
+        monitor.checkRecovery();
+        assertFalse("Below the recovery threshold the heap has recovered", monitor.isUnderPressure());
+        verify(listener, times(1)).memoryRecovered();
+    }
+
+    /**
+     * Verifies that pools that are not part of the heap are ignored.
+     */
+    @Test
+    public void ignoreNonHeapPools() {
+        final MemoryPoolMXBean pool = mockPool("Metaspace", MemoryType.NON_HEAP);
+        final MemoryMonitor monitor = new MemoryMonitor(Arrays.asList(pool));
+        setUsedAfterCollection(pool, 990);
+
+        monitor.checkPressure();
+
+        assertFalse("A full non-heap pool should not put the heap under pressure", monitor.isUnderPressure());
+    }
+
+    /**
+     * Verifies the description of the usage of the pools.
+     */
+    @Test
+    public void describeUsage() {
+        final MemoryPoolMXBean pool = mockPool("Old Gen", MemoryType.HEAP);
+        final MemoryMonitor monitor = new MemoryMonitor(Arrays.asList(pool));
+        when(pool.getCollectionUsage()).thenReturn(new MemoryUsage(0, 3L << 20, 4L << 20, 4L << 20));
+
+        assertEquals("Usage", "Old Gen: 3 of 4 MB", monitor.describeUsage());
+    }
+
+    private static MemoryPoolMXBean mockPool(final String name, final MemoryType type) {
+        final MemoryPoolMXBean pool = mock(MemoryPoolMXBean.class);
+        when(pool.getName()).thenReturn(name);
+        when(pool.getType()).thenReturn(type);
+        when(pool.isCollectionUsageThresholdSupported()).thenReturn(true);
+        when(pool.getUsage()).thenReturn(new MemoryUsage(0, 0, MAX, MAX));
+        return pool;
+    }
+
+    private static void setUsedAfterCollection(final MemoryPoolMXBean pool, final long used) {
+        when(pool.getCollectionUsage()).thenReturn(new MemoryUsage(0, used, MAX, MAX));
+    }
+
+}
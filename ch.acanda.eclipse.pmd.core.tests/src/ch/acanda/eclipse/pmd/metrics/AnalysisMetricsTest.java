@@ -0,0 +1,108 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+
+import com.google.common.base.Suppliers;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Unit tests for {@link AnalysisMetrics}.
+ *
+ * @author Philip Graf
+ */
+public class AnalysisMetricsTest {
+
+    /**
+     * Verifies that the files, violations and analysis times are summed up and that the time is grouped by language.
+     */
+    @Test
+    public void fileAnalyzed() {
+        final AnalysisMetrics metrics = new AnalysisMetrics();
+
+        metrics.fileAnalyzed("java", 2_000_000, 3);
+        metrics.fileAnalyzed("java", 3_000_000, 0);
+        metrics.fileAnalyzed("xml", 1_000_000, 1);
+
+        assertEquals("Files analyzed", 3, metrics.getFilesAnalyzed());
+        assertEquals("Violations", 4, metrics.getViolations());
+        assertEquals("Analysis time by language", ImmutableMap.of("java", 5L, "xml", 1L), metrics.getAnalysisTimeMillisByLanguage());
+    }
+
+    /**
+     * Verifies that the gauges are read from their sources.
+     */
+    @Test
+    public void gauges() {
+        final AnalysisMetrics metrics = new AnalysisMetrics();
+
+        metrics.setRuleSetsCacheStats(Suppliers.ofInstance(new CacheStats(1, 2, 3, 4, 5_000_000, 6)));
+        metrics.setRuleSetsCacheWeights(Suppliers.<Map<String, Integer>>ofInstance(ImmutableMap.of("Foo", 8, "Bar", 9)));
+        metrics.setQueueDepth(Suppliers.ofInstance(7));
+
+        assertEquals("Rule sets cache hits", 1, metrics.getRuleSetsCacheHits());
+        assertEquals("Rule sets cache misses", 2, metrics.getRuleSetsCacheMisses());
+        assertEquals("Rule sets cache loads", 7, metrics.getRuleSetsCacheLoads());
+        assertEquals("Rule sets cache load time", 5, metrics.getRuleSetsCacheLoadTimeMillis());
+        assertEquals("Rule sets cache evictions", 6, metrics.getRuleSetsCacheEvictions());
+        assertEquals("Rule sets cache weight by project", ImmutableMap.of("Foo", 8, "Bar", 9), metrics.getRuleSetsCacheWeightByProject());
+        assertEquals("Rule sets cache weight", 17, metrics.getRuleSetsCacheWeight());
+        assertEquals("Queue depth", 7, metrics.getQueueDepth());
+    }
+
+    /**
+     * Verifies that the metrics are published as an OSGi service and a platform MBean until they are unregistered.
+     */
+    @Test
+    public void registerAndUnregister() throws JMException {
+        final AnalysisMetrics metrics = new AnalysisMetrics();
+        metrics.markersChanged(2, 1);
+        final BundleContext context = mock(BundleContext.class);
+        final ServiceRegistration<?> registration = mock(ServiceRegistration.class);
+        doReturn(registration).when(context).registerService(eq(AnalysisMetricsMXBean.class), any(AnalysisMetricsMXBean.class), isNull());
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(AnalysisMetrics.OBJECT_NAME);
+
+        metrics.register(context);
+        try {
+            assertEquals("Markers created", 2L, server.getAttribute(name, "MarkersCreated"));
+            assertEquals("Markers deleted", 1L, server.getAttribute(name, "MarkersDeleted"));
+        } finally {
+            metrics.unregister();
+        }
+
+        verify(context).registerService(eq(AnalysisMetricsMXBean.class), eq(metrics), isNull());
+        verify(registration).unregister();
+        assertFalse("MBean should be unregistered", server.isRegistered(name));
+    }
+
+}
@@ -0,0 +1,106 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.profiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link AnalysisEvent}. The tests use the JFR API through reflection as the tests are compiled for
+ * Java 7.
+ *
+ * @author Philip Graf
+ */
+public class AnalysisEventTest {
+
+    /**
+     * Verifies that an event is disabled while no recording is running.
+     */
+    @Test
+    public void disabledWithoutRecording() {
+        assertFalse("Event should be disabled", AnalysisEvent.begin(AnalysisEvent.Type.FILE_READ).isEnabled());
+    }
+
+    /**
+     * Verifies that an event and its fields are recorded while a recording is running.
+     */
+    @Test
+    public void recordedWhileRecording() throws Exception {
+        assumeTrue("JFR is not available", isFlightRecorderAvailable());
+        final IFile file = mock(IFile.class);
+        final IProject project = mock(IProject.class);
+        when(file.getFullPath()).thenReturn(new org.eclipse.core.runtime.Path("/project/A.java"));
+        when(file.getProject()).thenReturn(project);
+        when(project.getName()).thenReturn("project");
+
+        final Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        final Object recording = recordingClass.newInstance();
+        final Path dump = Files.createTempFile("analysis-event", ".jfr");
+        try {
+            recordingClass.getMethod("enable", String.class).invoke(recording, "ch.acanda.eclipse.pmd.FileRead");
+            recordingClass.getMethod("start").invoke(recording);
+            final AnalysisEvent event = AnalysisEvent.begin(AnalysisEvent.Type.FILE_READ);
+            assertTrue("Event should be enabled", event.isEnabled());
+            event.resource(file).bytes(42).commit();
+            recordingClass.getMethod("stop").invoke(recording);
+            recordingClass.getMethod("dump", Path.class).invoke(recording, dump);
+
+            final List<Object> events = readEvents(dump, "ch.acanda.eclipse.pmd.FileRead");
+            assertEquals("Number of recorded events", 1, events.size());
+            final Method getString = events.get(0).getClass().getMethod("getString", String.class);
+            final Method getLong = events.get(0).getClass().getMethod("getLong", String.class);
+            assertEquals("File", "/project/A.java", getString.invoke(events.get(0), "file"));
+            assertEquals("Project", "project", getString.invoke(events.get(0), "project"));
+            assertEquals("Bytes", 42L, getLong.invoke(events.get(0), "bytes"));
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            Files.delete(dump);
+        }
+    }
+
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.EventFactory");
+            return true;
+        } catch (final ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static List<Object> readEvents(final Path dump, final String eventName) throws ReflectiveOperationException {
+        final Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+        final List<?> allEvents = (List<?>) recordingFile.getMethod("readAllEvents", Path.class).invoke(null, dump);
+        final List<Object> events = new ArrayList<>();
+        for (final Object event : allEvents) {
+            final Object type = event.getClass().getMethod("getEventType").invoke(event);
+            if (eventName.equals(type.getClass().getMethod("getName").invoke(type))) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+}
@@ -0,0 +1,109 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.profiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Unit tests for {@link BuildRecorder} and {@link BuildReport}.
+ *
+ * @author Philip Graf
+ */
+public class BuildRecorderTest {
+
+    /**
+     * Verifies that the slowest files are returned first and that the result is limited.
+     */
+    @Test
+    public void slowestFilesFirst() {
+        final BuildReport report = new BuildReport(0, 16);
+        report.record(newRecord("a", 20));
+        report.record(newRecord("b", 30));
+        report.record(newRecord("c", 10));
+
+        final List<FileRecord> slowest = report.getSlowestFiles(2);
+
+        assertEquals("Number of files", 2, slowest.size());
+        assertEquals("Slowest file", "b", slowest.get(0).getPath());
+        assertEquals("Second slowest file", "a", slowest.get(1).getPath());
+    }
+
+    /**
+     * Verifies that the ring buffer keeps the most recent files while the file count and the histogram cover all
+     * files of the build.
+     */
+    @Test
+    public void ringBufferKeepsMostRecentFiles() {
+        final BuildReport report = new BuildReport(0, 4);
+        for (int i = 1; i <= 10; i++) {
+            report.record(newRecord(Integer.toString(i), i));
+        }
+
+        final List<FileRecord> slowest = report.getSlowestFiles(100);
+
+        assertEquals("File count", 10, report.getFileCount());
+        assertEquals("Histogram count", 10, report.getHistogram().getCount());
+        assertEquals("Number of kept files", 4, slowest.size());
+        assertEquals("Slowest kept file", "10", slowest.get(0).getPath());
+        assertEquals("Fastest kept file", "7", slowest.get(3).getPath());
+    }
+
+    /**
+     * Verifies that builds without any analyzed files do not show up and do not push other builds out of the history.
+     */
+    @Test
+    public void emptyBuildIsDropped() {
+        final BuildRecorder recorder = new BuildRecorder();
+        recorder.startBuild();
+        recorder.record(newRecord("a", 1));
+        for (int i = 0; i < 20; i++) {
+            recorder.startBuild();
+        }
+
+        final ImmutableList<BuildReport> builds = recorder.getBuilds();
+
+        assertEquals("Number of builds", 1, builds.size());
+        assertEquals("Files of the build", "a", builds.get(0).getSlowestFiles(1).get(0).getPath());
+    }
+
+    /**
+     * Verifies that the most recent build comes first.
+     */
+    @Test
+    public void mostRecentBuildFirst() {
+        final BuildRecorder recorder = new BuildRecorder();
+        recorder.startBuild();
+        recorder.record(newRecord("first", 1));
+        recorder.startBuild();
+        final FileRecord second = newRecord("second", 1);
+        recorder.record(second);
+
+        final ImmutableList<BuildReport> builds = recorder.getBuilds();
+
+        assertEquals("Number of builds", 2, builds.size());
+        assertSame("Most recent build", second, builds.get(0).getSlowestFiles(1).get(0));
+        assertTrue("Start time", builds.get(0).getStartTimeMillis() >= builds.get(1).getStartTimeMillis());
+    }
+
+    private static FileRecord newRecord(final String path, final long nanos) {
+        return new FileRecord(path, 100, nanos, 0, 0);
+    }
+
+}
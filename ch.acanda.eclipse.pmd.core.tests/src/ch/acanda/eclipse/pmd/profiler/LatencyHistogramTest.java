@@ -0,0 +1,63 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.profiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ *
+ * @author Philip Graf
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Verifies that every duration falls into the bucket whose bounds contain it.
+     */
+    @Test
+    public void bucketBoundsContainDuration() {
+        final long[] durations = { 0, 1, 7, 8, 15, 16, 17, 1000, 123_456_789, Long.MAX_VALUE };
+        for (final long duration : durations) {
+            final int index = LatencyHistogram.getIndex(duration);
+            assertTrue("Lower bound of " + duration, LatencyHistogram.getLowerBound(index) <= duration);
+            assertTrue("Upper bound of " + duration, LatencyHistogram.getUpperBound(index) >= duration);
+        }
+    }
+
+    /**
+     * Verifies that the percentiles are accurate to within 12.5%.
+     */
+    @Test
+    public void getPercentile() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1_000_000L);
+        }
+
+        assertEquals("Number of durations", 100, histogram.getCount());
+        assertEquals("Median", 50_000_000, histogram.getPercentile(50), 50_000_000 * 0.125);
+        assertEquals("95th percentile", 95_000_000, histogram.getPercentile(95), 95_000_000 * 0.125);
+        assertEquals("Maximum", 100_000_000, histogram.getPercentile(100), 100_000_000 * 0.125);
+    }
+
+    /**
+     * Verifies that the percentiles of an empty histogram are 0.
+     */
+    @Test
+    public void getPercentileOfEmptyHistogram() {
+        assertEquals("95th percentile", 0, new LatencyHistogram().getPercentile(95));
+    }
+
+}
@@ -79,6 +79,24 @@ public final class ProjectModelSerializerTest {
         assertValid(actual);
     }
 
+    /**
+     * Verifies that {@link ProjectModelSerializer#serialize(ProjectModel)} serializes the include and exclude patterns
+     * of a {@link ProjectModel} with version 0.9 of the schema.
+     */
+    @Test
+    public void serializeWithFilePatterns() throws SAXException, IOException {
+        final ProjectModel projectModel = new ProjectModel("TestProjectName");
+        projectModel.setPMDEnabled(true);
+        projectModel.setIncludePatterns(Arrays.asList("src/**"));
+        projectModel.setExcludePatterns(Arrays.asList("**/generated/**", "src/<test>/*.java"));
+
+        final String actual = new ProjectModelSerializer().serialize(projectModel);
+
+        final String expected = createXmlConfigurationWithFilePatterns();
+        assertEquals("Serialized project model", expected, actual);
+        assertValid(actual, "eclipse-pmd-0.9.xsd");
+    }
+
     private String createXmlConfiguration() {
         return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
                 + "<eclipse-pmd xmlns=\"http://acanda.ch/eclipse-pmd/0.8\""
@@ -103,6 +121,20 @@ public final class ProjectModelSerializerTest {
                 + "</eclipse-pmd>";
     }
 
+    private String createXmlConfigurationWithFilePatterns() {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<eclipse-pmd xmlns=\"http://acanda.ch/eclipse-pmd/0.9\""
+                + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+                + " xsi:schemaLocation=\"http://acanda.ch/eclipse-pmd/0.9 http://acanda.ch/eclipse-pmd/eclipse-pmd-0.9.xsd\">\n"
+                + "  <analysis enabled=\"true\" />\n"
+                + "  <files>\n"
+                + "    <include pattern=\"src/**\" />\n"
+                + "    <exclude pattern=\"**/generated/**\" />\n"
+                + "    <exclude pattern=\"src/&lt;test&gt;/*.java\" />\n"
+                + "  </files>\n"
+                + "</eclipse-pmd>";
+    }
+
     private Iterable<RuleSetModel> createRuleSets() {
         return Arrays.asList(new RuleSetModel("Project Rule Set", new Location("pmd.xml", LocationContext.PROJECT)),
                 new RuleSetModel("Workspace Rule Set", new Location("Projext X/pmd.xml", LocationContext.WORKSPACE)),
@@ -111,8 +143,12 @@ public final class ProjectModelSerializerTest {
     }
 
     private void assertValid(final String actual) throws SAXException, IOException {
+        assertValid(actual, "eclipse-pmd-0.8.xsd");
+    }
+
+    private void assertValid(final String actual, final String schemaName) throws SAXException, IOException {
         final SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-        final Source schemaSource = new StreamSource(ProjectModelSerializerTest.class.getResourceAsStream("eclipse-pmd-0.8.xsd"));
+        final Source schemaSource = new StreamSource(ProjectModelSerializerTest.class.getResourceAsStream(schemaName));
         final Schema schema = schemaFactory.newSchema(schemaSource);
         final Validator validator = schema.newValidator();
         final Source xmlSource = new StreamSource(new StringReader(actual));
@@ -149,6 +185,20 @@ public final class ProjectModelSerializerTest {
         assertEquals("Number of rule sets", 0, projectModel.getRuleSets().size());
     }
 
+    /**
+     * Verifies that {@link ProjectModelSerializer#deserialize(java.io.InputStream, String)} deserializes the include
+     * and exclude patterns of {@link ProjectModel} correctly.
+     */
+    @Test
+    public void deserializeProjectModelWithFilePatterns() throws IOException {
+        final ByteArrayInputStream stream = new ByteArrayInputStream(createXmlConfigurationWithFilePatterns().getBytes(UTF_8));
+
+        final ProjectModel projectModel = new ProjectModelSerializer().deserialize(stream, "TestProjectName");
+
+        assertEquals("Include patterns", Arrays.asList("src/**"), projectModel.getIncludePatterns());
+        assertEquals("Exclude patterns", Arrays.asList("**/generated/**", "src/<test>/*.java"), projectModel.getExcludePatterns());
+    }
+
     /**
      * Verifies that {@link ProjectModelSerializer#deserialize(java.io.InputStream, String)} deserializes the attributes
      * of a project {@link RuleSetModel} correctly.
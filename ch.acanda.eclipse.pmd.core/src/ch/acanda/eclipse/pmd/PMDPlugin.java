@@ -11,20 +11,37 @@
 
 package ch.acanda.eclipse.pmd;
 
+import java.io.IOException;
+
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
 import com.google.common.base.Optional;
 
+import ch.acanda.eclipse.pmd.builder.FilePrioritizer;
+import ch.acanda.eclipse.pmd.builder.PMDBuilder;
+import ch.acanda.eclipse.pmd.cache.AnalysisCache;
+import ch.acanda.eclipse.pmd.cache.AnalysisCacheSaveParticipant;
+import ch.acanda.eclipse.pmd.cache.RemoteRuleSetMirror;
 import ch.acanda.eclipse.pmd.domain.ProjectModel;
 import ch.acanda.eclipse.pmd.domain.WorkspaceModel;
+import ch.acanda.eclipse.pmd.editor.EditorAnalysis;
+import ch.acanda.eclipse.pmd.editor.WorkbenchFocusTracker;
+import ch.acanda.eclipse.pmd.memory.MemoryMonitor;
+import ch.acanda.eclipse.pmd.memory.MemoryPressureListener;
+import ch.acanda.eclipse.pmd.metrics.AnalysisMetrics;
+import ch.acanda.eclipse.pmd.preferences.PMDPreferences;
+import ch.acanda.eclipse.pmd.profiler.BuildProfiler;
+import ch.acanda.eclipse.pmd.profiler.BuildRecorder;
 import ch.acanda.eclipse.pmd.repository.ProjectModelRepository;
 import ch.acanda.eclipse.pmd.ui.util.PMDPluginImages;
 import net.sourceforge.pmd.lang.LanguageRegistry;
@@ -40,6 +57,24 @@ public final class PMDPlugin extends AbstractUIPlugin {
 
     private WorkspaceModel workspaceModel;
 
+    private AnalysisCache analysisCache;
+
+    private RemoteRuleSetMirror remoteRuleSetMirror;
+
+    private EditorAnalysis editorAnalysis;
+
+    private final FilePrioritizer filePrioritizer = new FilePrioritizer();
+
+    private WorkbenchFocusTracker focusTracker;
+
+    private final BuildProfiler buildProfiler = new BuildProfiler();
+
+    private final BuildRecorder buildRecorder = new BuildRecorder();
+
+    private final AnalysisMetrics analysisMetrics = new AnalysisMetrics();
+
+    private final MemoryMonitor memoryMonitor = new MemoryMonitor();
+
     @Override
     @SuppressWarnings("PMD.SignatureDeclareThrowsException")
     public void start(final BundleContext context) throws Exception {
@@ -47,11 +82,27 @@ public final class PMDPlugin extends AbstractUIPlugin {
         plugin = this;
         initWorkspaceModel();
         initPMD();
+        initAnalysisCache();
+        initRemoteRuleSetMirror();
+        initMemoryMonitor();
+        buildProfiler.setEnabled(PMDPreferences.isProfilingEnabled());
+        initEditorAnalysis();
+        initFocusTracker();
+        analysisMetrics.register(context);
     }
 
     @Override
     @SuppressWarnings("PMD.SignatureDeclareThrowsException")
     public void stop(final BundleContext context) throws Exception {
+        if (editorAnalysis != null) {
+            editorAnalysis.stop();
+        }
+        focusTracker.stop();
+        remoteRuleSetMirror.stop();
+        memoryMonitor.stop();
+        analysisMetrics.unregister();
+        Job.getJobManager().cancel(PMDBuilder.JOB_FAMILY);
+        ResourcesPlugin.getWorkspace().removeSaveParticipant(ID);
         PMDPluginImages.dispose();
         plugin = null;
         super.stop(context);
@@ -84,10 +135,70 @@ public final class PMDPlugin extends AbstractUIPlugin {
         ResourcesPlugin.getWorkspace().addResourceChangeListener(workspaceChangeListener, IResourceChangeEvent.POST_CHANGE);
     }
 
+    private void initAnalysisCache() {
+        final long maxWeight = PMDPreferences.getAnalysisCacheMaxWeight();
+        analysisCache = new AnalysisCache(getStateLocation().append("analysis-cache.bin").toFile(), maxWeight);
+        try {
+            ResourcesPlugin.getWorkspace().addSaveParticipant(ID, new AnalysisCacheSaveParticipant(analysisCache));
+        } catch (final CoreException e) {
+            warn("Could not register the analysis cache with the workspace. The cache will not survive a restart.", e);
+        }
+    }
+
+    private void initRemoteRuleSetMirror() {
+        remoteRuleSetMirror = new RemoteRuleSetMirror(getStateLocation().append("remote-rulesets").toFile().toPath());
+        remoteRuleSetMirror.start();
+    }
+
+    private void initMemoryMonitor() {
+        memoryMonitor.addListener(new MemoryPressureReaction());
+        memoryMonitor.start();
+    }
+
+    private void initEditorAnalysis() {
+        if (PMDPreferences.isAsYouTypeEnabled()) {
+            editorAnalysis = new EditorAnalysis();
+            editorAnalysis.start();
+        }
+    }
+
+    private void initFocusTracker() {
+        focusTracker = new WorkbenchFocusTracker(filePrioritizer);
+        focusTracker.start();
+    }
+
     public WorkspaceModel getWorkspaceModel() {
         return workspaceModel;
     }
 
+    public AnalysisCache getAnalysisCache() {
+        return analysisCache;
+    }
+
+    public RemoteRuleSetMirror getRemoteRuleSetMirror() {
+        return remoteRuleSetMirror;
+    }
+
+    public MemoryMonitor getMemoryMonitor() {
+        return memoryMonitor;
+    }
+
+    public FilePrioritizer getFilePrioritizer() {
+        return filePrioritizer;
+    }
+
+    public BuildProfiler getBuildProfiler() {
+        return buildProfiler;
+    }
+
+    public BuildRecorder getBuildRecorder() {
+        return buildRecorder;
+    }
+
+    public AnalysisMetrics getAnalysisMetrics() {
+        return analysisMetrics;
+    }
+
     /**
      * Logs an error message to the platform, i.e. it will be visible in the Error Log view and distributed to the log
      * listeners.
@@ -154,4 +265,31 @@ public final class PMDPlugin extends AbstractUIPlugin {
         return imageDescriptorFromPlugin(ID, path);
     }
 
+    /**
+     * Releases the analysis cache when the heap comes under pressure and logs how the plug-in reacts. The rule sets
+     * cache and the analysis react on their own.
+     */
+    private final class MemoryPressureReaction implements MemoryPressureListener {
+
+        @Override
+        public void memoryLow() {
+            try {
+                analysisCache.release();
+            } catch (final IOException e) {
+                warn("Could not save the analysis cache before releasing it. The cached results are lost.", e);
+            }
+            warn("The heap is running low (" + memoryMonitor.describeUsage() + " used after garbage collection). eclipse-pmd has "
+                    + "released its rule sets and analysis caches and pauses the analysis until the heap has recovered. If it does "
+                    + "not recover within a minute, the analysis continues with a single thread. The analysis as you type is "
+                    + "suspended until the heap has recovered.", null);
+        }
+
+        @Override
+        public void memoryRecovered() {
+            info("The heap has recovered (" + memoryMonitor.describeUsage() + " used after garbage collection). eclipse-pmd "
+                    + "resumes the analysis with " + PMDPreferences.getFullBuildThreads() + " threads.");
+        }
+
+    }
+
 }
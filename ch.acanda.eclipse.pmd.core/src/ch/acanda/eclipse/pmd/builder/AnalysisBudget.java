@@ -0,0 +1,107 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import net.sourceforge.pmd.RuleContext;
+
+/**
+ * The time budget of the analysis of a single file. The budget is passed to the {@link GuardedRule guarded rules} as an
+ * attribute of the rule context. Once the budget is exhausted or the analysis is canceled, the guarded rules that have
+ * not yet been applied to the file are skipped. The budget also keeps track of whether the violations of the file are
+ * complete. A file is only analyzed by one thread at a time, so the budget is not thread-safe.
+ *
+ * @author Philip Graf
+ */
+final class AnalysisBudget {
+
+    private static final String ATTRIBUTE = AnalysisBudget.class.getName();
+
+    private static final AnalysisBudget UNLIMITED = new AnalysisBudget(0);
+
+    private final long budgetNanos;
+    private final IProgressMonitor monitor;
+    private long start;
+    private int skippedRules;
+    private boolean isIncomplete;
+
+    /**
+     * @param budgetMillis The time budget in milliseconds. A budget of 0 is unlimited.
+     */
+    AnalysisBudget(final long budgetMillis) {
+        this(budgetMillis, new NullProgressMonitor());
+    }
+
+    /**
+     * @param budgetMillis The time budget in milliseconds. A budget of 0 is unlimited.
+     * @param monitor The monitor of the analysis. The budget is exhausted as soon as the monitor is canceled.
+     */
+    AnalysisBudget(final long budgetMillis, final IProgressMonitor monitor) {
+        budgetNanos = MILLISECONDS.toNanos(budgetMillis);
+        this.monitor = monitor;
+    }
+
+    /**
+     * Attaches this budget to the rule context of a file and starts the clock.
+     */
+    void attachTo(final RuleContext context) {
+        start = System.nanoTime();
+        context.setAttribute(ATTRIBUTE, this);
+    }
+
+    /**
+     * @return The budget attached to the rule context or an unlimited budget if there is none.
+     */
+    static AnalysisBudget of(final RuleContext context) {
+        final Object budget = context.getAttribute(ATTRIBUTE);
+        return budget instanceof AnalysisBudget ? (AnalysisBudget) budget : UNLIMITED;
+    }
+
+    boolean isExhausted() {
+        return monitor.isCanceled() || budgetNanos > 0 && System.nanoTime() - start > budgetNanos;
+    }
+
+    void skipRule() {
+        if (this != UNLIMITED) {
+            skippedRules++;
+        }
+    }
+
+    /**
+     * @return The number of rules that have been skipped because the budget was exhausted or the analysis was canceled.
+     */
+    int getSkippedRules() {
+        return skippedRules;
+    }
+
+    /**
+     * Marks the violations of the file as incomplete, e.g. because a rule has been left out since it is quarantined or
+     * since it failed.
+     */
+    void markIncomplete() {
+        if (this != UNLIMITED) {
+            isIncomplete = true;
+        }
+    }
+
+    /**
+     * @return {@code true} if all rules have been applied to the file, i.e. if its violations may be cached.
+     */
+    boolean isComplete() {
+        return skippedRules == 0 && !isIncomplete;
+    }
+
+}
@@ -0,0 +1,277 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.WorkspaceJob;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import ch.acanda.eclipse.pmd.PMDPlugin;
+import ch.acanda.eclipse.pmd.memory.MemoryMonitor;
+import ch.acanda.eclipse.pmd.preferences.PMDPreferences;
+import ch.acanda.eclipse.pmd.profiler.BuildRecorder;
+import net.sourceforge.pmd.RuleSets;
+
+/**
+ * Analyzes files in the background so PMD does not run while the builder holds the workspace lock. The pipeline
+ * consists of two stages that are connected by a bounded queue:
+ * <ol>
+ * <li>The analysis job runs PMD on the enqueued files. It does not have a scheduling rule, so it does not block any
+ * other operation on the workspace.</li>
+ * <li>The marker job is a short workspace job that drains the queue and updates the markers of the analyzed files.</li>
+ * </ol>
+ * When the marker job cannot keep up, the analysis job waits until there is space in the queue again.
+ * <p>
+ * Repeated requests for the same file are coalesced by the {@link AnalysisQueue}, so a file that is saved several times
+ * in quick succession is only analyzed once. The queue also orders the files, so the files the user is working on are
+ * analyzed first.
+ * <p>
+ * While the heap is under pressure, the analysis pauses after the current batch of files until the heap has recovered.
+ * If it does not recover within a minute, the analysis continues with a single thread, as the pressure might not be
+ * caused by PMD at all and a slow analysis is still better than none.
+ *
+ * @author Philip Graf
+ */
+final class AnalysisPipeline {
+
+    private static final int MAX_PENDING_RESULTS = 64;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    private static final int FILES_PER_THREAD_AND_BATCH = 16;
+    private static final long PAUSE_CHECK_INTERVAL_MILLIS = 1000;
+    private static final long MAX_PAUSE_MILLIS = 60_000;
+
+    private final Analyzer analyzer;
+    private final ViolationProcessor violationProcessor;
+    private final BuildRecorder recorder;
+    private final MemoryMonitor memoryMonitor;
+
+    private final AnalysisQueue queue;
+
+    private final BlockingQueue<AnalysisResult> results = new ArrayBlockingQueue<>(MAX_PENDING_RESULTS);
+
+    private final Job analysisJob = new AnalysisJob();
+    private final Job markerJob = new MarkerJob();
+
+    AnalysisPipeline(final Analyzer analyzer, final ViolationProcessor violationProcessor, final AnalysisQueue.Prioritizer prioritizer,
+            final BuildRecorder recorder, final MemoryMonitor memoryMonitor) {
+        this.analyzer = analyzer;
+        this.violationProcessor = violationProcessor;
+        this.recorder = recorder;
+        this.memoryMonitor = memoryMonitor;
+        queue = new AnalysisQueue(prioritizer);
+    }
+
+    /**
+     * Requests the analysis of files. The files are analyzed after the quiet period, unless they are requested again
+     * before the quiet period has passed. In that case the quiet period starts again.
+     */
+    public void enqueue(final Iterable<IFile> files, final RuleSets ruleSets) {
+        final long quietPeriod = PMDPreferences.getAnalysisQuietPeriod();
+        queue.add(files, ruleSets, currentTimeMillis() + quietPeriod);
+        analysisJob.schedule(quietPeriod);
+    }
+
+    /**
+     * @return The number of files waiting to be analyzed.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private static long currentTimeMillis() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    /**
+     * Runs PMD on the pending files and puts the results into the queue.
+     */
+    private final class AnalysisJob extends Job implements ParallelAnalyzer.ResultHandler {
+
+        private IProgressMonitor monitor;
+
+        /**
+         * The time when the analysis has been paused because the heap came under pressure.
+         */
+        private Optional<Long> pauseStartMillis = Optional.absent();
+
+        AnalysisJob() {
+            super("PMD analysis");
+            setPriority(LONG);
+        }
+
+        @Override
+        public boolean belongsTo(final Object family) {
+            return PMDBuilder.JOB_FAMILY.equals(family);
+        }
+
+        @Override
+        protected IStatus run(final IProgressMonitor monitor) {
+            this.monitor = monitor;
+            final SubMonitor progress = SubMonitor.convert(monitor, "PMD analyzing files", queue.size());
+            // the workers and their copies of the rule sets are shared by all batches of this run
+            final ParallelAnalyzer parallelAnalyzer = new ParallelAnalyzer(PMDPreferences.getFullBuildThreads(), analyzer);
+            try {
+                Map<RuleSets, List<IFile>> files = takeNextBatch();
+                if (!files.isEmpty()) {
+                    recorder.startBuild();
+                }
+                while (!files.isEmpty()) {
+                    for (final Map.Entry<RuleSets, List<IFile>> entry : files.entrySet()) {
+                        progress.setWorkRemaining(entry.getValue().size() + queue.size());
+                        try {
+                            analyze(entry.getValue(), entry.getKey(), parallelAnalyzer, progress.newChild(entry.getValue().size()));
+                        } finally {
+                            queue.completeAll(entry.getValue());
+                        }
+                    }
+                    files = takeNextBatch();
+                }
+                if (isPaused() && queue.size() > 0) {
+                    schedule(PAUSE_CHECK_INTERVAL_MILLIS);
+                } else {
+                    scheduleNextRun();
+                }
+                return Status.OK_STATUS;
+            } catch (final OperationCanceledException e) {
+                return Status.CANCEL_STATUS;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Status.CANCEL_STATUS;
+            } finally {
+                parallelAnalyzer.shutdown();
+                this.monitor = null;
+            }
+        }
+
+        /**
+         * Takes the due files with the highest priority from the queue. The files are taken in small batches, so a file
+         * whose priority rises while many files are analyzed, e.g. because it has been opened in an editor, is analyzed
+         * right after the current batch.
+         */
+        private Map<RuleSets, List<IFile>> takeNextBatch() {
+            if (isPaused()) {
+                return ImmutableMap.of();
+            }
+            return queue.takeDueFiles(currentTimeMillis(), getThreads() * FILES_PER_THREAD_AND_BATCH);
+        }
+
+        private boolean isPaused() {
+            if (!memoryMonitor.isUnderPressure()) {
+                pauseStartMillis = Optional.absent();
+                return false;
+            }
+            if (!pauseStartMillis.isPresent()) {
+                pauseStartMillis = Optional.of(currentTimeMillis());
+            }
+            return currentTimeMillis() - pauseStartMillis.get() < MAX_PAUSE_MILLIS;
+        }
+
+        private int getThreads() {
+            return memoryMonitor.isUnderPressure() ? 1 : PMDPreferences.getFullBuildThreads();
+        }
+
+        /**
+         * Schedules this job again if there are files whose quiet period has not yet passed.
+         */
+        private void scheduleNextRun() {
+            final Optional<Long> nextDueTime = queue.getNextDueTime();
+            if (nextDueTime.isPresent()) {
+                schedule(Math.max(0, nextDueTime.get() - currentTimeMillis()));
+            }
+        }
+
+        private void analyze(final List<IFile> files, final RuleSets ruleSets, final ParallelAnalyzer parallelAnalyzer,
+                final SubMonitor progress) throws InterruptedException {
+            if (getThreads() > 1 && files.size() > 1) {
+                parallelAnalyzer.analyze(files, ruleSets, this, progress);
+            } else {
+                progress.setWorkRemaining(files.size());
+                for (final IFile file : files) {
+                    if (progress.isCanceled()) {
+                        throw new OperationCanceledException();
+                    }
+                    progress.subTask("PMD analyzing file: " + file.getName());
+                    handle(ImmutableList.of(analyzer.runPMD(file, ruleSets)));
+                    progress.worked(1);
+                }
+            }
+        }
+
+        @Override
+        public void handle(final List<AnalysisResult> analysisResults) throws InterruptedException {
+            for (final AnalysisResult result : analysisResults) {
+                if (!queue.complete(result.getFile())) {
+                    // the file has changed during the analysis and will be analyzed again
+                    continue;
+                }
+                while (!results.offer(result, OFFER_TIMEOUT_MILLIS, MILLISECONDS)) {
+                    // the queue is full so the marker job is already scheduled
+                    if (monitor.isCanceled()) {
+                        throw new OperationCanceledException();
+                    }
+                }
+                markerJob.schedule();
+            }
+        }
+
+    }
+
+    /**
+     * Drains the queue and updates the markers of the analyzed files.
+     */
+    private final class MarkerJob extends WorkspaceJob {
+
+        MarkerJob() {
+            super("PMD markers");
+            setSystem(true);
+        }
+
+        @Override
+        public boolean belongsTo(final Object family) {
+            return PMDBuilder.JOB_FAMILY.equals(family);
+        }
+
+        @Override
+        public IStatus runInWorkspace(final IProgressMonitor monitor) {
+            final List<AnalysisResult> batch = new ArrayList<>();
+            results.drainTo(batch);
+            if (!batch.isEmpty()) {
+                try {
+                    violationProcessor.annotate(batch);
+                } catch (final CoreException e) {
+                    PMDPlugin.getDefault().error("Could not annotate " + batch.size() + " files", e);
+                }
+            }
+            return Status.OK_STATUS;
+        }
+
+    }
+
+}
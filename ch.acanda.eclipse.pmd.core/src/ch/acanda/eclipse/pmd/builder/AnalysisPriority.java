@@ -0,0 +1,42 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+/**
+ * The priority of a file waiting to be analyzed. The files are analyzed in the order of the declaration of the
+ * priorities, i.e. the files that are open in an editor first.
+ *
+ * @author Philip Graf
+ */
+public enum AnalysisPriority {
+
+    /**
+     * The file is open in an editor.
+     */
+    OPEN,
+
+    /**
+     * The file has been modified recently.
+     */
+    RECENTLY_MODIFIED,
+
+    /**
+     * The file or one of its ancestors is selected or part of the working set of the workbench window.
+     */
+    SELECTED,
+
+    /**
+     * Any other file.
+     */
+    DEFAULT
+
+}
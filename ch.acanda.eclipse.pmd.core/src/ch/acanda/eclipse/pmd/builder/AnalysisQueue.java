@@ -0,0 +1,206 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+
+import com.google.common.base.Optional;
+
+import net.sourceforge.pmd.RuleSets;
+
+/**
+ * The files waiting to be analyzed. The queue coalesces repeated requests for the same file: a file is only analyzed
+ * once it has not been requested again for a quiet period, and it is never analyzed twice at the same time. If a file
+ * is requested while it is being analyzed, the running analysis becomes stale and the file is analyzed once more.
+ * <p>
+ * The files are taken from the queue in the order of their {@link AnalysisPriority} and, within the same priority, in
+ * the order they have been requested. The priorities are determined when a file is requested and again whenever the
+ * prioritizer reports a change, e.g. because a file has been opened in an editor.
+ * <p>
+ * The queue does not read the clock itself; all points in time are passed in by the caller, in milliseconds. The queue
+ * is thread-safe.
+ *
+ * @author Philip Graf
+ */
+final class AnalysisQueue {
+
+    private final Prioritizer prioritizer;
+    private int prioritizerChangeCount;
+
+    private final Map<IFile, Request> pending = new HashMap<>();
+    private final Map<AnalysisPriority, Set<IFile>> pendingByPriority = new EnumMap<>(AnalysisPriority.class);
+    private final Set<IFile> running = new HashSet<>();
+    private final Set<IFile> stale = new HashSet<>();
+
+    AnalysisQueue(final Prioritizer prioritizer) {
+        this.prioritizer = prioritizer;
+        prioritizerChangeCount = prioritizer.getChangeCount();
+        for (final AnalysisPriority priority : AnalysisPriority.values()) {
+            pendingByPriority.put(priority, new LinkedHashSet<IFile>());
+        }
+    }
+
+    /**
+     * Requests the analysis of files. If a file has already been requested, the previous request is replaced.
+     *
+     * @param dueTime The time when the files should be analyzed at the earliest.
+     */
+    public synchronized void add(final Iterable<IFile> files, final RuleSets ruleSets, final long dueTime) {
+        for (final IFile file : files) {
+            final Request previous = pending.get(file);
+            if (previous != null) {
+                pendingByPriority.get(previous.priority).remove(file);
+            }
+            final AnalysisPriority priority = prioritizer.getPriority(file);
+            pending.put(file, new Request(ruleSets, dueTime, priority));
+            pendingByPriority.get(priority).add(file);
+            if (running.contains(file)) {
+                stale.add(file);
+            }
+        }
+    }
+
+    /**
+     * Removes the files with the highest priority that are due and not currently being analyzed from the queue and
+     * marks them as running.
+     *
+     * @param maxFiles The maximum number of files to take.
+     * @return The due files grouped by the rule sets they have to be analyzed with.
+     */
+    public synchronized Map<RuleSets, List<IFile>> takeDueFiles(final long now, final int maxFiles) {
+        updatePriorities();
+        final Map<RuleSets, List<IFile>> filesByRuleSets = new IdentityHashMap<>();
+        int count = 0;
+        for (final Set<IFile> files : pendingByPriority.values()) {
+            final Iterator<IFile> iterator = files.iterator();
+            while (iterator.hasNext() && count < maxFiles) {
+                final IFile file = iterator.next();
+                final Request request = pending.get(file);
+                if (request.dueTime <= now && !running.contains(file)) {
+                    List<IFile> group = filesByRuleSets.get(request.ruleSets);
+                    if (group == null) {
+                        group = new ArrayList<>();
+                        filesByRuleSets.put(request.ruleSets, group);
+                    }
+                    group.add(file);
+                    running.add(file);
+                    pending.remove(file);
+                    iterator.remove();
+                    count++;
+                }
+            }
+        }
+        return filesByRuleSets;
+    }
+
+    /**
+     * Determines the priorities of all pending files again if the prioritizer reported a change since they have been
+     * determined the last time.
+     */
+    private void updatePriorities() {
+        final int changeCount = prioritizer.getChangeCount();
+        if (changeCount != prioritizerChangeCount) {
+            prioritizerChangeCount = changeCount;
+            final List<IFile> files = new ArrayList<>(pending.size());
+            for (final Set<IFile> filesWithPriority : pendingByPriority.values()) {
+                files.addAll(filesWithPriority);
+                filesWithPriority.clear();
+            }
+            for (final IFile file : files) {
+                final Request request = pending.get(file);
+                final AnalysisPriority priority = prioritizer.getPriority(file);
+                pending.put(file, new Request(request.ruleSets, request.dueTime, priority));
+                pendingByPriority.get(priority).add(file);
+            }
+        }
+    }
+
+    /**
+     * Marks the analysis of a file as completed.
+     *
+     * @return {@code true} if the result of the analysis is current, {@code false} if the file has been requested again
+     *         while it was analyzed and the result should therefore be discarded.
+     */
+    public synchronized boolean complete(final IFile file) {
+        running.remove(file);
+        return !stale.remove(file);
+    }
+
+    /**
+     * Marks the analysis of files as completed regardless of whether their results have been handled, e.g. because the
+     * analysis has been canceled or failed.
+     */
+    public synchronized void completeAll(final Iterable<IFile> files) {
+        for (final IFile file : files) {
+            complete(file);
+        }
+    }
+
+    /**
+     * @return The earliest due time of the files waiting to be analyzed or {@code Optional.absent()} if no file is
+     *         waiting.
+     */
+    public synchronized Optional<Long> getNextDueTime() {
+        Optional<Long> next = Optional.absent();
+        for (final Request request : pending.values()) {
+            if (!next.isPresent() || request.dueTime < next.get()) {
+                next = Optional.of(request.dueTime);
+            }
+        }
+        return next;
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Determines the priorities of the files in the queue.
+     */
+    interface Prioritizer {
+
+        AnalysisPriority getPriority(IFile file);
+
+        /**
+         * @return A number that changes whenever the priority of files might have changed for another reason than
+         *         the files being requested again.
+         */
+        int getChangeCount();
+
+    }
+
+    private static final class Request {
+
+        private final RuleSets ruleSets;
+        private final long dueTime;
+        private final AnalysisPriority priority;
+
+        Request(final RuleSets ruleSets, final long dueTime, final AnalysisPriority priority) {
+            this.ruleSets = ruleSets;
+            this.dueTime = dueTime;
+            this.priority = priority;
+        }
+
+    }
+
+}
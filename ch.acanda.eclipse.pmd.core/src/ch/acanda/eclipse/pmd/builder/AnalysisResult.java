@@ -0,0 +1,107 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import org.eclipse.core.resources.IFile;
+
+import com.google.common.collect.ImmutableList;
+
+import net.sourceforge.pmd.RuleViolation;
+
+/**
+ * The violations PMD found in a file together with the content of the file that was analyzed. If PMD actually ran on
+ * the file, the result also contains the time it took.
+ *
+ * @author Philip Graf
+ */
+final class AnalysisResult {
+
+    private final IFile file;
+    private final CharSequence content;
+    private final Iterable<RuleViolation> violations;
+    private final boolean analyzed;
+    private final long size;
+    private final long parseNanos;
+    private final long ruleNanos;
+
+    /**
+     * Creates the result of a file that PMD did not run on, e.g. because its violations have been taken from the cache.
+     */
+    AnalysisResult(final IFile file, final CharSequence content, final Iterable<RuleViolation> violations) {
+        this(file, content, violations, false, 0, 0, 0);
+    }
+
+    /**
+     * Creates the result of a file that PMD ran on.
+     *
+     * @param size The size of the file in bytes.
+     * @param parseNanos The wall time in nanoseconds it took to parse the file.
+     * @param ruleNanos The wall time in nanoseconds the rules spent on the file.
+     */
+    AnalysisResult(final IFile file, final CharSequence content, final Iterable<RuleViolation> violations, final long size,
+            final long parseNanos, final long ruleNanos) {
+        this(file, content, violations, true, size, parseNanos, ruleNanos);
+    }
+
+    private AnalysisResult(final IFile file, final CharSequence content, final Iterable<RuleViolation> violations,
+            final boolean analyzed, final long size, final long parseNanos, final long ruleNanos) {
+        this.file = file;
+        this.content = content;
+        this.violations = violations;
+        this.analyzed = analyzed;
+        this.size = size;
+        this.parseNanos = parseNanos;
+        this.ruleNanos = ruleNanos;
+    }
+
+    /**
+     * Creates the result of a file that was not analyzed, e.g. because it is derived or its language is not supported.
+     */
+    static AnalysisResult empty(final IFile file) {
+        return new AnalysisResult(file, null, ImmutableList.<RuleViolation>of());
+    }
+
+    public IFile getFile() {
+        return file;
+    }
+
+    /**
+     * @return The analyzed content of the file or {@code null} if the file has not been read.
+     */
+    public CharSequence getContent() {
+        return content;
+    }
+
+    public Iterable<RuleViolation> getViolations() {
+        return violations;
+    }
+
+    /**
+     * @return {@code true} if PMD ran on the file, i.e. if the result contains the time it took.
+     */
+    public boolean isAnalyzed() {
+        return analyzed;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    public long getRuleNanos() {
+        return ruleNanos;
+    }
+
+}
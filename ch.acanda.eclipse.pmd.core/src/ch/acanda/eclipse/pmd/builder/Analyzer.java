@@ -12,23 +12,33 @@
 package ch.acanda.eclipse.pmd.builder;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.xml.sax.SAXParseException;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 import ch.acanda.eclipse.pmd.PMDPlugin;
+import ch.acanda.eclipse.pmd.cache.AnalysisCache;
+import ch.acanda.eclipse.pmd.metrics.AnalysisMetrics;
+import ch.acanda.eclipse.pmd.preferences.PMDPreferences;
+import ch.acanda.eclipse.pmd.profiler.AnalysisEvent;
+import ch.acanda.eclipse.pmd.profiler.BuildProfiler;
+import ch.acanda.eclipse.pmd.profiler.FileProfile;
 import net.sourceforge.pmd.PMD;
 import net.sourceforge.pmd.PMDConfiguration;
 import net.sourceforge.pmd.PMDException;
+import net.sourceforge.pmd.Report.ProcessingError;
 import net.sourceforge.pmd.RuleContext;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.RuleViolation;
@@ -55,6 +65,48 @@ public final class Analyzer {
         LANGUAGES = ImmutableMap.copyOf(languages);
     }
 
+    private final Optional<AnalysisCache> cache;
+
+    private final Optional<BuildProfiler> profiler;
+
+    private final Optional<AnalysisMetrics> metrics;
+
+    /**
+     * Creates an analyzer that runs PMD on every file it analyzes.
+     */
+    public Analyzer() {
+        cache = Optional.absent();
+        profiler = Optional.absent();
+        metrics = Optional.absent();
+    }
+
+    /**
+     * Creates an analyzer that only runs PMD on a file if the cache does not yet contain the violations of the file.
+     */
+    public Analyzer(final AnalysisCache cache) {
+        this(cache, null);
+    }
+
+    /**
+     * Creates an analyzer that only runs PMD on a file if the cache does not yet contain the violations of the file,
+     * and that records the costs of running PMD while the profiler is enabled. The costs of files whose violations are
+     * taken from the cache are not recorded.
+     */
+    public Analyzer(final AnalysisCache cache, final BuildProfiler profiler) {
+        this(cache, profiler, null);
+    }
+
+    /**
+     * Creates an analyzer that only runs PMD on a file if the cache does not yet contain the violations of the file,
+     * that records the costs of running PMD while the profiler is enabled, and that counts the files PMD runs on, their
+     * violations and the time it takes with the metrics.
+     */
+    public Analyzer(final AnalysisCache cache, final BuildProfiler profiler, final AnalysisMetrics metrics) {
+        this.cache = Optional.fromNullable(cache);
+        this.profiler = Optional.fromNullable(profiler);
+        this.metrics = Optional.fromNullable(metrics);
+    }
+
     /**
      * Analyzes a single file.
      *
@@ -63,22 +115,54 @@ public final class Analyzer {
      * @param violationProcessor The processor that processes the violated rules.
      */
     public void analyze(final IFile file, final RuleSets ruleSets, final ViolationProcessor violationProcessor) {
-        final Iterable<RuleViolation> violations = runPMD(file, ruleSets);
-        annotateFile(file, violationProcessor, violations);
+        annotateFile(violationProcessor, runPMD(file, ruleSets));
     }
 
-    private Iterable<RuleViolation> runPMD(final IFile file, final RuleSets ruleSets) {
+    /**
+     * Runs PMD on a single file without annotating it. This method does not modify the workspace and can therefore be
+     * called from any thread as long as every thread uses its own rule sets.
+     * <p>
+     * The file must have been collected by the builder, whose {@link ResourceFilter} does not descend into derived
+     * folders, so only the file itself is checked for being derived.
+     *
+     * @return The violations found in the file together with the analyzed content.
+     */
+    AnalysisResult runPMD(final IFile file, final RuleSets ruleSets) {
         try {
-            if (isValidFile(file, ruleSets)) {
+            // derived (i.e. generated or compiled) files are not analyzed
+            if (!file.isDerived() && isValidFile(file)) {
                 final Language language = LANGUAGES.get(file.getFileExtension().toLowerCase(Locale.ROOT));
                 if (isValidLanguage(language)) {
-                    final PMDConfiguration configuration = new PMDConfiguration();
-                    try (InputStreamReader reader = new InputStreamReader(file.getContents(), file.getCharset())) {
-                        final RuleContext context = PMD.newRuleContext(file.getName(), file.getRawLocation().toFile());
-                        context.setLanguageVersion(language.getDefaultVersion());
-                        context.setIgnoreExceptions(false);
-                        new SourceCodeProcessor(configuration).processSourceCode(reader, ruleSets, context);
-                        return ImmutableList.copyOf(context.getReport().iterator());
+                    final SourceFile source = readFile(file);
+                    if (cache.isPresent()) {
+                        final Optional<ImmutableList<RuleViolation>> cachedViolations =
+                                cache.get().get(source.getContentHash(), file.getName(), ruleSets);
+                        if (cachedViolations.isPresent()) {
+                            return new AnalysisResult(file, source.getContent(), cachedViolations.get());
+                        }
+                    }
+                    final AnalysisEvent event = AnalysisEvent.begin(AnalysisEvent.Type.ANALYSIS).resource(file).ruleSets(ruleSets);
+                    try (Reader reader = source.newReader()) {
+                        final AnalysisBudget budget = new AnalysisBudget(PMDPreferences.getFileTimeBudget());
+                        final FileProfile profile = new FileProfile(profiler.orNull());
+                        final ImmutableList<RuleViolation> violations = runPMD(file, language, reader, ruleSets, budget, profile);
+                        event.bytes(source.getSize());
+                        if (budget.getSkippedRules() > 0) {
+                            PMDPlugin.getDefault().warn("PMD exceeded the time budget while analyzing file " + file.getRawLocation()
+                                    + " and skipped " + budget.getSkippedRules() + " rules.", null);
+                        }
+                        if (metrics.isPresent()) {
+                            metrics.get().fileAnalyzed(language.getTerseName(), profile.getParseNanos() + profile.getRuleNanos(),
+                                    violations.size());
+                        }
+                        // the violations of a file whose analysis has been cut short or left out rules are not cached
+                        if (cache.isPresent() && budget.isComplete()) {
+                            cache.get().put(source.getContentHash(), file.getName(), ruleSets, violations);
+                        }
+                        return new AnalysisResult(file, source.getContent(), violations, source.getSize(), profile.getParseNanos(),
+                                profile.getRuleNanos());
+                    } finally {
+                        event.commit();
                     }
                 }
             }
@@ -91,26 +175,115 @@ public final class Analyzer {
                 PMDPlugin.getDefault().warn("Could not run PMD on file " + file.getRawLocation(), e);
             }
         }
-        return ImmutableList.<RuleViolation>of();
+        return AnalysisResult.empty(file);
     }
 
-    private void annotateFile(final IFile file, final ViolationProcessor violationProcessor, final Iterable<RuleViolation> violations) {
+    /**
+     * @return The language of the file as determined by its extension or {@code Optional.absent()} if PMD does not
+     *         support the file.
+     */
+    static Optional<Language> getLanguage(final IFile file) {
+        final String extension = file.getFileExtension();
+        if (extension == null) {
+            return Optional.absent();
+        }
+        return Optional.fromNullable(LANGUAGES.get(extension.toLowerCase(Locale.ROOT)));
+    }
+
+    private static SourceFile readFile(final IFile file) throws CoreException, IOException {
+        final AnalysisEvent event = AnalysisEvent.begin(AnalysisEvent.Type.FILE_READ).resource(file);
         try {
-            violationProcessor.annotate(file, violations);
-        } catch (CoreException | IOException e) {
-            PMDPlugin.getDefault().error("Could not annotate the file " + file.getRawLocation(), e);
+            final SourceFile source = SourceFile.load(file);
+            event.bytes(source.getSize());
+            return source;
+        } finally {
+            event.commit();
+        }
+    }
+
+    /**
+     * Runs PMD on content that has not been saved yet, e.g. the content of an editor, instead of the content of the
+     * file on disk. The analysis cache is not used as the content usually changes again shortly after. This method does
+     * not modify the workspace and can be called from any thread as long as every thread uses its own rule sets.
+     *
+     * @param file The file the content belongs to. It determines the language of the content and whether it is analyzed
+     *            at all.
+     * @param content The content to analyze.
+     * @param ruleSets The rule sets against the content will be analyzed.
+     * @param monitor The monitor of the analysis. Once it is canceled, the rules that have not yet been applied are
+     *            skipped.
+     * @param timeLimitMillis The time in milliseconds after which the rules that have not yet been applied are skipped.
+     *            A time limit of 0 is unlimited.
+     * @return The violations found in the content or {@code Optional.absent()} if PMD could not analyze the content,
+     *         e.g. because its syntax is incorrect, or if the analysis has been cut short.
+     */
+    public Optional<ImmutableList<RuleViolation>> analyze(final IFile file, final Reader content, final RuleSets ruleSets,
+            final IProgressMonitor monitor, final long timeLimitMillis) {
+        // derived (i.e. generated or compiled) files and the files in derived folders are not analyzed
+        if (!file.isDerived(IResource.CHECK_ANCESTORS) && isValidFile(file)) {
+            final Language language = LANGUAGES.get(file.getFileExtension().toLowerCase(Locale.ROOT));
+            if (isValidLanguage(language)) {
+                final AnalysisEvent event = AnalysisEvent.begin(AnalysisEvent.Type.ANALYSIS).resource(file).ruleSets(ruleSets);
+                try {
+                    final AnalysisBudget budget = new AnalysisBudget(timeLimitMillis, monitor);
+                    final ImmutableList<RuleViolation> violations =
+                            runPMD(file, language, content, ruleSets, budget, new FileProfile(profiler.orNull()));
+                    // the violations of the rules that have been skipped would be missing
+                    return budget.getSkippedRules() == 0 ? Optional.of(violations) : Optional.<ImmutableList<RuleViolation>>absent();
+                } catch (final PMDException e) {
+                    // incorrect syntax is expected while the content is being edited and is therefore not logged
+                    if (!isIncorrectSyntaxCause(e)) {
+                        PMDPlugin.getDefault().warn("Could not run PMD on the content of file " + file.getRawLocation(), e);
+                    }
+                    return Optional.absent();
+                } finally {
+                    event.commit();
+                }
+            }
+        }
+        return Optional.of(ImmutableList.<RuleViolation>of());
+    }
+
+    /**
+     * Runs PMD on the content of a file. The rule context ignores the exceptions of the rules, i.e. PMD reports them as
+     * processing errors instead of discarding the violations of all other rules.
+     */
+    private ImmutableList<RuleViolation> runPMD(final IFile file, final Language language, final Reader reader, final RuleSets ruleSets,
+            final AnalysisBudget budget, final FileProfile profile) throws PMDException {
+        final RuleContext context = PMD.newRuleContext(file.getName(), file.getRawLocation().toFile());
+        context.setLanguageVersion(language.getDefaultVersion());
+        context.setIgnoreExceptions(true);
+        budget.attachTo(context);
+        profile.attachTo(context);
+        new SourceCodeProcessor(new PMDConfiguration()).processSourceCode(reader, ruleSets, context);
+        final Iterator<ProcessingError> errors = context.getReport().errors();
+        while (errors.hasNext()) {
+            final ProcessingError error = errors.next();
+            budget.markIncomplete();
+            PMDPlugin.getDefault().warn("A PMD rule failed to analyze file " + file.getRawLocation(), error.getError());
         }
+        final ImmutableList<RuleViolation> violations = ImmutableList.copyOf(context.getReport().iterator());
+        profile.finish(language.getTerseName(), violations);
+        return violations;
     }
 
-    private boolean isValidFile(final IFile file, final RuleSets ruleSets) {
-        // derived (i.e. generated or compiled) files are not analyzed
-        return !file.isDerived(IResource.CHECK_ANCESTORS)
-                // the file must exist
-                && file.isAccessible()
+    void annotateFile(final ViolationProcessor violationProcessor, final AnalysisResult result) {
+        try {
+            violationProcessor.annotate(result.getFile(), result.getContent(), result.getViolations());
+        } catch (final CoreException e) {
+            PMDPlugin.getDefault().error("Could not annotate the file " + result.getFile().getRawLocation(), e);
+        }
+    }
+
+    /**
+     * Whether the file is excluded in the PMD configuration has already been decided by the {@link FileMatcher} of its
+     * project before the file has been passed to the analyzer.
+     */
+    private boolean isValidFile(final IFile file) {
+        // the file must exist
+        return file.isAccessible()
                 // the file must have an extension so we can determine the language
-                && file.getFileExtension() != null
-                // the file must not be excluded in the pmd configuration
-                && ruleSets.applies(file.getRawLocation().toFile());
+                && file.getFileExtension() != null;
     }
 
     private boolean isValidLanguage(final Language language) {
@@ -0,0 +1,274 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+
+/**
+ * Decides which files of a project PMD analyzes. The matcher combines the include and exclude glob patterns of the
+ * project configuration with the include and exclude patterns of the project's rule sets. All patterns are compiled
+ * once when the matcher is created, so matching a file is a single pass over its path per pattern list instead of one
+ * pass per pattern and rule set.
+ * <p>
+ * The glob patterns are relative to the project. A single {@code *} matches any characters except {@code /},
+ * {@code **} matches any number of folders and {@code ?} matches a single character except {@code /}. A pattern that
+ * matches a folder also matches everything in that folder. The exclude patterns take precedence over the include
+ * patterns, and if there are no include patterns, all files are included.
+ * <p>
+ * A file is only analyzed if the rule sets contain at least one rule for its language. The rule set patterns keep the
+ * semantics of PMD: they are regular expressions matched against the absolute path of a file, and a rule set applies
+ * to a file unless it is excluded and not explicitly included again. A file is only analyzed if at least one of the
+ * rule sets applies to it.
+ *
+ * @author Philip Graf
+ */
+public final class FileMatcher {
+
+    private static final String DESCENDANTS = "(?:/.*)?";
+
+    private final Optional<Pattern> includes;
+    private final Optional<Pattern> excludes;
+
+    /**
+     * The literal folders in front of the first wildcard of each include pattern. A folder that is neither an ancestor
+     * nor a descendant of one of these folders cannot contain an included file. The list is absent if an include
+     * pattern starts with a wildcard.
+     */
+    private final Optional<ImmutableList<String>> includeFolders;
+
+    private final RuleIndex ruleIndex;
+    private final boolean ruleSetsAlwaysApply;
+    private final ImmutableList<RuleSetMatcher> ruleSetMatchers;
+
+    private FileMatcher(final List<String> includePatterns, final List<String> excludePatterns, final RuleSets ruleSets) {
+        includes = compile(includePatterns);
+        excludes = compile(excludePatterns);
+        includeFolders = getIncludeFolders(includePatterns);
+        ruleIndex = RuleIndex.of(ruleSets);
+
+        final ImmutableList.Builder<RuleSetMatcher> matchers = ImmutableList.builder();
+        boolean alwaysApply = false;
+        for (final RuleSet ruleSet : ruleSets.getAllRuleSets()) {
+            if (ruleSet.getFileExclusions().isEmpty()) {
+                alwaysApply = true;
+            }
+            matchers.add(new RuleSetMatcher(ruleSet));
+        }
+        ruleSetsAlwaysApply = alwaysApply;
+        ruleSetMatchers = matchers.build();
+    }
+
+    /**
+     * Compiles the glob patterns of a project configuration and the patterns of its rule sets into a matcher.
+     *
+     * @param includePatterns The project relative glob patterns of the files PMD analyzes.
+     * @param excludePatterns The project relative glob patterns of the files PMD does not analyze.
+     * @param ruleSets The rule sets of the project.
+     */
+    public static FileMatcher create(final List<String> includePatterns, final List<String> excludePatterns, final RuleSets ruleSets) {
+        return new FileMatcher(includePatterns, excludePatterns, ruleSets);
+    }
+
+    /**
+     * @return {@code true} if the folder might contain files that PMD analyzes. If it returns {@code false}, the
+     *         folder and all its members can be skipped.
+     */
+    public boolean acceptsFolder(final IResource folder) {
+        final String path = folder.getProjectRelativePath().toString();
+        if (path.isEmpty()) {
+            return true;
+        }
+        if (excludes.isPresent() && excludes.get().matcher(path).matches()) {
+            return false;
+        }
+        if (!includeFolders.isPresent()) {
+            return true;
+        }
+        for (final String includeFolder : includeFolders.get()) {
+            if (isSameOrDescendant(path, includeFolder) || isSameOrDescendant(includeFolder, path)) {
+                return true;
+            }
+        }
+        return includes.get().matcher(path).matches();
+    }
+
+    /**
+     * @return {@code true} if PMD analyzes the file.
+     */
+    public boolean acceptsFile(final IFile file) {
+        final String path = file.getProjectRelativePath().toString();
+        if (excludes.isPresent() && excludes.get().matcher(path).matches()) {
+            return false;
+        }
+        if (includes.isPresent() && !includes.get().matcher(path).matches()) {
+            return false;
+        }
+        return ruleIndex.hasRules(file) && appliesRuleSets(file);
+    }
+
+    private boolean appliesRuleSets(final IFile file) {
+        if (ruleSetsAlwaysApply || ruleSetMatchers.isEmpty()) {
+            return ruleSetsAlwaysApply;
+        }
+        final IPath location = file.getRawLocation();
+        if (location == null) {
+            return true;
+        }
+        // PMD matches its patterns against the absolute path with forward slashes
+        final String path = location.toFile().getPath().replace('\\', '/');
+        for (final RuleSetMatcher matcher : ruleSetMatchers) {
+            if (matcher.applies(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSameOrDescendant(final String path, final String ancestor) {
+        return path.equals(ancestor) || path.startsWith(ancestor + '/');
+    }
+
+    private static Optional<Pattern> compile(final List<String> globs) {
+        if (globs.isEmpty()) {
+            return Optional.absent();
+        }
+        final List<String> regexes = new ArrayList<>(globs.size());
+        for (final String glob : globs) {
+            regexes.add("(?:" + toRegex(normalize(glob)) + ")");
+        }
+        return Optional.of(Pattern.compile("(?:" + Joiner.on('|').join(regexes) + ")" + DESCENDANTS));
+    }
+
+    /**
+     * Removes leading slashes and a trailing {@code /**} as every pattern matches the contents of the folders it
+     * matches anyway.
+     */
+    private static String normalize(final String glob) {
+        String normalized = glob.trim().replace('\\', '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        while (normalized.endsWith("/**") || normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.lastIndexOf('/'));
+        }
+        return normalized;
+    }
+
+    static String toRegex(final String glob) {
+        final StringBuilder regex = new StringBuilder(glob.length() * 2);
+        final StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            final char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                if (c == '?') {
+                    regex.append("[^/]");
+                    i++;
+                } else if (glob.startsWith("**/", i) && (i == 0 || glob.charAt(i - 1) == '/')) {
+                    regex.append("(?:.*/)?");
+                    i += 3;
+                } else if (glob.startsWith("**", i)) {
+                    regex.append(".*");
+                    i += 2;
+                } else {
+                    regex.append("[^/]*");
+                    i++;
+                }
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return regex.toString();
+    }
+
+    private static Optional<ImmutableList<String>> getIncludeFolders(final List<String> includePatterns) {
+        if (includePatterns.isEmpty()) {
+            return Optional.absent();
+        }
+        final ImmutableList.Builder<String> folders = ImmutableList.builder();
+        for (final String pattern : includePatterns) {
+            final String glob = normalize(pattern);
+            final int wildcard = indexOfWildcard(glob);
+            final String folder = wildcard < 0 ? glob : glob.substring(0, Math.max(0, glob.lastIndexOf('/', wildcard)));
+            if (folder.isEmpty()) {
+                return Optional.absent();
+            }
+            folders.add(folder);
+        }
+        return Optional.of(folders.build());
+    }
+
+    private static int indexOfWildcard(final String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            if (glob.charAt(i) == '*' || glob.charAt(i) == '?') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The compiled include and exclude patterns of a single rule set.
+     */
+    private static final class RuleSetMatcher {
+
+        private final Optional<Pattern> includes;
+        private final Optional<Pattern> excludes;
+
+        RuleSetMatcher(final RuleSet ruleSet) {
+            includes = combine(ruleSet.getFileInclusions());
+            excludes = combine(ruleSet.getFileExclusions());
+        }
+
+        /**
+         * Combines the patterns into a single pattern, so a path is matched only once against all patterns.
+         */
+        private static Optional<Pattern> combine(final List<Pattern> patterns) {
+            if (patterns.isEmpty()) {
+                return Optional.absent();
+            }
+            final List<String> groups = new ArrayList<>(patterns.size());
+            for (final Pattern pattern : patterns) {
+                groups.add("(?:" + pattern.pattern() + ")");
+            }
+            return Optional.of(Pattern.compile(Joiner.on('|').join(groups)));
+        }
+
+        boolean applies(final String path) {
+            final boolean excluded = excludes.isPresent() && excludes.get().matcher(path).matches();
+            return !excluded || includes.isPresent() && includes.get().matcher(path).matches();
+        }
+
+    }
+
+}
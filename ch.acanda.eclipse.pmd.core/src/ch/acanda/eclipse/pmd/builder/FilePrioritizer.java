@@ -0,0 +1,86 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.LocationKind;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Determines the priority of the files waiting to be analyzed from what the user is currently working on. The
+ * workbench reports the selected resources and the activation of editors; the prioritizer itself does not access the
+ * workbench, so it can be used on any thread.
+ *
+ * @author Philip Graf
+ */
+public final class FilePrioritizer implements AnalysisQueue.Prioritizer {
+
+    private static final long RECENTLY_MODIFIED_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private volatile ImmutableSet<IPath> selectedPaths = ImmutableSet.of();
+
+    private final AtomicInteger changeCount = new AtomicInteger();
+
+    @Override
+    public AnalysisPriority getPriority(final IFile file) {
+        if (FileBuffers.getTextFileBufferManager().getFileBuffer(file.getFullPath(), LocationKind.IFILE) != null) {
+            return AnalysisPriority.OPEN;
+        }
+        final long timeStamp = file.getLocalTimeStamp();
+        if (timeStamp != IResource.NULL_STAMP && System.currentTimeMillis() - timeStamp < RECENTLY_MODIFIED_MILLIS) {
+            return AnalysisPriority.RECENTLY_MODIFIED;
+        }
+        final ImmutableSet<IPath> selected = selectedPaths;
+        for (IPath path = file.getFullPath(); !path.isEmpty(); path = path.removeLastSegments(1)) {
+            if (selected.contains(path)) {
+                return AnalysisPriority.SELECTED;
+            }
+        }
+        return AnalysisPriority.DEFAULT;
+    }
+
+    @Override
+    public int getChangeCount() {
+        return changeCount.get();
+    }
+
+    /**
+     * Sets the resources that are selected or part of the working set of the active workbench window.
+     */
+    public void setSelectedResources(final Iterable<IResource> resources) {
+        final ImmutableSet.Builder<IPath> paths = ImmutableSet.builder();
+        for (final IResource resource : resources) {
+            paths.add(resource.getFullPath());
+        }
+        final ImmutableSet<IPath> newPaths = paths.build();
+        if (!newPaths.equals(selectedPaths)) {
+            selectedPaths = newPaths;
+            changeCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Notifies the prioritizer that an editor has been opened or activated, i.e. that the priority of its file might
+     * have changed.
+     */
+    public void editorActivated() {
+        changeCount.incrementAndGet();
+    }
+
+}
@@ -0,0 +1,90 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import java.util.List;
+
+import ch.acanda.eclipse.pmd.marker.MarkerUtil;
+import ch.acanda.eclipse.pmd.profiler.FileProfile;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.RuleReference;
+
+/**
+ * Applies a rule under the supervision of a {@link RuleWatchdog}: the rule is skipped if it is quarantined or if the
+ * {@link AnalysisBudget} of the file is exhausted, its exceptions do not abort the analysis of the other rules, and the
+ * time it takes is reported to the watchdog.
+ * <p>
+ * The guard is a rule reference. PMD's rule chain would see through it and apply rule chain rules directly, bypassing
+ * the guard, so a guarded rule is never applied by the rule chain but always on its own. Copies of the rule sets keep
+ * their guards since a guarded rule copies itself as a guarded rule.
+ * <p>
+ * While the build profiler is enabled, a guarded rule additionally reports its CPU and wall time to the
+ * {@link FileProfile} of the file.
+ *
+ * @author Philip Graf
+ */
+final class GuardedRule extends RuleReference {
+
+    private final RuleWatchdog watchdog;
+    private final String id;
+
+    GuardedRule(final Rule rule, final RuleWatchdog watchdog) {
+        super(rule, null);
+        this.watchdog = watchdog;
+        id = MarkerUtil.createRuleId(rule);
+    }
+
+    String getId() {
+        return id;
+    }
+
+    @Override
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    public void apply(final List<? extends Node> nodes, final RuleContext context) {
+        final AnalysisBudget budget = AnalysisBudget.of(context);
+        if (watchdog.isQuarantined(id)) {
+            // the violations must not be cached as the rule will be applied again once the quarantine is lifted
+            budget.markIncomplete();
+            return;
+        }
+        if (budget.isExhausted()) {
+            budget.skipRule();
+            return;
+        }
+        final FileProfile profile = FileProfile.of(context);
+        final long startCpu = profile.currentCpuTime();
+        final long start = System.nanoTime();
+        try {
+            super.apply(nodes, context);
+        } catch (final RuntimeException e) {
+            budget.markIncomplete();
+            watchdog.ruleFailed(this, context.getSourceCodeFilename(), e);
+        } finally {
+            final long nanos = System.nanoTime() - start;
+            profile.ruleCompleted(id, profile.currentCpuTime() - startCpu, nanos);
+            watchdog.ruleCompleted(this, context.getSourceCodeFilename(), nanos);
+        }
+    }
+
+    @Override
+    public boolean isRuleChain() {
+        return false;
+    }
+
+    @Override
+    public Rule deepCopy() {
+        return new GuardedRule(getRule().deepCopy(), watchdog);
+    }
+
+}
@@ -0,0 +1,109 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+
+import ch.acanda.eclipse.pmd.PMDPlugin;
+
+/**
+ * The source and output folders of a Java project as configured on its raw classpath. This is the only class of the
+ * core plug-in that uses JDT, which is an optional dependency. It must therefore only be loaded if JDT is installed.
+ *
+ * @author Philip Graf
+ */
+final class JavaProjectLayout {
+
+    private final ImmutableSet<IPath> sourceFolders;
+    private final ImmutableSet<IPath> outputFolders;
+
+    /**
+     * @param sourceFolders The full paths of the source folders.
+     * @param outputFolders The full paths of the output folders. Output folders that contain a source folder, e.g. a
+     *            project that is its own source and output folder, are ignored.
+     */
+    JavaProjectLayout(final Iterable<IPath> sourceFolders, final Iterable<IPath> outputFolders) {
+        this.sourceFolders = ImmutableSet.copyOf(sourceFolders);
+        final ImmutableSet.Builder<IPath> outputs = ImmutableSet.builder();
+        for (final IPath output : outputFolders) {
+            if (!containsSourceFolder(output)) {
+                outputs.add(output);
+            }
+        }
+        this.outputFolders = outputs.build();
+    }
+
+    /**
+     * @return The layout of the project or {@code Optional.absent()} if the project is not a Java project or its
+     *         classpath cannot be read.
+     */
+    static Optional<JavaProjectLayout> of(final IProject project) {
+        try {
+            if (project.isAccessible() && project.hasNature(JavaCore.NATURE_ID)) {
+                final IJavaProject javaProject = JavaCore.create(project);
+                final ImmutableSet.Builder<IPath> sources = ImmutableSet.builder();
+                final ImmutableSet.Builder<IPath> outputs = ImmutableSet.builder();
+                outputs.add(javaProject.getOutputLocation());
+                for (final IClasspathEntry entry : javaProject.getRawClasspath()) {
+                    if (entry.getEntryKind() == IClasspathEntry.CPE_SOURCE) {
+                        sources.add(entry.getPath());
+                        if (entry.getOutputLocation() != null) {
+                            outputs.add(entry.getOutputLocation());
+                        }
+                    }
+                }
+                return Optional.of(new JavaProjectLayout(sources.build(), outputs.build()));
+            }
+        } catch (final CoreException e) {
+            PMDPlugin.getDefault().warn("Could not read the classpath of project " + project.getName()
+                    + ". All its folders will be analyzed.", e);
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * @param folder The full path of a folder of the project.
+     * @return {@code true} if the folder is a source folder, lies within a source folder or contains a source folder,
+     *         and it is neither an output folder nor lies within one.
+     */
+    boolean isSourceFolder(final IPath folder) {
+        for (final IPath output : outputFolders) {
+            if (output.isPrefixOf(folder)) {
+                return false;
+            }
+        }
+        for (final IPath source : sourceFolders) {
+            if (source.isPrefixOf(folder) || folder.isPrefixOf(source)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsSourceFolder(final IPath folder) {
+        for (final IPath source : sourceFolders) {
+            if (folder.isPrefixOf(source)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
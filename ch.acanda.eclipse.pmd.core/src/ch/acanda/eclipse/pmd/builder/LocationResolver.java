@@ -12,7 +12,6 @@
 package ch.acanda.eclipse.pmd.builder;
 
 import java.io.File;
-import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
@@ -23,6 +22,8 @@ import java.nio.file.Paths;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IWorkspaceRoot;
 
+import ch.acanda.eclipse.pmd.PMDPlugin;
+import ch.acanda.eclipse.pmd.cache.RemoteRuleSetMirror;
 import ch.acanda.eclipse.pmd.domain.Location;
 
 import com.google.common.base.Optional;
@@ -39,7 +40,8 @@ public final class LocationResolver {
     }
 
     /**
-     * Resolves the location and checks if it exist.
+     * Resolves the location and checks if it exist. A remote location resolves to the local copy of the remote file
+     * which is only downloaded if there is no local copy yet.
      *
      * @return The absolute location if it exist or {@code Optional#absent()} if it doesn't.
      */
@@ -59,7 +61,7 @@ public final class LocationResolver {
                 break;
 
             case REMOTE:
-                path = resolveRemoteLocationIfExists(location);
+                path = resolveRemoteLocationIfExists(location, PMDPlugin.getDefault().getRemoteRuleSetMirror());
                 break;
 
             default:
@@ -145,12 +147,12 @@ public final class LocationResolver {
         }
     }
 
-    private static Optional<String> resolveRemoteLocationIfExists(final Location location) {
+    static Optional<String> resolveRemoteLocationIfExists(final Location location, final RemoteRuleSetMirror mirror) {
         try {
             final URI uri = new URI(location.getPath());
-            uri.toURL().openStream().close();
-            return Optional.of(uri.toString());
-        } catch (final URISyntaxException | IOException e) {
+            final Optional<Path> file = mirror.getFile(uri.toString());
+            return file.isPresent() ? Optional.of(file.get().toString()) : Optional.<String>absent();
+        } catch (final URISyntaxException e) {
             return Optional.absent();
         }
     }
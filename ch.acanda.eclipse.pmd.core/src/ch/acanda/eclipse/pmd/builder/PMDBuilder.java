@@ -11,6 +11,8 @@
 
 package ch.acanda.eclipse.pmd.builder;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.core.resources.IFile;
@@ -25,10 +27,17 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+
+import com.google.common.base.Supplier;
+import com.google.common.cache.CacheStats;
 
 import ch.acanda.eclipse.pmd.PMDPlugin;
 import ch.acanda.eclipse.pmd.cache.RuleSetsCache;
 import ch.acanda.eclipse.pmd.cache.RuleSetsCacheLoader;
+import ch.acanda.eclipse.pmd.marker.MarkerUtil;
+import ch.acanda.eclipse.pmd.memory.MemoryPressureListener;
+import ch.acanda.eclipse.pmd.metrics.AnalysisMetrics;
 import net.sourceforge.pmd.RuleSets;
 
 /**
@@ -40,7 +49,59 @@ public class PMDBuilder extends IncrementalProjectBuilder {
 
     public static final String ID = "ch.acanda.eclipse.pmd.builder.PMDBuilder";
 
-    private static final RuleSetsCache CACHE = new RuleSetsCache(new RuleSetsCacheLoader(), PMDPlugin.getDefault().getWorkspaceModel());
+    /**
+     * The family of the jobs that analyze the files in the background and update their markers.
+     */
+    public static final String JOB_FAMILY = ID + ".analysis";
+
+    private static final RuleSetsCacheLoader LOADER = new RuleSetsCacheLoader();
+
+    private static final RuleSetsCache CACHE = new RuleSetsCache(LOADER, PMDPlugin.getDefault().getWorkspaceModel());
+
+    private static final AnalysisPipeline PIPELINE = createPipeline(PMDPlugin.getDefault());
+
+    static {
+        final AnalysisMetrics metrics = PMDPlugin.getDefault().getAnalysisMetrics();
+        metrics.setRuleSetsCacheStats(new Supplier<CacheStats>() {
+            @Override
+            public CacheStats get() {
+                return CACHE.getStats();
+            }
+        });
+        metrics.setRuleSetsCacheWeights(new Supplier<Map<String, Integer>>() {
+            @Override
+            public Map<String, Integer> get() {
+                return CACHE.getWeights();
+            }
+        });
+        metrics.setQueueDepth(new Supplier<Integer>() {
+            @Override
+            public Integer get() {
+                return PIPELINE.getQueueDepth();
+            }
+        });
+        PMDPlugin.getDefault().getMemoryMonitor().addListener(new MemoryPressureListener() {
+            @Override
+            public void memoryLow() {
+                // the analysis keeps using its own copies of the rule sets
+                CACHE.release();
+                LOADER.release();
+            }
+
+            @Override
+            public void memoryRecovered() {
+                // the rule sets are loaded again when they are needed
+            }
+        });
+    }
+
+    private static AnalysisPipeline createPipeline(final PMDPlugin plugin) {
+        final Analyzer analyzer = new Analyzer(plugin.getAnalysisCache(), plugin.getBuildProfiler(), plugin.getAnalysisMetrics());
+        final ViolationProcessor violationProcessor =
+                new ViolationProcessor(plugin.getBuildProfiler(), plugin.getBuildRecorder(), plugin.getAnalysisMetrics());
+        return new AnalysisPipeline(analyzer, violationProcessor, plugin.getFilePrioritizer(), plugin.getBuildRecorder(),
+                plugin.getMemoryMonitor());
+    }
 
     @Override
     @SuppressWarnings("PMD.ReturnEmptyArrayRatherThanNull")
@@ -60,47 +121,121 @@ public class PMDBuilder extends IncrementalProjectBuilder {
         return null;
     }
 
+    /**
+     * The builder only reads the resources of its own project, so builds of different projects can run at the same
+     * time.
+     */
+    @Override
+    public ISchedulingRule getRule(final int kind, @SuppressWarnings("rawtypes") final Map args) {
+        return getProject();
+    }
+
+    /**
+     * Enqueues all files of the project for the analysis. The files are analyzed in the background after the build.
+     * Derived, team private and, in Java projects, non-source folders are skipped without visiting their members, and
+     * so are the folders excluded by the project configuration. The markers of the excluded files are removed.
+     */
     protected void fullBuild(final IProgressMonitor monitor) {
         try {
-            getProject().accept(new ResourceVisitor(monitor));
+            final FileCollector collector = new FileCollector(ResourceFilter.of(getProject()), getFileMatcher(getProject()));
+            getProject().accept(collector);
+            enqueue(collector.getFiles());
         } catch (final CoreException e) {
             PMDPlugin.getDefault().error("Could not run a full PMD build", e);
         }
     }
 
+    /**
+     * Enqueues the added and changed files for the analysis. The files are analyzed in the background after the build.
+     */
     protected void incrementalBuild(final IResourceDelta delta, final IProgressMonitor monitor) throws CoreException {
-        delta.accept(new DeltaVisitor(monitor));
+        final DeltaVisitor visitor = new DeltaVisitor(monitor, ResourceFilter.of(getProject()), getFileMatcher(getProject()));
+        delta.accept(visitor);
+        enqueue(visitor.getFiles());
+    }
+
+    private void enqueue(final List<IFile> files) {
+        if (!files.isEmpty()) {
+            PIPELINE.enqueue(files, CACHE.getRuleSets(getProject().getName()));
+        }
     }
 
-    void analyze(final IResource resource, final boolean includeMembers, final IProgressMonitor monitor) throws CoreException {
+    /**
+     * Returns the rule sets of a project. The rule sets are shared, so they must be copied before PMD runs with them
+     * on another thread than the analysis job.
+     */
+    public static RuleSets getRuleSets(final IProject project) {
+        return CACHE.getRuleSets(project.getName());
+    }
+
+    /**
+     * Returns the matcher that decides which files of a project PMD analyzes.
+     */
+    public static FileMatcher getFileMatcher(final IProject project) {
+        return CACHE.getFileMatcher(project.getName());
+    }
+
+    static void collect(final IResource resource, final boolean includeMembers, final List<IFile> files) throws CoreException {
         if (resource instanceof IFile) {
-            monitor.setTaskName("PMD analyzing file: " + ((IFile) resource).getName());
-            final RuleSets ruleSets = CACHE.getRuleSets(resource.getProject().getName());
-            new Analyzer().analyze((IFile) resource, ruleSets, new ViolationProcessor());
+            files.add((IFile) resource);
 
         } else if (resource instanceof IFolder && includeMembers) {
             final IFolder folder = (IFolder) resource;
             for (final IResource member : folder.members()) {
-                analyze(member, includeMembers, monitor);
+                collect(member, includeMembers, files);
+            }
+        }
+    }
+
+    /**
+     * Checks a resource against the file matcher of the project. The markers of the resources the matcher rejects are
+     * removed as they might have been created before the resource has been excluded.
+     *
+     * @return {@code true} if the resource is a folder or file PMD analyzes.
+     */
+    static boolean matches(final IResource resource, final FileMatcher matcher) throws CoreException {
+        if (resource instanceof IFolder && !matcher.acceptsFolder(resource)) {
+            MarkerUtil.removeAllMarkers((IFolder) resource);
+            return false;
+        }
+        if (resource instanceof IFile && !matcher.acceptsFile((IFile) resource)) {
+            if (resource.exists()) {
+                MarkerUtil.removeAllMarkers((IFile) resource);
             }
+            return false;
         }
+        return true;
     }
 
-    class DeltaVisitor implements IResourceDeltaVisitor {
+    static class DeltaVisitor implements IResourceDeltaVisitor {
 
         private final IProgressMonitor monitor;
+        private final ResourceFilter filter;
+        private final FileMatcher matcher;
+        private final List<IFile> files = new ArrayList<>();
 
-        public DeltaVisitor(final IProgressMonitor monitor) {
+        public DeltaVisitor(final IProgressMonitor monitor, final ResourceFilter filter, final FileMatcher matcher) {
             this.monitor = monitor;
+            this.filter = filter;
+            this.matcher = matcher;
         }
 
         @Override
         public boolean visit(final IResourceDelta delta) throws CoreException {
             final IResource resource = delta.getResource();
+            if (!filter.accepts(resource) || delta.getKind() != IResourceDelta.REMOVED && !matches(resource, matcher)) {
+                return false;
+            }
             switch (delta.getKind()) {
                 case IResourceDelta.ADDED:
                 case IResourceDelta.CHANGED:
-                    analyze(resource, (delta.getFlags() & IResourceDelta.DERIVED_CHANGED) != 0, monitor);
+                    final List<IFile> changedFiles = new ArrayList<>();
+                    collect(resource, (delta.getFlags() & IResourceDelta.DERIVED_CHANGED) != 0, changedFiles);
+                    for (final IFile file : changedFiles) {
+                        if (file == resource || matches(file, matcher)) {
+                            files.add(file);
+                        }
+                    }
                     break;
 
                 default:
@@ -111,24 +246,40 @@ public class PMDBuilder extends IncrementalProjectBuilder {
             }
             return true;
         }
+
+        public List<IFile> getFiles() {
+            return files;
+        }
     }
 
-    class ResourceVisitor implements IResourceVisitor {
+    /**
+     * Collects the files of a project.
+     */
+    static class FileCollector implements IResourceVisitor {
 
-        private final IProgressMonitor monitor;
+        private final ResourceFilter filter;
+        private final FileMatcher matcher;
+        private final List<IFile> files = new ArrayList<>();
 
-        public ResourceVisitor(final IProgressMonitor monitor) {
-            this.monitor = monitor;
+        public FileCollector(final ResourceFilter filter, final FileMatcher matcher) {
+            this.filter = filter;
+            this.matcher = matcher;
         }
 
         @Override
         public boolean visit(final IResource resource) throws CoreException {
-            analyze(resource, false, monitor);
-            if (monitor.isCanceled()) {
-                throw new OperationCanceledException();
+            if (!filter.accepts(resource) || !matches(resource, matcher)) {
+                return false;
+            }
+            if (resource instanceof IFile) {
+                files.add((IFile) resource);
             }
             return true;
         }
+
+        public List<IFile> getFiles() {
+            return files;
+        }
     }
 
 }
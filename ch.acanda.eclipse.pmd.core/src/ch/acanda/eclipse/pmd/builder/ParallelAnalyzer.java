@@ -0,0 +1,250 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ch.acanda.eclipse.pmd.PMDPlugin;
+import net.sourceforge.pmd.RuleSets;
+
+/**
+ * Analyzes many files concurrently on a bounded pool of worker threads. PMD rules are stateful, so every worker
+ * analyzes its files with its own copy of the rule sets. The results are passed to the handler by the calling thread
+ * only.
+ * <p>
+ * The pool and the copies of the rule sets are kept between the calls of
+ * {@link #analyze(Collection, RuleSets, ResultHandler, IProgressMonitor)}, so analyzing many files in several batches
+ * does not copy the rule sets for every batch. They are released when the analyzer is shut down. The analyzer must
+ * only be used by one thread at a time.
+ *
+ * @author Philip Graf
+ */
+final class ParallelAnalyzer {
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final int threads;
+
+    private final Analyzer analyzer;
+
+    /**
+     * The copies of the rule sets for the workers, keyed by the original rule sets.
+     */
+    private final Map<RuleSets, List<RuleSets>> copies = new IdentityHashMap<>();
+
+    private Optional<ExecutorService> executor = Optional.absent();
+
+    /**
+     * @param threads The maximum number of worker threads.
+     * @param analyzer The analyzer used by the workers. The analyzer must not have any mutable state.
+     */
+    ParallelAnalyzer(final int threads, final Analyzer analyzer) {
+        this.threads = threads;
+        this.analyzer = analyzer;
+    }
+
+    /**
+     * Analyzes the provided files and passes the results to the handler. This method returns when the results of all
+     * files have been handled.
+     *
+     * @throws OperationCanceledException Thrown when the monitor has been canceled. The workers are stopped before the
+     *             exception is thrown.
+     */
+    public void analyze(final Collection<IFile> files, final RuleSets ruleSets, final ResultHandler handler,
+            final IProgressMonitor monitor) {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        final SubMonitor progress = SubMonitor.convert(monitor, files.size());
+        final Queue<IFile> pending = new ConcurrentLinkedQueue<>(files);
+        final int workerCount = Math.min(threads, files.size());
+        // the results queue is bounded so the workers cannot get too far ahead of the handler
+        final BlockingQueue<Result> results = new ArrayBlockingQueue<>(workerCount * 4);
+        final List<RuleSets> workerRuleSets = getWorkerRuleSets(ruleSets, workerCount);
+        final ExecutorService workers = getExecutor();
+        boolean isCompleted = false;
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                workers.execute(new Worker(pending, workerRuleSets.get(i), results));
+            }
+
+            int remaining = files.size();
+            while (remaining > 0) {
+                if (progress.isCanceled()) {
+                    throw new OperationCanceledException();
+                }
+                final Result result = results.poll(POLL_INTERVAL_MILLIS, MILLISECONDS);
+                if (result != null) {
+                    // hand over all files that have been analyzed in the meantime at once
+                    final List<Result> batch = new ArrayList<>();
+                    batch.add(result);
+                    results.drainTo(batch);
+                    progress.subTask("PMD analyzing file: " + batch.get(batch.size() - 1).file.getName());
+                    handler.handle(getAnalyses(batch));
+                    progress.worked(batch.size());
+                    remaining -= batch.size();
+                }
+            }
+            isCompleted = true;
+
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationCanceledException();
+
+        } finally {
+            pending.clear();
+            if (!isCompleted) {
+                // the workers might still be using their rule sets or waiting for space in the results queue
+                shutdown();
+            }
+        }
+    }
+
+    /**
+     * Stops the workers and releases the copies of the rule sets. The analyzer can still be used afterwards, it then
+     * starts new workers.
+     */
+    public void shutdown() {
+        if (executor.isPresent()) {
+            executor.get().shutdownNow();
+            executor = Optional.absent();
+        }
+        copies.clear();
+    }
+
+    /**
+     * @return The copies of the rule sets for the workers. The copies are created when they are needed for the first
+     *         time and reused afterwards.
+     */
+    List<RuleSets> getWorkerRuleSets(final RuleSets ruleSets, final int workerCount) {
+        List<RuleSets> workerRuleSets = copies.get(ruleSets);
+        if (workerRuleSets == null) {
+            workerRuleSets = new ArrayList<>(threads);
+            copies.put(ruleSets, workerRuleSets);
+        }
+        while (workerRuleSets.size() < workerCount) {
+            workerRuleSets.add(new RuleSets(ruleSets));
+        }
+        return workerRuleSets;
+    }
+
+    private ExecutorService getExecutor() {
+        if (!executor.isPresent()) {
+            executor = Optional.of(Executors.newFixedThreadPool(threads,
+                    new ThreadFactoryBuilder().setNameFormat("eclipse-pmd analyzer %d").setDaemon(true).build()));
+        }
+        return executor.get();
+    }
+
+    /**
+     * Handles the results of the analysis, e.g. by annotating the analyzed files.
+     */
+    interface ResultHandler {
+
+        /**
+         * @param results The results of one or more files. The results of a file are handled exactly once.
+         * @throws InterruptedException Thrown when the handler has been interrupted while waiting. The analysis is
+         *             canceled.
+         */
+        void handle(List<AnalysisResult> results) throws InterruptedException;
+
+    }
+
+    private static List<AnalysisResult> getAnalyses(final List<Result> results) {
+        final List<AnalysisResult> analyses = new ArrayList<>(results.size());
+        for (final Result result : results) {
+            if (result.analysis != null) {
+                analyses.add(result.analysis);
+            }
+        }
+        return analyses;
+    }
+
+    /**
+     * Takes files from the queue of pending files and analyzes them until there are no more pending files. A worker puts
+     * the result of its last file into the results queue before it returns, so all workers of a call are done with
+     * their rule sets when the call returns.
+     */
+    private final class Worker implements Runnable {
+
+        private final Queue<IFile> pending;
+        private final RuleSets ruleSets;
+        private final BlockingQueue<Result> results;
+
+        Worker(final Queue<IFile> pending, final RuleSets ruleSets, final BlockingQueue<Result> results) {
+            this.pending = pending;
+            this.ruleSets = ruleSets;
+            this.results = results;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (IFile file = pending.poll(); file != null; file = pending.poll()) {
+                    results.put(new Result(file, analyze(file)));
+                }
+            } catch (final InterruptedException e) {
+                // the build has been canceled
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * @return The result of the analysis or {@code null} if the analysis failed unexpectedly. Every file must yield a
+         *         result, otherwise the builder would wait forever.
+         */
+        @SuppressWarnings("PMD.AvoidCatchingGenericException")
+        private AnalysisResult analyze(final IFile file) {
+            try {
+                return analyzer.runPMD(file, ruleSets);
+            } catch (final RuntimeException e) {
+                PMDPlugin.getDefault().error("Could not run PMD on file " + file.getRawLocation(), e);
+                return null;
+            }
+        }
+
+    }
+
+    private static final class Result {
+
+        private final IFile file;
+        private final AnalysisResult analysis;
+
+        Result(final IFile file, final AnalysisResult analysis) {
+            this.file = file;
+            this.analysis = analysis;
+        }
+
+    }
+
+}
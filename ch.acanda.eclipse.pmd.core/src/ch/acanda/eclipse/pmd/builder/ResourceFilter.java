@@ -0,0 +1,66 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.Platform;
+
+import com.google.common.base.Optional;
+
+/**
+ * Decides which resources of a project the builder visits. Derived and team private resources are skipped, and so is
+ * everything below them. In a Java project, the folders outside the source folders and the output folders are skipped
+ * as well. Skipping a folder prunes its whole subtree, so the builder does not even visit the resources of output
+ * folders or other large trees.
+ *
+ * @author Philip Graf
+ */
+final class ResourceFilter {
+
+    private static final String JDT_BUNDLE = "org.eclipse.jdt.core";
+
+    private final Optional<JavaProjectLayout> javaLayout;
+
+    ResourceFilter(final Optional<JavaProjectLayout> javaLayout) {
+        this.javaLayout = javaLayout;
+    }
+
+    /**
+     * Creates the filter of a project. The filter takes a snapshot of the classpath of a Java project, so it should
+     * only be used for a single build.
+     */
+    static ResourceFilter of(final IProject project) {
+        // JDT is an optional dependency, so the layout class must not be loaded if JDT is not installed
+        if (Platform.getBundle(JDT_BUNDLE) == null) {
+            return new ResourceFilter(Optional.<JavaProjectLayout>absent());
+        }
+        return new ResourceFilter(JavaProjectLayout.of(project));
+    }
+
+    /**
+     * @return {@code true} if the resource should be visited. The resource's ancestors are assumed to have been
+     *         accepted.
+     */
+    boolean accepts(final IResource resource) {
+        if (resource.getType() == IResource.PROJECT) {
+            return true;
+        }
+        if (resource.isDerived() || resource.isTeamPrivateMember()) {
+            return false;
+        }
+        return resource.getType() != IResource.FOLDER
+                || !javaLayout.isPresent()
+                || javaLayout.get().isSourceFolder(resource.getFullPath());
+    }
+
+}
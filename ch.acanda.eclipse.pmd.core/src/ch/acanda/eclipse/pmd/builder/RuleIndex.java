@@ -0,0 +1,59 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import org.eclipse.core.resources.IFile;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.lang.Language;
+
+/**
+ * Indexes the rules of a project's rule sets by their language. A file whose language does not have any rules does
+ * not have to be read, let alone parsed, as PMD would not find any violations in it anyway. This also keeps PMD from
+ * loading the parsers of the languages the rule sets do not cover.
+ *
+ * @author Philip Graf
+ */
+final class RuleIndex {
+
+    /**
+     * The terse names of the languages that have at least one rule.
+     */
+    private final ImmutableSet<String> languages;
+
+    private RuleIndex(final ImmutableSet<String> languages) {
+        this.languages = languages;
+    }
+
+    static RuleIndex of(final RuleSets ruleSets) {
+        final ImmutableSet.Builder<String> languages = ImmutableSet.builder();
+        for (final Rule rule : ruleSets.getAllRules()) {
+            if (rule.getLanguage() != null) {
+                languages.add(rule.getLanguage().getTerseName());
+            }
+        }
+        return new RuleIndex(languages.build());
+    }
+
+    /**
+     * @return {@code true} if the rule sets contain at least one rule for the language of the file.
+     */
+    boolean hasRules(final IFile file) {
+        final Optional<Language> language = Analyzer.getLanguage(file);
+        return language.isPresent() && languages.contains(language.get().getTerseName());
+    }
+
+}
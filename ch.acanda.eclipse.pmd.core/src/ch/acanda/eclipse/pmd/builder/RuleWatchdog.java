@@ -0,0 +1,156 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.WorkspaceJob;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Sets;
+
+import ch.acanda.eclipse.pmd.PMDPlugin;
+import ch.acanda.eclipse.pmd.marker.MarkerUtil;
+import ch.acanda.eclipse.pmd.preferences.PMDPreferences;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSetFactory;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RulesetsFactoryUtils;
+
+/**
+ * Supervises the rules of a project. Every rule of the project's rule sets is wrapped in a {@link GuardedRule} that
+ * reports to the watchdog. A rule that exceeds its time budget on a file gets a strike. Once a rule has collected enough
+ * strikes, it is quarantined, i.e. it is no longer applied to the files of the project, and a warning marker on the
+ * project's configuration file lists the quarantined rules. The quarantine lasts until the rule sets of the project are
+ * reloaded, e.g. because the configuration has changed.
+ * <p>
+ * PMD applies rule chain rules directly, so they can neither be timed nor quarantined individually. PMD isolates their
+ * exceptions itself as long as the rule context ignores exceptions. The watchdog is thread-safe.
+ *
+ * @author Philip Graf
+ */
+public class RuleWatchdog {
+
+    private final IProject project;
+    private final long ruleBudgetNanos;
+    private final int quarantineThreshold;
+
+    private final ConcurrentMap<String, AtomicInteger> strikes = new ConcurrentHashMap<>();
+    private final Set<String> quarantinedRules = Sets.newConcurrentHashSet();
+    private final Set<String> failedRules = Sets.newConcurrentHashSet();
+
+    RuleWatchdog(final IProject project, final long ruleBudgetMillis, final int quarantineThreshold) {
+        this.project = project;
+        ruleBudgetNanos = MILLISECONDS.toNanos(ruleBudgetMillis);
+        this.quarantineThreshold = quarantineThreshold;
+    }
+
+    /**
+     * Creates a copy of the rule sets of a project whose rules are supervised by a new watchdog. Creating the
+     * watchdog removes the quarantine marker of the previous watchdog of the project.
+     */
+    public static RuleSets guard(final RuleSets ruleSets, final IProject project) {
+        final RuleWatchdog watchdog = new RuleWatchdog(project, PMDPreferences.getRuleTimeBudget(),
+                PMDPreferences.getQuarantineThreshold());
+        watchdog.updateMarker();
+        return watchdog.guard(ruleSets);
+    }
+
+    /**
+     * Creates a copy of the rule sets whose rules are supervised by this watchdog.
+     */
+    RuleSets guard(final RuleSets ruleSets) {
+        final RuleSetFactory factory = RulesetsFactoryUtils.defaultFactory();
+        final RuleSets guardedRuleSets = new RuleSets();
+        for (final RuleSet ruleSet : ruleSets.getAllRuleSets()) {
+            final List<Rule> rules = new ArrayList<>(ruleSet.size());
+            for (final Rule rule : ruleSet.getRules()) {
+                rules.add(new GuardedRule(rule, this));
+            }
+            guardedRuleSets.addRuleSet(factory.createNewRuleSet(ruleSet.getName(), ruleSet.getDescription(), ruleSet.getFileName(),
+                    getExpressions(ruleSet.getFileExclusions()), getExpressions(ruleSet.getFileInclusions()), rules));
+        }
+        return guardedRuleSets;
+    }
+
+    private static List<String> getExpressions(final List<Pattern> patterns) {
+        final List<String> expressions = new ArrayList<>(patterns.size());
+        for (final Pattern pattern : patterns) {
+            expressions.add(pattern.pattern());
+        }
+        return expressions;
+    }
+
+    boolean isQuarantined(final String ruleId) {
+        return quarantinedRules.contains(ruleId);
+    }
+
+    void ruleCompleted(final GuardedRule rule, final String fileName, final long nanos) {
+        if (ruleBudgetNanos > 0 && nanos > ruleBudgetNanos) {
+            final String ruleId = rule.getId();
+            AtomicInteger count = strikes.get(ruleId);
+            if (count == null) {
+                strikes.putIfAbsent(ruleId, new AtomicInteger());
+                count = strikes.get(ruleId);
+            }
+            final int ruleStrikes = count.incrementAndGet();
+            PMDPlugin.getDefault().info(String.format("PMD rule %s took %d ms to analyze %s in project %s.", ruleId,
+                    NANOSECONDS.toMillis(nanos), fileName, project.getName()));
+            if (ruleStrikes >= quarantineThreshold && quarantinedRules.add(ruleId)) {
+                PMDPlugin.getDefault().warn(String.format("PMD rule %s has been quarantined in project %s because it exceeded its time "
+                        + "budget %d times.", ruleId, project.getName(), ruleStrikes), null);
+                updateMarker();
+            }
+        }
+    }
+
+    void ruleFailed(final GuardedRule rule, final String fileName, final RuntimeException e) {
+        // a broken rule usually fails on every file, so only its first failure is logged
+        if (failedRules.add(rule.getId())) {
+            PMDPlugin.getDefault().warn(String.format("PMD rule %s failed to analyze %s in project %s. The violations of the other "
+                    + "rules are reported nevertheless. Further failures of this rule are not logged.", rule.getId(), fileName,
+                    project.getName()), e);
+        }
+    }
+
+    private void updateMarker() {
+        final WorkspaceJob job = new WorkspaceJob("Update PMD quarantine marker") {
+            @Override
+            public IStatus runInWorkspace(final IProgressMonitor monitor) throws CoreException {
+                if (project.isAccessible()) {
+                    final long budget = NANOSECONDS.toMillis(ruleBudgetNanos);
+                    MarkerUtil.updateQuarantineMarker(project, ImmutableSortedSet.copyOf(quarantinedRules), budget);
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        job.setRule(project);
+        job.setSystem(true);
+        job.schedule();
+    }
+
+}
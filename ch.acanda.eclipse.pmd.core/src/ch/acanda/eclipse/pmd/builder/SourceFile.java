@@ -0,0 +1,128 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.builder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharSource;
+
+/**
+ * The decoded content of a file. The content is read and decoded exactly once per analysis and then shared by PMD, the
+ * analysis cache and the markers, so they all see the same content even if the file changes during the analysis.
+ *
+ * @author Philip Graf
+ */
+final class SourceFile {
+
+    /**
+     * Local files of at least this size are memory mapped instead of being read through the workspace.
+     */
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    private final CharBuffer content;
+
+    private final long size;
+
+    private HashCode contentHash;
+
+    private SourceFile(final ByteBuffer bytes, final Charset charset) throws IOException {
+        size = bytes.remaining();
+        content = decode(bytes, charset).asReadOnlyBuffer();
+    }
+
+    /**
+     * Reads and decodes the content of a file using the file's charset.
+     */
+    public static SourceFile load(final IFile file) throws CoreException, IOException {
+        final Charset charset = getCharset(file);
+        final IPath location = file.getLocation();
+        if (location != null && file.isSynchronized(IResource.DEPTH_ZERO)) {
+            final File localFile = location.toFile();
+            if (localFile.length() >= MAP_THRESHOLD) {
+                try (FileChannel channel = FileChannel.open(localFile.toPath(), StandardOpenOption.READ)) {
+                    return new SourceFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), charset);
+                }
+            }
+        }
+        try (InputStream in = file.getContents()) {
+            return new SourceFile(ByteBuffer.wrap(ByteStreams.toByteArray(in)), charset);
+        }
+    }
+
+    private static Charset getCharset(final IFile file) throws CoreException, UnsupportedEncodingException {
+        final String charsetName = file.getCharset();
+        try {
+            return Charset.forName(charsetName);
+        } catch (final IllegalArgumentException e) {
+            throw new UnsupportedEncodingException(charsetName);
+        }
+    }
+
+    private static CharBuffer decode(final ByteBuffer bytes, final Charset charset) throws IOException {
+        // malformed input is replaced in the same way an InputStreamReader would do it
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .decode(bytes);
+    }
+
+    /**
+     * @return The content of the file. The returned sequence is independent of the sequences returned by previous
+     *         invocations.
+     */
+    public CharSequence getContent() {
+        return content.duplicate();
+    }
+
+    /**
+     * @return The size of the file in bytes.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return A new reader of the content of the file.
+     */
+    public Reader newReader() throws IOException {
+        return CharSource.wrap(content.duplicate()).openStream();
+    }
+
+    /**
+     * @return The hash of the decoded content of the file.
+     */
+    public HashCode getContentHash() {
+        if (contentHash == null) {
+            contentHash = Hashing.sha256().hashUnencodedChars(content.duplicate());
+        }
+        return contentHash;
+    }
+
+}
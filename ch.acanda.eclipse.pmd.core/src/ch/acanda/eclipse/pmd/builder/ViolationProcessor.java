@@ -11,33 +11,198 @@
 
 package ch.acanda.eclipse.pmd.builder;
 
-import java.io.IOException;
-import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.MultiRule;
 
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
-import com.google.common.io.Files;
 
+import ch.acanda.eclipse.pmd.marker.MarkerAttributes;
+import ch.acanda.eclipse.pmd.marker.MarkerChanges;
 import ch.acanda.eclipse.pmd.marker.MarkerUtil;
+import ch.acanda.eclipse.pmd.marker.SourceIndex;
+import ch.acanda.eclipse.pmd.metrics.AnalysisMetrics;
+import ch.acanda.eclipse.pmd.profiler.AnalysisEvent;
+import ch.acanda.eclipse.pmd.profiler.BuildProfiler;
+import ch.acanda.eclipse.pmd.profiler.BuildRecorder;
+import ch.acanda.eclipse.pmd.profiler.FileRecord;
 import net.sourceforge.pmd.RuleViolation;
 
 /**
- * Processes the rule violations found by a PMD analysis.
+ * Processes the rule violations found by a PMD analysis. A violation processor does not have any mutable state and can
+ * be used by several threads at the same time.
  *
  * @author Philip Graf
  */
 public class ViolationProcessor {
 
-    public void annotate(final IFile file, final Iterable<RuleViolation> violations) throws CoreException, IOException {
-        MarkerUtil.removeAllMarkers(file);
-        if (!Iterables.isEmpty(violations)) {
-            final String content = Files.asCharSource(file.getRawLocation().toFile(), Charset.forName(file.getCharset())).read();
-            for (final RuleViolation violation : violations) {
-                MarkerUtil.addMarker(file, content, violation);
+    private final Optional<BuildProfiler> profiler;
+
+    private final Optional<BuildRecorder> recorder;
+
+    private final Optional<AnalysisMetrics> metrics;
+
+    public ViolationProcessor() {
+        profiler = Optional.absent();
+        recorder = Optional.absent();
+        metrics = Optional.absent();
+    }
+
+    /**
+     * Creates a violation processor that records the time it takes to update the markers while the profiler is
+     * enabled, that records the times of every file that PMD ran on with the recorder, and that counts the created and
+     * deleted markers with the metrics.
+     */
+    public ViolationProcessor(final BuildProfiler profiler, final BuildRecorder recorder, final AnalysisMetrics metrics) {
+        this.profiler = Optional.of(profiler);
+        this.recorder = Optional.of(recorder);
+        this.metrics = Optional.of(metrics);
+    }
+
+    /**
+     * Replaces the PMD markers of a file with markers for the provided violations.
+     *
+     * @param file The annotated file.
+     * @param content The content of the file that was analyzed. It may only be {@code null} if there are no
+     *            violations.
+     * @param violations The violations PMD found in the content.
+     */
+    public void annotate(final IFile file, final CharSequence content, final Iterable<RuleViolation> violations) throws CoreException {
+        annotate(ImmutableList.of(new AnalysisResult(file, content, violations)));
+    }
+
+    /**
+     * Replaces the PMD markers of several files with markers for the violations of the provided results. The
+     * attributes of all markers are computed first, then the markers of all files are replaced in a single workspace
+     * operation, so the listeners are notified only once. The operation holds the scheduling rules of the files, so
+     * concurrent updates of the markers of the same file are serialized.
+     */
+    void annotate(final Collection<AnalysisResult> results) throws CoreException {
+        if (results.isEmpty()) {
+            return;
+        }
+        final AnalysisEvent event = newMarkerAnnotationEvent(results);
+        try {
+            if (profiler.isPresent() && profiler.get().isEnabled()) {
+                final long startCpu = BuildProfiler.currentThreadCpuTime();
+                final long start = System.nanoTime();
+                try {
+                    updateMarkers(results);
+                } finally {
+                    profiler.get().recordMarkers(BuildProfiler.currentThreadCpuTime() - startCpu, System.nanoTime() - start);
+                }
+            } else {
+                updateMarkers(results);
+            }
+        } finally {
+            event.commit();
+        }
+    }
+
+    /**
+     * Creates the event of a marker update. The event names the file if only a single file is updated, and the project
+     * of the first file otherwise.
+     */
+    private static AnalysisEvent newMarkerAnnotationEvent(final Collection<AnalysisResult> results) {
+        final AnalysisEvent event = AnalysisEvent.begin(AnalysisEvent.Type.MARKER_ANNOTATION);
+        if (event.isEnabled()) {
+            final IFile first = results.iterator().next().getFile();
+            if (results.size() == 1) {
+                event.resource(first);
+            } else {
+                event.project(first.getProject().getName());
+            }
+            long bytes = 0;
+            for (final AnalysisResult result : results) {
+                bytes += result.getSize();
+            }
+            event.bytes(bytes);
+        }
+        return event;
+    }
+
+    private void updateMarkers(final Collection<AnalysisResult> results) throws CoreException {
+        final Map<IFile, List<MarkerAttributes>> markers = new LinkedHashMap<>();
+        final Map<IFile, Long> nanos = new HashMap<>();
+        ISchedulingRule rule = null;
+        for (final AnalysisResult result : results) {
+            final long start = System.nanoTime();
+            markers.put(result.getFile(), createMarkerAttributes(result));
+            nanos.put(result.getFile(), System.nanoTime() - start);
+            rule = MultiRule.combine(rule, result.getFile());
+        }
+        final MarkerUpdate update = new MarkerUpdate(markers, nanos);
+        ResourcesPlugin.getWorkspace().run(update, rule, IWorkspace.AVOID_UPDATE, null);
+        if (metrics.isPresent()) {
+            metrics.get().markersChanged(update.created, update.deleted);
+        }
+        if (recorder.isPresent()) {
+            for (final AnalysisResult result : results) {
+                if (result.isAnalyzed()) {
+                    recorder.get().record(new FileRecord(result.getFile().getFullPath().toString(), result.getSize(),
+                            result.getParseNanos(), result.getRuleNanos(), nanos.get(result.getFile())));
+                }
             }
         }
     }
 
+    private List<MarkerAttributes> createMarkerAttributes(final AnalysisResult result) {
+        if (Iterables.isEmpty(result.getViolations())) {
+            return ImmutableList.of();
+        }
+        final SourceIndex index = new SourceIndex(result.getContent());
+        final List<MarkerAttributes> attributes = new ArrayList<>();
+        for (final RuleViolation violation : result.getViolations()) {
+            attributes.add(MarkerUtil.createMarkerAttributes(index, violation));
+        }
+        return attributes;
+    }
+
+    /**
+     * Replaces the PMD markers of the files with the precomputed markers. Only markers that actually changed are
+     * created, updated or deleted. The time it takes to update the markers of a file is added to the time it took to
+     * compute them.
+     */
+    private static final class MarkerUpdate implements IWorkspaceRunnable {
+
+        private final Map<IFile, List<MarkerAttributes>> markers;
+        private final Map<IFile, Long> nanos;
+        private int created;
+        private int deleted;
+
+        MarkerUpdate(final Map<IFile, List<MarkerAttributes>> markers, final Map<IFile, Long> nanos) {
+            this.markers = markers;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public void run(final IProgressMonitor monitor) throws CoreException {
+            for (final Map.Entry<IFile, List<MarkerAttributes>> entry : markers.entrySet()) {
+                // the file might have been deleted since it was analyzed
+                if (entry.getKey().exists()) {
+                    final long start = System.nanoTime();
+                    final MarkerChanges changes = MarkerUtil.updateMarkers(entry.getKey(), entry.getValue());
+                    created += changes.getCreated();
+                    deleted += changes.getDeleted();
+                    nanos.put(entry.getKey(), nanos.get(entry.getKey()) + System.nanoTime() - start);
+                }
+            }
+        }
+
+    }
+
 }
@@ -0,0 +1,381 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import ch.acanda.eclipse.pmd.PMDPlugin;
+import ch.acanda.eclipse.pmd.marker.MarkerUtil;
+import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
+
+/**
+ * The analysis cache stores the violations PMD found in a file, so a file whose content and rule sets did not change
+ * does not have to be analyzed again. An entry is keyed by the hash of the file's decoded content, the file's name and a
+ * fingerprint of the rule sets it was analyzed with. The cache is bounded by the number of files plus the number of
+ * their violations and is persisted in the plug-in's state location so it survives a restart.
+ *
+ * @author Philip Graf
+ */
+public final class AnalysisCache {
+
+    private static final int MAGIC = 0x504d4443;
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+
+    private final Cache<String, ImmutableList<CachedRuleViolation>> cache;
+
+    /**
+     * Caches the fingerprints of the rule sets since calculating a fingerprint requires iterating over all properties
+     * of all rules.
+     */
+    private final Map<RuleSets, String> fingerprints = Collections.synchronizedMap(new WeakHashMap<RuleSets, String>());
+
+    private volatile boolean isLoaded;
+    private volatile boolean isDirty;
+
+    /**
+     * @param file The file where the cache is persisted.
+     * @param maxWeight The maximum weight of the cache. The weight of an entry is one plus the number of its
+     *            violations.
+     */
+    public AnalysisCache(final File file, final long maxWeight) {
+        this.file = file;
+        cache = CacheBuilder.newBuilder().maximumWeight(maxWeight).weigher(new ViolationsWeigher()).build();
+    }
+
+    /**
+     * Returns the cached violations of a file.
+     *
+     * @param contentHash The hash of the content of the file.
+     * @param fileName The name of the file.
+     * @param ruleSets The rule sets the file is analyzed with.
+     * @return The cached violations or {@code Optional#absent()} if the file has not yet been analyzed with the same
+     *         rule sets or if a cached violation references a rule that is not part of the rule sets.
+     */
+    public Optional<ImmutableList<RuleViolation>> get(final HashCode contentHash, final String fileName, final RuleSets ruleSets) {
+        ensureLoaded();
+        final ImmutableList<CachedRuleViolation> violations = cache.getIfPresent(createKey(contentHash, fileName, ruleSets));
+        if (violations == null) {
+            return Optional.absent();
+        }
+        if (violations.isEmpty()) {
+            return Optional.of(ImmutableList.<RuleViolation>of());
+        }
+
+        final Map<String, Rule> rules = new HashMap<>();
+        for (final Rule rule : ruleSets.getAllRules()) {
+            rules.put(MarkerUtil.createRuleId(rule), rule);
+        }
+        final ImmutableList.Builder<RuleViolation> builder = ImmutableList.builder();
+        for (final CachedRuleViolation violation : violations) {
+            final Rule rule = rules.get(violation.getRuleId());
+            if (rule == null) {
+                return Optional.absent();
+            }
+            builder.add(violation.withRule(rule, fileName));
+        }
+        return Optional.<ImmutableList<RuleViolation>>of(builder.build());
+    }
+
+    /**
+     * Stores the violations of a file.
+     *
+     * @param contentHash The hash of the content of the file.
+     * @param fileName The name of the file.
+     * @param ruleSets The rule sets the file was analyzed with.
+     * @param violations The violations PMD found in the file.
+     */
+    public void put(final HashCode contentHash, final String fileName, final RuleSets ruleSets, final Iterable<RuleViolation> violations) {
+        ensureLoaded();
+        final ImmutableList.Builder<CachedRuleViolation> builder = ImmutableList.builder();
+        for (final RuleViolation violation : violations) {
+            builder.add(CachedRuleViolation.copyOf(violation));
+        }
+        cache.put(createKey(contentHash, fileName, ruleSets), builder.build());
+        isDirty = true;
+    }
+
+    private String createKey(final HashCode contentHash, final String fileName, final RuleSets ruleSets) {
+        return getFingerprint(ruleSets) + '/' + fileName + '/' + contentHash;
+    }
+
+    private String getFingerprint(final RuleSets ruleSets) {
+        String fingerprint = fingerprints.get(ruleSets);
+        if (fingerprint == null) {
+            fingerprint = createFingerprint(ruleSets);
+            fingerprints.put(ruleSets, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Creates a fingerprint of the rule sets that changes whenever the rule sets would produce different violations,
+     * i.e. when a rule is added or removed, when a property of a rule changes, when a rule set file changes or when PMD
+     * itself is updated.
+     */
+    static String createFingerprint(final RuleSets ruleSets) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(PMDVersion.VERSION, UTF_8);
+        hasher.putLong(ruleSets.getChecksum());
+        for (final RuleSet ruleSet : ruleSets.getAllRuleSets()) {
+            hasher.putString(Strings.nullToEmpty(ruleSet.getFileName()), UTF_8);
+            putFileContent(hasher, ruleSet.getFileName());
+            for (final Rule rule : ruleSet.getRules()) {
+                hasher.putString(MarkerUtil.createRuleId(rule), UTF_8);
+                hasher.putString(Strings.nullToEmpty(rule.getMessage()), UTF_8);
+                hasher.putString(rule.getLanguage().getTerseName(), UTF_8);
+                hasher.putString(getTerseName(rule.getMinimumLanguageVersion()), UTF_8);
+                hasher.putString(getTerseName(rule.getMaximumLanguageVersion()), UTF_8);
+                for (final Map.Entry<PropertyDescriptor<?>, Object> property : rule.getPropertiesByPropertyDescriptor().entrySet()) {
+                    hasher.putString(property.getKey().name(), UTF_8);
+                    hasher.putString(String.valueOf(property.getValue()), UTF_8);
+                }
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private static String getTerseName(final LanguageVersion version) {
+        return version == null ? "" : version.getTerseName();
+    }
+
+    /**
+     * Adds the content of a rule set file to the fingerprint, so the attributes of the file that the rules do not
+     * expose as properties change the fingerprint as well. Rule sets that are not read from the file system, e.g. the
+     * built-in rule sets of PMD, only change together with PMD.
+     */
+    private static void putFileContent(final Hasher hasher, final String fileName) {
+        if (fileName != null) {
+            try {
+                final byte[] content = Files.readAllBytes(Paths.get(fileName));
+                hasher.putInt(content.length).putBytes(content);
+            } catch (final IOException | InvalidPathException e) {
+                hasher.putInt(-1);
+            }
+        }
+    }
+
+    /**
+     * Loads the persisted cache entries the first time the cache is accessed, so loading the cache does not slow down
+     * the start of the plug-in.
+     */
+    private void ensureLoaded() {
+        if (!isLoaded) {
+            synchronized (this) {
+                if (!isLoaded) {
+                    load();
+                    isLoaded = true;
+                }
+            }
+        }
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file.toPath()))))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                PMDPlugin.getDefault().info("Ignoring analysis cache " + file + " as it has an unknown format");
+                return;
+            }
+            final int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                final String key = in.readUTF();
+                final int count = in.readInt();
+                final ImmutableList.Builder<CachedRuleViolation> violations = ImmutableList.builder();
+                for (int j = 0; j < count; j++) {
+                    violations.add(readViolation(in));
+                }
+                cache.put(key, violations.build());
+            }
+        } catch (final IOException e) {
+            PMDPlugin.getDefault().warn("Could not load the analysis cache from " + file, e);
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Persists the cache entries if there have been any changes since the last time the cache was saved or loaded.
+     */
+    public void save() throws IOException {
+        if (!isDirty) {
+            return;
+        }
+        // the flag is reset before the entries are copied so changes made while the file is written are saved next time
+        isDirty = false;
+        boolean isSaved = false;
+        try {
+            write(ImmutableMap.copyOf(cache.asMap()));
+            isSaved = true;
+        } finally {
+            if (!isSaved) {
+                isDirty = true;
+            }
+        }
+    }
+
+    /**
+     * Writes the entries to a temporary file and replaces the cache file with it, so the cache file is never left
+     * half-written. The temporary file is deleted if the entries cannot be written.
+     */
+    private void write(final Map<String, ImmutableList<CachedRuleViolation>> entries) throws IOException {
+        final Path target = file.toPath();
+        Files.createDirectories(target.getParent());
+        final Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        boolean isMoved = false;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(entries.size());
+                for (final Map.Entry<String, ImmutableList<CachedRuleViolation>> entry : entries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().size());
+                    for (final CachedRuleViolation violation : entry.getValue()) {
+                        writeViolation(out, violation);
+                    }
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            isMoved = true;
+        } finally {
+            if (!isMoved) {
+                deleteQuietly(temp);
+            }
+        }
+    }
+
+    private static void deleteQuietly(final Path temp) {
+        try {
+            Files.deleteIfExists(temp);
+        } catch (final IOException e) {
+            // the exception that caused the write to fail is more relevant
+        }
+    }
+
+    /**
+     * Persists the cache entries and removes them from memory. They are loaded again the next time the cache is
+     * accessed.
+     */
+    public void release() throws IOException {
+        synchronized (this) {
+            if (!isLoaded) {
+                return;
+            }
+            save();
+            cache.invalidateAll();
+            fingerprints.clear();
+            isLoaded = false;
+        }
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void clear() {
+        ensureLoaded();
+        cache.invalidateAll();
+        isDirty = true;
+    }
+
+    private static void writeViolation(final DataOutputStream out, final CachedRuleViolation violation) throws IOException {
+        writeString(out, violation.getRuleId());
+        writeString(out, violation.getDescription());
+        out.writeInt(violation.getBeginLine());
+        out.writeInt(violation.getBeginColumn());
+        out.writeInt(violation.getEndLine());
+        out.writeInt(violation.getEndColumn());
+        writeString(out, violation.getPackageName());
+        writeString(out, violation.getClassName());
+        writeString(out, violation.getMethodName());
+        writeString(out, violation.getVariableName());
+    }
+
+    private static CachedRuleViolation readViolation(final DataInputStream in) throws IOException {
+        final String ruleId = readString(in);
+        final String description = readString(in);
+        final int beginLine = in.readInt();
+        final int beginColumn = in.readInt();
+        final int endLine = in.readInt();
+        final int endColumn = in.readInt();
+        return new CachedRuleViolation(ruleId, description, beginLine, beginColumn, endLine, endColumn, readString(in),
+                readString(in), readString(in), readString(in));
+    }
+
+    /**
+     * Writes a string that may be {@code null} or longer than {@link DataOutputStream#writeUTF(String)} supports.
+     */
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static final class ViolationsWeigher implements Weigher<String, ImmutableList<CachedRuleViolation>> {
+        @Override
+        public int weigh(final String key, final ImmutableList<CachedRuleViolation> violations) {
+            return 1 + violations.size();
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.cache;
+
+import java.io.IOException;
+
+import org.eclipse.core.resources.ISaveContext;
+import org.eclipse.core.resources.ISaveParticipant;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import ch.acanda.eclipse.pmd.PMDPlugin;
+
+/**
+ * Persists the analysis cache when the workspace is saved.
+ *
+ * @author Philip Graf
+ */
+public final class AnalysisCacheSaveParticipant implements ISaveParticipant {
+
+    private final AnalysisCache cache;
+
+    public AnalysisCacheSaveParticipant(final AnalysisCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void prepareToSave(final ISaveContext context) {
+        // nothing to prepare
+    }
+
+    @Override
+    public void saving(final ISaveContext context) throws CoreException {
+        if (context.getKind() == ISaveContext.FULL_SAVE) {
+            try {
+                cache.save();
+            } catch (final IOException e) {
+                throw new CoreException(new Status(IStatus.WARNING, PMDPlugin.ID, "Could not save the analysis cache", e));
+            }
+        }
+    }
+
+    @Override
+    public void doneSaving(final ISaveContext context) {
+        // nothing to clean up
+    }
+
+    @Override
+    public void rollback(final ISaveContext context) {
+        // the cache file is replaced atomically so there is nothing to roll back
+    }
+
+}
@@ -0,0 +1,110 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.io.ByteStreams;
+
+import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.RulePriority;
+import net.sourceforge.pmd.RuleSetFactory;
+import net.sourceforge.pmd.RuleSetNotFoundException;
+
+/**
+ * Loads the resources of the rule set factory and keeps the content of PMD's built-in rule set files, e.g.
+ * {@code category/java/bestpractices.xml}, in memory. A rule set file usually references the rules of the built-in
+ * categories rule by rule, and PMD loads the referenced category file from its jar for every single reference. The
+ * built-in files cannot change while the IDE is running, so their content is read from the jars only once per session.
+ * All other resources, i.e. the user's own rule set files, are read from their source every time.
+ * <p>
+ * PMD 6 deprecates its resource loader as internal API but does not offer any other way to control how a rule set
+ * factory loads its resources, hence the loader is used regardless.
+ *
+ * @author Philip Graf
+ */
+@SuppressWarnings("deprecation")
+final class BuiltInRuleSetResourceLoader extends net.sourceforge.pmd.util.ResourceLoader {
+
+    private static final String[] BUILT_IN_FOLDERS = { "category/", "rulesets/" };
+    private static final long MAX_CACHED_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Maps the PMD version and the name of a built-in rule set file to its content.
+     */
+    private static final Cache<String, byte[]> CONTENT = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_CACHED_BYTES)
+            .weigher(new Weigher<String, byte[]>() {
+                @Override
+                public int weigh(final String key, final byte[] value) {
+                    return value.length;
+                }
+            })
+            .build();
+
+    /**
+     * Creates a rule set factory with the same settings as {@code RulesetsFactoryUtils.defaultFactory()} that loads
+     * its resources with this loader.
+     */
+    static RuleSetFactory newRuleSetFactory() {
+        return new RuleSetFactory(new BuiltInRuleSetResourceLoader(), RulePriority.LOW, false, true);
+    }
+
+    /**
+     * Discards the content of the built-in rule set files. It is read from the jars again when it is needed.
+     */
+    static void release() {
+        CONTENT.invalidateAll();
+    }
+
+    @Override
+    public InputStream loadResourceAsStream(final String name) throws RuleSetNotFoundException {
+        if (!isBuiltIn(name)) {
+            return super.loadResourceAsStream(name);
+        }
+        try {
+            return new ByteArrayInputStream(CONTENT.get(PMDVersion.VERSION + ':' + name, new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    try (InputStream in = loadClassPathResourceAsStream(name)) {
+                        if (in == null) {
+                            throw new IOException("Cannot find built-in rule set file " + name);
+                        }
+                        return ByteStreams.toByteArray(in);
+                    }
+                }
+            }));
+        } catch (final ExecutionException e) {
+            // let PMD report the missing resource the usual way
+            return super.loadResourceAsStream(name);
+        }
+    }
+
+    private static boolean isBuiltIn(final String name) {
+        for (final String folder : BUILT_IN_FOLDERS) {
+            if (name.startsWith(folder)) {
+                // a file in the working directory takes precedence over the class path
+                return !new File(name).exists();
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,153 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.cache;
+
+import ch.acanda.eclipse.pmd.marker.MarkerUtil;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleViolation;
+
+/**
+ * An immutable copy of a rule violation that can be stored in the {@link AnalysisCache}. The violation references its
+ * rule by the rule id (see {@link MarkerUtil#createRuleId(Rule)}) so it can be stored without the rule. The rule and
+ * the file name are attached again when the violation is taken from the cache.
+ *
+ * @author Philip Graf
+ */
+final class CachedRuleViolation implements RuleViolation {
+
+    private final Rule rule;
+    private final String ruleId;
+    private final String description;
+    private final String filename;
+    private final int beginLine;
+    private final int beginColumn;
+    private final int endLine;
+    private final int endColumn;
+    private final String packageName;
+    private final String className;
+    private final String methodName;
+    private final String variableName;
+
+    CachedRuleViolation(final String ruleId, final String description, final int beginLine, final int beginColumn,
+            final int endLine, final int endColumn, final String packageName, final String className, final String methodName,
+            final String variableName) {
+        rule = null;
+        filename = null;
+        this.ruleId = ruleId;
+        this.description = description;
+        this.beginLine = beginLine;
+        this.beginColumn = beginColumn;
+        this.endLine = endLine;
+        this.endColumn = endColumn;
+        this.packageName = packageName;
+        this.className = className;
+        this.methodName = methodName;
+        this.variableName = variableName;
+    }
+
+    private CachedRuleViolation(final CachedRuleViolation violation, final Rule rule, final String filename) {
+        this.rule = rule;
+        this.filename = filename;
+        ruleId = violation.ruleId;
+        description = violation.description;
+        beginLine = violation.beginLine;
+        beginColumn = violation.beginColumn;
+        endLine = violation.endLine;
+        endColumn = violation.endColumn;
+        packageName = violation.packageName;
+        className = violation.className;
+        methodName = violation.methodName;
+        variableName = violation.variableName;
+    }
+
+    /**
+     * Creates a copy of a violation found by PMD. The copy references neither the rule nor the file.
+     */
+    static CachedRuleViolation copyOf(final RuleViolation violation) {
+        return new CachedRuleViolation(MarkerUtil.createRuleId(violation.getRule()), violation.getDescription(),
+                violation.getBeginLine(), violation.getBeginColumn(), violation.getEndLine(), violation.getEndColumn(),
+                violation.getPackageName(), violation.getClassName(), violation.getMethodName(), violation.getVariableName());
+    }
+
+    /**
+     * Returns a copy of this violation that references the provided rule and file.
+     */
+    CachedRuleViolation withRule(final Rule rule, final String filename) {
+        return new CachedRuleViolation(this, rule, filename);
+    }
+
+    String getRuleId() {
+        return ruleId;
+    }
+
+    @Override
+    public Rule getRule() {
+        return rule;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public boolean isSuppressed() {
+        // suppressed violations are never reported and therefore never cached
+        return false;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public int getBeginLine() {
+        return beginLine;
+    }
+
+    @Override
+    public int getBeginColumn() {
+        return beginColumn;
+    }
+
+    @Override
+    public int getEndLine() {
+        return endLine;
+    }
+
+    @Override
+    public int getEndColumn() {
+        return endColumn;
+    }
+
+    @Override
+    public String getPackageName() {
+        return packageName;
+    }
+
+    @Override
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public String getMethodName() {
+        return methodName;
+    }
+
+    @Override
+    public String getVariableName() {
+        return variableName;
+    }
+
+}
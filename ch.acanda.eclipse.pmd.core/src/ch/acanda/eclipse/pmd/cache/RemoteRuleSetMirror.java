@@ -0,0 +1,309 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ch.acanda.eclipse.pmd.PMDPlugin;
+import ch.acanda.eclipse.pmd.file.FileChangedListener;
+import ch.acanda.eclipse.pmd.file.Subscription;
+
+/**
+ * Keeps a copy of each remote rule set file on the local disk, so loading the rule sets of a project does not depend
+ * on the network. Only the first access to a remote rule set downloads it. Afterwards the local copy is served and
+ * revalidated in the background with a conditional request, i.e. the server only sends the file again if it has
+ * changed since the last download. If the server cannot be reached, the last good copy is kept.
+ * <p>
+ * Each remote rule set file is stored under the SHA-256 hash of its URL, together with a properties file containing
+ * the URL and the validators, i.e. the {@code ETag} and {@code Last-Modified} headers, of the last response.
+ *
+ * @author Philip Graf
+ */
+public final class RemoteRuleSetMirror {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+    private static final long REVALIDATION_INTERVAL_MINUTES = 15;
+
+    private static final String CONTENT_SUFFIX = ".xml";
+    private static final String METADATA_SUFFIX = ".properties";
+    private static final String URL_PROPERTY = "url";
+    private static final String ETAG_PROPERTY = "etag";
+    private static final String LAST_MODIFIED_PROPERTY = "lastModified";
+
+    private final Path directory;
+
+    /**
+     * The URLs of the remote rule set files that have been requested during this session. Only these are revalidated.
+     */
+    private final Set<String> urls = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Maps the URL of a remote rule set file to the listeners that are notified when its local copy changes. Guarded by
+     * {@code this}.
+     */
+    private final Multimap<String, FileChangedListener> listeners = HashMultimap.create();
+
+    /**
+     * The scheduler of the background revalidation. Guarded by {@code this}.
+     */
+    private Optional<ScheduledExecutorService> scheduler = Optional.absent();
+
+    /**
+     * @param directory The directory where the local copies of the remote rule set files are stored. It is created
+     *            when the first file is downloaded.
+     */
+    public RemoteRuleSetMirror(final Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Starts revalidating the local copies of the requested remote rule set files periodically in the background.
+     */
+    public synchronized void start() {
+        if (!scheduler.isPresent()) {
+            final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("eclipse-pmd remote rule set revalidation").setDaemon(true).build());
+            executor.scheduleWithFixedDelay(new Revalidation(), REVALIDATION_INTERVAL_MINUTES, REVALIDATION_INTERVAL_MINUTES, MINUTES);
+            scheduler = Optional.of(executor);
+        }
+    }
+
+    /**
+     * Stops the background revalidation. A revalidation in progress is interrupted.
+     */
+    public synchronized void stop() {
+        if (scheduler.isPresent()) {
+            scheduler.get().shutdownNow();
+            scheduler = Optional.absent();
+        }
+    }
+
+    /**
+     * Returns the local copy of a remote rule set file. The file is only downloaded if there is no local copy yet.
+     *
+     * @param url The URL of the remote rule set file.
+     * @return The path of the local copy or {@code Optional.absent()} if there is no local copy and the file cannot be
+     *         downloaded.
+     */
+    public Optional<Path> getFile(final String url) {
+        urls.add(url);
+        final Path file = getContentFile(url);
+        if (!Files.exists(file)) {
+            try {
+                revalidate(url);
+            } catch (final IOException e) {
+                return Optional.absent();
+            }
+        }
+        return Files.exists(file) ? Optional.of(file) : Optional.<Path>absent();
+    }
+
+    /**
+     * Registers a listener that is notified when the local copy of a remote rule set file has been replaced with a new
+     * version.
+     */
+    public synchronized Subscription subscribe(final String url, final FileChangedListener listener) {
+        listeners.put(url, listener);
+        return new Subscription() {
+            @Override
+            public void cancel() {
+                unsubscribe(url, listener);
+            }
+        };
+    }
+
+    private synchronized void unsubscribe(final String url, final FileChangedListener listener) {
+        listeners.remove(url, listener);
+    }
+
+    /**
+     * Asks the server whether the remote rule set file has changed since it has been downloaded and replaces the local
+     * copy if it has. If there is no local copy yet, the file is downloaded unconditionally.
+     *
+     * @return {@code true} if the local copy has been replaced.
+     * @throws IOException If the server cannot be reached or the response cannot be read. The local copy is left
+     *             untouched in this case.
+     */
+    boolean revalidate(final String url) throws IOException {
+        final Path file = getContentFile(url);
+        final boolean hasCopy = Files.exists(file);
+        final Properties metadata = hasCopy ? readMetadata(url) : new Properties();
+
+        final URLConnection connection = new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setUseCaches(false);
+        if (metadata.getProperty(ETAG_PROPERTY) != null) {
+            connection.setRequestProperty("If-None-Match", metadata.getProperty(ETAG_PROPERTY));
+        }
+        if (metadata.getProperty(LAST_MODIFIED_PROPERTY) != null) {
+            connection.setRequestProperty("If-Modified-Since", metadata.getProperty(LAST_MODIFIED_PROPERTY));
+        }
+
+        final byte[] content;
+        try {
+            if (connection instanceof HttpURLConnection) {
+                final int status = ((HttpURLConnection) connection).getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_MODIFIED && hasCopy) {
+                    return false;
+                }
+                if (status != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Unexpected response " + status + " for remote rule set " + url);
+                }
+            }
+            try (InputStream in = connection.getInputStream()) {
+                content = ByteStreams.toByteArray(in);
+            }
+        } finally {
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).disconnect();
+            }
+        }
+
+        final boolean changed = !hasCopy || !Arrays.equals(content, Files.readAllBytes(file));
+        if (changed) {
+            write(file, content);
+        }
+        writeMetadata(url, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+        if (changed && hasCopy) {
+            notifyListeners(url, file);
+        }
+        return changed;
+    }
+
+    private void notifyListeners(final String url, final Path file) {
+        final ImmutableList<FileChangedListener> urlListeners;
+        synchronized (this) {
+            urlListeners = ImmutableList.copyOf(listeners.get(url));
+        }
+        for (final FileChangedListener listener : urlListeners) {
+            listener.fileChanged(file);
+        }
+    }
+
+    private Path getContentFile(final String url) {
+        return directory.resolve(hash(url) + CONTENT_SUFFIX);
+    }
+
+    private Path getMetadataFile(final String url) {
+        return directory.resolve(hash(url) + METADATA_SUFFIX);
+    }
+
+    private static String hash(final String url) {
+        return Hashing.sha256().hashString(url, UTF_8).toString();
+    }
+
+    private Properties readMetadata(final String url) {
+        final Properties metadata = new Properties();
+        final Path file = getMetadataFile(url);
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                metadata.load(in);
+            } catch (final IOException e) {
+                // without the validators the file is simply downloaded again
+                metadata.clear();
+            }
+        }
+        return metadata;
+    }
+
+    private void writeMetadata(final String url, final String etag, final String lastModified) throws IOException {
+        final Properties metadata = new Properties();
+        metadata.setProperty(URL_PROPERTY, url);
+        if (etag != null) {
+            metadata.setProperty(ETAG_PROPERTY, etag);
+        }
+        if (lastModified != null) {
+            metadata.setProperty(LAST_MODIFIED_PROPERTY, lastModified);
+        }
+        final Path temp = createTempFile();
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            metadata.store(out, null);
+        }
+        move(temp, getMetadataFile(url));
+    }
+
+    /**
+     * Replaces the file atomically, so a rule set loaded concurrently is never read from a partially written file.
+     */
+    private void write(final Path file, final byte[] content) throws IOException {
+        final Path temp = createTempFile();
+        Files.write(temp, content);
+        move(temp, file);
+    }
+
+    private Path createTempFile() throws IOException {
+        Files.createDirectories(directory);
+        return Files.createTempFile(directory, "download", ".tmp");
+    }
+
+    private static void move(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    /**
+     * Revalidates the local copies of all requested remote rule set files.
+     */
+    private final class Revalidation implements Runnable {
+        @Override
+        public void run() {
+            for (final String url : ImmutableSet.copyOf(urls)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                try {
+                    revalidate(url);
+                } catch (final IOException | RuntimeException e) {
+                    // an exception would cancel all further revalidations of the scheduler
+                    final String msg = "Cannot revalidate remote rule set %s. The last downloaded copy is used instead.";
+                    PMDPlugin.getDefault().warn(String.format(msg, url), e);
+                }
+            }
+        }
+    }
+
+}
@@ -14,12 +14,17 @@ package ch.acanda.eclipse.pmd.cache;
 import static ch.acanda.eclipse.pmd.domain.ProjectModel.RULESETS_PROPERTY;
 import static ch.acanda.eclipse.pmd.domain.WorkspaceModel.PROJECTS_PROPERTY;
 import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import net.sourceforge.pmd.RuleSets;
 
@@ -27,6 +32,7 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.ResourcesPlugin;
 
 import ch.acanda.eclipse.pmd.PMDPlugin;
+import ch.acanda.eclipse.pmd.builder.FileMatcher;
 import ch.acanda.eclipse.pmd.builder.LocationResolver;
 import ch.acanda.eclipse.pmd.domain.DomainModel.AddElementPropertyChangeEvent;
 import ch.acanda.eclipse.pmd.domain.DomainModel.RemoveElementPropertyChangeEvent;
@@ -37,35 +43,83 @@ import ch.acanda.eclipse.pmd.domain.WorkspaceModel;
 import ch.acanda.eclipse.pmd.file.FileChangedListener;
 import ch.acanda.eclipse.pmd.file.FileWatcher;
 import ch.acanda.eclipse.pmd.file.Subscription;
+import ch.acanda.eclipse.pmd.preferences.PMDPreferences;
+import ch.acanda.eclipse.pmd.profiler.AnalysisEvent;
+import ch.acanda.eclipse.pmd.repository.ProjectModelRepository;
 
 import com.google.common.base.Optional;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
- * The rule set cache caches the PMD rule sets so they do not have to be rebuilt every time PMD is invoked.
+ * The rule set cache caches the PMD rule sets so they do not have to be rebuilt every time PMD is invoked. The cache is
+ * thread-safe and can be used by several concurrent builds.
+ * <p>
+ * Only the first access to the rule sets of a project blocks until they are loaded. When the configuration, a rule set
+ * file or the local copy of a remote rule set file of a project changes, or when its rule sets are an hour old, they
+ * are reloaded in the background while the builds keep using the previous rule sets. The reloaded rule sets replace
+ * the previous ones as soon as they are ready.
+ * <p>
+ * The size of the cache is bounded by the estimated heap retained by the rule sets of the projects, see
+ * {@link PMDPreferences#RULE_SETS_CACHE_MAX_WEIGHT}. The parsed rules are shared between the projects and bounded
+ * separately by the {@link RuleSetsCacheLoader}. The rule sets of projects that have not been built for an hour
+ * and of projects for which PMD is disabled are evicted.
  *
  * @author Philip Graf
  */
 public final class RuleSetsCache {
 
+    private static final int REFRESH_THREADS = 2;
+    private static final long IDLE_EXPIRY_HOURS = 1;
+
     /**
      * Maps a project name to the project's rule sets.
      */
     private final LoadingCache<String, RuleSets> cache;
 
+    /**
+     * Maps a project name to the matcher of the files PMD analyzes. A matcher depends on the project model and the
+     * rule sets, so it is invalidated whenever the project model changes or the rule sets are replaced.
+     */
+    private final LoadingCache<String, FileMatcher> fileMatchers;
+
     private final ProjectModelListener projectModelListener = new ProjectModelListener();
 
     private final Optional<FileWatcher> fileWatcher;
 
+    /**
+     * The subscriptions of the rule set files of each project. Guarded by {@code this}.
+     */
     private final Multimap<String, Subscription> subscriptions = HashMultimap.create();
 
     public RuleSetsCache(final CacheLoader<String, RuleSets> loader, final WorkspaceModel workspaceModel) {
-        // by expiring the rule sets we make sure to notice changes in remote configurations
-        cache = CacheBuilder.newBuilder().expireAfterWrite(1, HOURS).build(loader);
+        this(loader, workspaceModel, createRefreshExecutor());
+    }
+
+    /**
+     * @param refreshExecutor The executor that reloads the rule sets in the background.
+     */
+    RuleSetsCache(final CacheLoader<String, RuleSets> loader, final WorkspaceModel workspaceModel, final Executor refreshExecutor) {
+        fileMatchers = CacheBuilder.newBuilder().expireAfterWrite(1, HOURS).build(new FileMatcherLoader());
+        // by refreshing the rule sets we make sure to notice changes in remote configurations
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(PMDPreferences.getRuleSetsCacheMaxWeight())
+                .weigher(RuleSetsWeigher.PROJECT)
+                // a single segment so the maximum weight applies to the whole cache instead of being split up
+                .concurrencyLevel(1)
+                .expireAfterAccess(IDLE_EXPIRY_HOURS, HOURS)
+                .refreshAfterWrite(1, HOURS)
+                .recordStats()
+                .removalListener(new RuleSetsRemovalListener())
+                .build(CacheLoader.asyncReloading(loader, refreshExecutor));
 
         fileWatcher = createFileWatcher();
 
@@ -76,13 +130,17 @@ public final class RuleSetsCache {
         workspaceModel.addPropertyChangeListener(PROJECTS_PROPERTY, new WorkspaceModelListener());
     }
 
-    private void startWatchingRuleSetFiles(final ProjectModel projectModel) {
+    private synchronized void startWatchingRuleSetFiles(final ProjectModel projectModel) {
         if (fileWatcher.isPresent() && projectModel.isPMDEnabled()) {
             final FileChangedListener listener = new RuleSetFileListener(projectModel);
             final IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectModel.getProjectName());
 
             for (final RuleSetModel ruleSetModel : projectModel.getRuleSets()) {
-                if (ruleSetModel.getLocation().getContext() != LocationContext.REMOTE) {
+                if (ruleSetModel.getLocation().getContext() == LocationContext.REMOTE) {
+                    // the mirror notices changes of a remote rule set when it revalidates its local copy
+                    final RemoteRuleSetMirror mirror = PMDPlugin.getDefault().getRemoteRuleSetMirror();
+                    subscriptions.put(projectModel.getProjectName(), mirror.subscribe(ruleSetModel.getLocation().getPath(), listener));
+                } else {
                     final Optional<String> resolvedLocation = LocationResolver.resolveIfExists(ruleSetModel.getLocation(), project);
                     if (resolvedLocation.isPresent()) {
                         final Path file = Paths.get(resolvedLocation.get());
@@ -100,17 +158,25 @@ public final class RuleSetsCache {
         }
     }
 
-    private void stopWatchingRuleSetFiles(final ProjectModel projectModel) {
+    private synchronized void stopWatchingRuleSetFiles(final ProjectModel projectModel) {
         for (final Subscription subscription : subscriptions.removeAll(projectModel.getProjectName())) {
             subscription.cancel();
         }
     }
 
-    private void resetFileWatcher(final ProjectModel projectModel) {
+    private synchronized void resetFileWatcher(final ProjectModel projectModel) {
         stopWatchingRuleSetFiles(projectModel);
         startWatchingRuleSetFiles(projectModel);
     }
 
+    private static Executor createRefreshExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 1, MINUTES,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("eclipse-pmd rule sets refresh %d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     private Optional<FileWatcher> createFileWatcher() {
         Optional<FileWatcher> fileWatcher;
         try {
@@ -123,7 +189,10 @@ public final class RuleSetsCache {
 
     /**
      * Returns the PMD rule sets of the provided project. The rule sets are taken from the cache if already available or
-     * loaded from the repository if not.
+     * loaded from the repository if not. Concurrent calls for the same project load the rule sets only once.
+     * <p>
+     * The returned rule sets are shared. PMD rules are stateful, so a caller that runs PMD concurrently with other
+     * callers must run it with a copy of the rule sets.
      *
      * @param projectName The name of the project.
      * @return The PMD rule sets of the project.
@@ -132,6 +201,53 @@ public final class RuleSetsCache {
         return cache.getUnchecked(projectName);
     }
 
+    /**
+     * Returns the matcher that decides which files of the provided project PMD analyzes. The matcher is compiled from
+     * the include and exclude patterns of the project configuration and the patterns of the project's rule sets.
+     *
+     * @param projectName The name of the project.
+     * @return The file matcher of the project.
+     */
+    public FileMatcher getFileMatcher(final String projectName) {
+        return fileMatchers.getUnchecked(projectName);
+    }
+
+    /**
+     * @return The hit, miss, load and eviction counts of the cache.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return The estimated heap in kilobytes retained by the cached rule sets, mapped by the project name. The rules
+     *         shared between the projects are not included, see {@link RuleSetsCacheLoader}.
+     */
+    public Map<String, Integer> getWeights() {
+        final ImmutableSortedMap.Builder<String, Integer> weights = ImmutableSortedMap.naturalOrder();
+        for (final Map.Entry<String, RuleSets> entry : cache.asMap().entrySet()) {
+            weights.put(entry.getKey(), RuleSetsWeigher.PROJECT.weigh(entry.getValue()));
+        }
+        return weights.build();
+    }
+
+    /**
+     * Reloads the rule sets of the project with the provided name in the background. Until they are reloaded,
+     * {@link #getRuleSets(String)} returns the previous rule sets. If the rule sets of the project have not been loaded
+     * yet, nothing happens.
+     *
+     * @param projectName The name of the project.
+     */
+    private void refresh(final String projectName) {
+        PMDPlugin.getDefault().info("Refreshing cache for " + projectName);
+        final AnalysisEvent event = AnalysisEvent.begin(AnalysisEvent.Type.RULE_SETS_INVALIDATION).project(projectName);
+        // refreshing an absent entry would load it on the calling thread, which might be the UI thread
+        if (cache.asMap().containsKey(projectName)) {
+            cache.refresh(projectName);
+        }
+        event.commit();
+    }
+
     /**
      * Invalidates the cache entry for the project with the provided name, i.e. the next time
      * {@link #getRuleSets(String)} is called, the rule sets are loaded from their source.
@@ -140,7 +256,45 @@ public final class RuleSetsCache {
      */
     private void invalidate(final String projectName) {
         PMDPlugin.getDefault().info("Invalidating cache for " + projectName);
+        final AnalysisEvent event = AnalysisEvent.begin(AnalysisEvent.Type.RULE_SETS_INVALIDATION).project(projectName);
         cache.invalidate(projectName);
+        event.commit();
+    }
+
+    /**
+     * Removes the rule sets of all projects from the cache to release the memory they retain. The rule sets of a
+     * project are loaded again the next time they are needed.
+     */
+    public void release() {
+        PMDPlugin.getDefault().info("Releasing cache for all projects");
+        cache.invalidateAll();
+        fileMatchers.invalidateAll();
+    }
+
+    /**
+     * Discards the file matcher of a project when its rule sets are replaced or removed, as the matcher has been
+     * compiled from the previous rule sets.
+     */
+    private final class RuleSetsRemovalListener implements RemovalListener<String, RuleSets> {
+        @Override
+        public void onRemoval(final RemovalNotification<String, RuleSets> notification) {
+            fileMatchers.invalidate(notification.getKey());
+        }
+    }
+
+    /**
+     * Compiles the file matcher of a project from its configuration and its rule sets.
+     */
+    private final class FileMatcherLoader extends CacheLoader<String, FileMatcher> {
+
+        private final ProjectModelRepository repository = new ProjectModelRepository();
+
+        @Override
+        public FileMatcher load(final String projectName) {
+            final ProjectModel projectModel = repository.load(projectName).or(new ProjectModel(projectName));
+            return FileMatcher.create(projectModel.getIncludePatterns(), projectModel.getExcludePatterns(), getRuleSets(projectName));
+        }
+
     }
 
     /**
@@ -167,20 +321,27 @@ public final class RuleSetsCache {
     }
 
     /**
-     * Invalidates the cache entry of a project if there have been made any changes to the respective project model so
-     * its rule set is rebuilt based on the new model data the next time it is used.
+     * Refreshes the cache entry of a project if there have been made any changes to the respective project model so
+     * its rule set is rebuilt based on the new model data. The cache entry is evicted if PMD has been disabled.
      */
     private final class ProjectModelListener implements PropertyChangeListener {
         @Override
         public void propertyChange(final PropertyChangeEvent event) {
             final ProjectModel projectModel = (ProjectModel) event.getSource();
-            invalidate(projectModel.getProjectName());
+            // the file patterns of the project might have changed even if its rule sets have not
+            fileMatchers.invalidate(projectModel.getProjectName());
+            if (projectModel.isPMDEnabled()) {
+                refresh(projectModel.getProjectName());
+            } else {
+                // the rule sets of a disabled project are not used anymore, so there is no point in keeping them
+                invalidate(projectModel.getProjectName());
+            }
             resetFileWatcher(projectModel);
         }
     }
 
     /**
-     * Invalidates the respective cache entry when a rule set file is changed.
+     * Refreshes the respective cache entry when a rule set file is changed.
      */
     private final class RuleSetFileListener implements FileChangedListener {
 
@@ -192,7 +353,7 @@ public final class RuleSetsCache {
 
         @Override
         public void fileChanged(final Path file) {
-            invalidate(projectName);
+            refresh(projectName);
         }
 
     }
@@ -13,64 +13,199 @@ package ch.acanda.eclipse.pmd.cache;
 
 import static com.google.common.base.Optional.presentInstances;
 import static com.google.common.collect.Iterables.transform;
+import static com.google.common.util.concurrent.Uninterruptibles.getUninterruptibly;
+import static java.util.concurrent.TimeUnit.HOURS;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.ResourcesPlugin;
 
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import ch.acanda.eclipse.pmd.PMDPlugin;
 import ch.acanda.eclipse.pmd.builder.LocationResolver;
+import ch.acanda.eclipse.pmd.builder.RuleWatchdog;
 import ch.acanda.eclipse.pmd.domain.ProjectModel;
 import ch.acanda.eclipse.pmd.domain.RuleSetModel;
+import ch.acanda.eclipse.pmd.preferences.PMDPreferences;
+import ch.acanda.eclipse.pmd.profiler.AnalysisEvent;
 import ch.acanda.eclipse.pmd.repository.ProjectModelRepository;
+import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.RuleSetNotFoundException;
 import net.sourceforge.pmd.RuleSetReferenceId;
 import net.sourceforge.pmd.RuleSets;
-import net.sourceforge.pmd.RulesetsFactoryUtils;
 
 /**
+ * Loads the rule sets of a project. Projects whose rule set files have the same locations and the same content share
+ * the parsed rule sets, so a workspace where many projects use the same rule set file parses it only once. Remote
+ * rule set files are loaded from their local copies, see {@link RemoteRuleSetMirror}, so they are shared as well. The
+ * built-in rule set files of PMD, which the rule set files usually reference, are only read once per session. Every
+ * project still gets its own guarded copy of the shared rule sets, so the rules are supervised per project and the
+ * rule sets of a project can be invalidated without affecting the other projects.
+ *
  * @author Philip Graf
  */
 public class RuleSetsCacheLoader extends CacheLoader<String, RuleSets> {
 
     private final ProjectModelRepository repository = new ProjectModelRepository();
 
+    /**
+     * Maps the fingerprint of a configuration to its parsed rule sets. The rule sets are only shared, never used
+     * directly, as each project guards them with its own watchdog. The shared rule sets are weighed here, once, rather
+     * than in the rule sets cache of the projects.
+     */
+    private final Cache<String, RuleSets> sharedRuleSets = CacheBuilder.newBuilder()
+            .maximumWeight(PMDPreferences.getRuleSetsCacheMaxWeight())
+            .weigher(RuleSetsWeigher.SHARED)
+            .concurrencyLevel(1)
+            .expireAfterWrite(1, HOURS)
+            .build();
+
     @Override
     public RuleSets load(final String projectName) {
         PMDPlugin.getDefault().info("RuleSetsCache: loading rule sets for project " + projectName);
+        final AnalysisEvent event = AnalysisEvent.begin(AnalysisEvent.Type.RULE_SETS_LOADING).project(projectName);
         try {
             final ProjectModel projectModel = repository.load(projectName).or(new ProjectModel(projectName));
             final ImmutableSortedSet<RuleSetModel> ruleSetModels = projectModel.getRuleSets();
-            final Iterable<RuleSetReferenceId> ids = presentInstances(transform(ruleSetModels, new ToReferenceId(projectName)));
-            return RulesetsFactoryUtils.defaultFactory().createRuleSets(ImmutableList.copyOf(ids));
+            final ImmutableList<String> locations =
+                    ImmutableList.copyOf(presentInstances(transform(ruleSetModels, new ToResolvedLocation(projectName))));
+            final RuleSets ruleSets = getOrCreateRuleSets(locations);
+            event.ruleSets(ruleSets);
+            return RuleWatchdog.guard(ruleSets, ResourcesPlugin.getWorkspace().getRoot().getProject(projectName));
         } catch (final RuleSetNotFoundException e) {
             PMDPlugin.getDefault().error("Cannot load rule sets for project " + projectName, e);
             return new RuleSets();
+        } finally {
+            event.commit();
+        }
+    }
+
+    /**
+     * Discards the parsed rule sets shared between projects and the content of the built-in rule set files to release
+     * the memory they retain.
+     */
+    public void release() {
+        sharedRuleSets.invalidateAll();
+        BuiltInRuleSetResourceLoader.release();
+    }
+
+    private RuleSets getOrCreateRuleSets(final List<String> locations) throws RuleSetNotFoundException {
+        final Optional<String> fingerprint = fingerprint(locations);
+        if (!fingerprint.isPresent()) {
+            return createRuleSets(locations);
+        }
+        try {
+            return sharedRuleSets.get(fingerprint.get(), new Callable<RuleSets>() {
+                @Override
+                public RuleSets call() throws RuleSetNotFoundException {
+                    return createRuleSets(locations);
+                }
+            });
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuleSetNotFoundException) {
+                throw (RuleSetNotFoundException) e.getCause();
+            }
+            throw new IllegalStateException("Cannot load rule sets " + locations, e.getCause());
+        }
+    }
+
+    /**
+     * Parses the rule set files. The files are independent of each other, so if there are several of them, they are
+     * parsed in parallel, each with its own factory.
+     */
+    static RuleSets createRuleSets(final List<String> locations) throws RuleSetNotFoundException {
+        final RuleSets ruleSets = new RuleSets();
+        if (locations.size() <= 1) {
+            for (final String location : locations) {
+                ruleSets.addRuleSet(createRuleSet(location));
+            }
+            return ruleSets;
+        }
+
+        final int threads = Math.min(locations.size(), Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("eclipse-pmd rule set loader %d").setDaemon(true).build());
+        try {
+            final List<Future<RuleSet>> futures = new ArrayList<>(locations.size());
+            for (final String location : locations) {
+                futures.add(executor.submit(new Callable<RuleSet>() {
+                    @Override
+                    public RuleSet call() throws RuleSetNotFoundException {
+                        return createRuleSet(location);
+                    }
+                }));
+            }
+            // the rule sets are added in the order of the configuration so the result does not depend on the timing
+            for (final Future<RuleSet> future : futures) {
+                ruleSets.addRuleSet(getUninterruptibly(future));
+            }
+            return ruleSets;
+        } catch (final ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), RuleSetNotFoundException.class);
+            throw new IllegalStateException("Cannot load rule sets " + locations, e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-    private static final class ToReferenceId implements Function<RuleSetModel, Optional<RuleSetReferenceId>> {
+    private static RuleSet createRuleSet(final String location) throws RuleSetNotFoundException {
+        return BuiltInRuleSetResourceLoader.newRuleSetFactory().createRuleSet(new RuleSetReferenceId(location));
+    }
+
+    /**
+     * Computes the fingerprint of the resolved rule set locations, i.e. the hash of the locations and the content of
+     * the files at these locations.
+     *
+     * @return The fingerprint or {@code Optional.absent()} if a file cannot be read.
+     */
+    static Optional<String> fingerprint(final List<String> locations) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        for (final String location : locations) {
+            hasher.putString(location, StandardCharsets.UTF_8).putByte((byte) 0);
+            try {
+                final byte[] content = Files.readAllBytes(Paths.get(location));
+                hasher.putInt(content.length).putBytes(content);
+            } catch (final IOException | InvalidPathException e) {
+                return Optional.absent();
+            }
+        }
+        return Optional.of(hasher.hash().toString());
+    }
+
+    private static final class ToResolvedLocation implements Function<RuleSetModel, Optional<String>> {
 
         private final IProject project;
 
-        public ToReferenceId(final String projectName) {
+        public ToResolvedLocation(final String projectName) {
             project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectName);
         }
 
         @Override
-        public Optional<RuleSetReferenceId> apply(final RuleSetModel model) {
-            final Optional<String> resolvedLocation = LocationResolver.resolveIfExists(model.getLocation(), project);
-            return resolvedLocation.transform(new Function<String, RuleSetReferenceId>() {
-                @Override
-                public RuleSetReferenceId apply(final String location) {
-                    return new RuleSetReferenceId(location);
-                }
-            });
+        public Optional<String> apply(final RuleSetModel model) {
+            return LocationResolver.resolveIfExists(model.getLocation(), project);
         }
 
     }
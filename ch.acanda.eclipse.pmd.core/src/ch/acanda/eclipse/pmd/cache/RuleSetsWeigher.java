@@ -0,0 +1,93 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.cache;
+
+import com.google.common.cache.Weigher;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.lang.rule.RuleReference;
+import net.sourceforge.pmd.lang.rule.XPathRule;
+
+/**
+ * Estimates the heap retained by rule sets in kilobytes. The parsed rule sets are shared between the projects whose
+ * rule set files are the same, while every project guards them with its own wrappers, see
+ * {@link RuleSetsCacheLoader}. To not charge every project for the shared rules, there are two weighers:
+ * <ul>
+ * <li>{@link #PROJECT} weighs what the rule sets of a project own, i.e. the rule sets and the wrappers of the rules.</li>
+ * <li>{@link #SHARED} weighs the parsed rules. The estimate is based on the number of rule sets and rules and on the
+ * length of the XPath expressions, as an XPath rule keeps its compiled query and its expression tree is roughly
+ * proportional to the length of the expression.</li>
+ * </ul>
+ * The numbers are rough averages; they are meant to compare the entries of a cache and to size it, not to measure the
+ * heap exactly.
+ *
+ * @author Philip Graf
+ */
+final class RuleSetsWeigher implements Weigher<String, RuleSets> {
+
+    /**
+     * Weighs the rule sets of a project without the shared rules they wrap.
+     */
+    static final RuleSetsWeigher PROJECT = new RuleSetsWeigher(false);
+
+    /**
+     * Weighs the parsed rule sets that are shared between the projects.
+     */
+    static final RuleSetsWeigher SHARED = new RuleSetsWeigher(true);
+
+    private static final long RULE_SET_BYTES = 2 * 1024;
+    private static final long RULE_BYTES = 4 * 1024;
+    private static final long RULE_WRAPPER_BYTES = 512;
+    private static final long XPATH_QUERY_BYTES = 16 * 1024;
+    private static final long XPATH_BYTES_PER_CHARACTER = 64;
+
+    private final boolean ownsRules;
+
+    private RuleSetsWeigher(final boolean ownsRules) {
+        this.ownsRules = ownsRules;
+    }
+
+    @Override
+    public int weigh(final String key, final RuleSets ruleSets) {
+        return weigh(ruleSets);
+    }
+
+    int weigh(final RuleSets ruleSets) {
+        long bytes = 0;
+        for (final RuleSet ruleSet : ruleSets.getAllRuleSets()) {
+            bytes += RULE_SET_BYTES;
+            for (final Rule rule : ruleSet.getRules()) {
+                bytes += ownsRules ? weigh(rule) : RULE_WRAPPER_BYTES;
+            }
+        }
+        // an empty configuration still has a weight so it counts as an entry
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes / 1024));
+    }
+
+    private static long weigh(final Rule rule) {
+        Rule actualRule = rule;
+        // the rules of a rule set file are references to the actual rules
+        while (actualRule instanceof RuleReference) {
+            actualRule = ((RuleReference) actualRule).getRule();
+        }
+        if (actualRule instanceof XPathRule) {
+            // a rule reference might override the expression of the rule it references
+            final String xpath = rule.getProperty(XPathRule.XPATH_DESCRIPTOR);
+            final int length = xpath == null ? 0 : xpath.length();
+            return RULE_BYTES + XPATH_QUERY_BYTES + length * XPATH_BYTES_PER_CHARACTER;
+        }
+        return RULE_BYTES;
+    }
+
+}
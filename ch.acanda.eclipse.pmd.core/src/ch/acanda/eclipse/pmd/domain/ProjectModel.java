@@ -16,6 +16,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.util.Comparator;
 
 import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.ImmutableSortedSet.Builder;
 
@@ -23,6 +24,8 @@ public class ProjectModel extends DomainModel {
 
     public static final String RULESETS_PROPERTY = "ruleSets";
     public static final String PMDENABLED_PROPERTY = "isPMDEnabled";
+    public static final String INCLUDEPATTERNS_PROPERTY = "includePatterns";
+    public static final String EXCLUDEPATTERNS_PROPERTY = "excludePatterns";
 
     public static final RuleSetComparator RULE_SET_COMPARATOR = new RuleSetComparator();
 
@@ -30,6 +33,8 @@ public class ProjectModel extends DomainModel {
 
     private boolean isPMDEnabled;
     private ImmutableSortedSet<RuleSetModel> ruleSets = ImmutableSortedSet.<RuleSetModel>of();
+    private ImmutableList<String> includePatterns = ImmutableList.of();
+    private ImmutableList<String> excludePatterns = ImmutableList.of();
 
     /**
      * Creates a new project model without any rule sets and where PMD is disabled.
@@ -62,6 +67,30 @@ public class ProjectModel extends DomainModel {
         return ruleSets;
     }
 
+    /**
+     * Sets the glob patterns of the files PMD analyzes. The patterns are relative to the project. If there are no
+     * include patterns, all files are included.
+     */
+    public void setIncludePatterns(final Iterable<String> includePatterns) {
+        setProperty(INCLUDEPATTERNS_PROPERTY, this.includePatterns, this.includePatterns = ImmutableList.copyOf(includePatterns));
+    }
+
+    public ImmutableList<String> getIncludePatterns() {
+        return includePatterns;
+    }
+
+    /**
+     * Sets the glob patterns of the files PMD does not analyze. The patterns are relative to the project. They take
+     * precedence over the include patterns.
+     */
+    public void setExcludePatterns(final Iterable<String> excludePatterns) {
+        setProperty(EXCLUDEPATTERNS_PROPERTY, this.excludePatterns, this.excludePatterns = ImmutableList.copyOf(excludePatterns));
+    }
+
+    public ImmutableList<String> getExcludePatterns() {
+        return excludePatterns;
+    }
+
     private final static class RuleSetComparator implements Comparator<RuleSetModel> {
 
         @Override
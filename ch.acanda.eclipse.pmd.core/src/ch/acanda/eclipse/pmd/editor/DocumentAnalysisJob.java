@@ -0,0 +1,258 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.editor;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.source.Annotation;
+import org.eclipse.jface.text.source.IAnnotationModel;
+import org.eclipse.jface.text.source.IAnnotationModelExtension;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import ch.acanda.eclipse.pmd.PMDPlugin;
+import ch.acanda.eclipse.pmd.builder.Analyzer;
+import ch.acanda.eclipse.pmd.builder.PMDBuilder;
+import ch.acanda.eclipse.pmd.marker.MarkerUtil;
+import ch.acanda.eclipse.pmd.marker.MarkerUtil.Range;
+import ch.acanda.eclipse.pmd.marker.SourceIndex;
+import ch.acanda.eclipse.pmd.preferences.PMDPreferences;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+
+/**
+ * Analyzes the content of a text file buffer when it has not changed for a short time and shows the violations as
+ * temporary annotations in the annotation model of the buffer. While the temporary annotations are shown, the
+ * annotations of the PMD markers are hidden, so every violation is only shown once.
+ * <p>
+ * Editing the document never waits for PMD: a change cancels the running analysis, which then skips the rules it has
+ * not yet applied, and schedules the job again. The result of an analysis is discarded if the document has changed in
+ * the meantime. An analysis also skips the remaining rules once it exceeds the time limit. If several analyses in a
+ * row exceed the time limit, the file is no longer analyzed while it is being edited but only when it is saved.
+ *
+ * @author Philip Graf
+ */
+final class DocumentAnalysisJob extends Job implements IDocumentListener {
+
+    private static final String ANNOTATION_TYPE = "ch.acanda.eclipse.pmd.core.pmdTemporaryAnnotation";
+    private static final String LONG_ANNOTATION_TYPE = "ch.acanda.eclipse.pmd.core.pmdTemporaryLongAnnotation";
+    private static final ImmutableSet<String> MARKER_ANNOTATION_TYPES =
+            ImmutableSet.of("ch.acanda.eclipse.pmd.core.pmdAnnotation", "ch.acanda.eclipse.pmd.core.pmdLongAnnotation");
+
+    /**
+     * Larger documents are only analyzed when they are saved.
+     */
+    private static final int MAX_DOCUMENT_LENGTH = 1 << 20;
+
+    /**
+     * The number of consecutive analyses that may exceed the time limit before the document is only analyzed when it
+     * is saved. A single slow analysis, e.g. while the parser of the language is being loaded, is not enough.
+     */
+    private static final int MAX_SLOW_ANALYSES = 3;
+
+    private final IFile file;
+    private final ITextFileBuffer buffer;
+    private final Analyzer analyzer;
+
+    /**
+     * The rule sets of the project and the copy this job analyzes the document with. They are only accessed by the
+     * job itself.
+     */
+    private RuleSets projectRuleSets;
+    private RuleSets ruleSets;
+
+    /**
+     * The temporary annotations that are currently in the annotation model. Guarded by {@code this}.
+     */
+    private List<Annotation> annotations = ImmutableList.of();
+
+    /**
+     * The number of consecutive analyses that exceeded the time limit. It is only written by the job itself.
+     */
+    private volatile int slowAnalyses;
+
+    DocumentAnalysisJob(final IFile file, final ITextFileBuffer buffer, final Analyzer analyzer) {
+        super("PMD analyzing " + file.getName());
+        this.file = file;
+        this.buffer = buffer;
+        this.analyzer = analyzer;
+        setSystem(true);
+        setPriority(DECORATE);
+    }
+
+    @Override
+    public boolean belongsTo(final Object family) {
+        return PMDBuilder.JOB_FAMILY.equals(family);
+    }
+
+    void start() {
+        buffer.getDocument().addDocumentListener(this);
+        if (buffer.isDirty()) {
+            schedule(PMDPreferences.getAsYouTypeDelay());
+        }
+    }
+
+    void dispose() {
+        buffer.getDocument().removeDocumentListener(this);
+        reset();
+    }
+
+    /**
+     * Cancels the analysis and removes the temporary annotations.
+     */
+    void reset() {
+        cancel();
+        updateAnnotations(ImmutableMap.<Annotation, Position>of(), false);
+    }
+
+    @Override
+    public void documentAboutToBeChanged(final DocumentEvent event) {
+        cancel();
+    }
+
+    @Override
+    public void documentChanged(final DocumentEvent event) {
+        if (slowAnalyses < MAX_SLOW_ANALYSES) {
+            schedule(PMDPreferences.getAsYouTypeDelay());
+        }
+    }
+
+    @Override
+    protected IStatus run(final IProgressMonitor monitor) {
+        final IDocument document = buffer.getDocument();
+        final long modificationStamp = getModificationStamp(document);
+        final String content = document.get();
+        if (content.length() > MAX_DOCUMENT_LENGTH || monitor.isCanceled()) {
+            return Status.OK_STATUS;
+        }
+        // the file is analyzed by the builder when it is saved anyway
+        if (PMDPlugin.getDefault().getMemoryMonitor().isUnderPressure()) {
+            return Status.OK_STATUS;
+        }
+
+        if (!PMDBuilder.getFileMatcher(file.getProject()).acceptsFile(file)) {
+            updateAnnotations(ImmutableMap.<Annotation, Position>of(), false);
+            return Status.OK_STATUS;
+        }
+
+        final long start = System.nanoTime();
+        final long timeLimit = PMDPreferences.getAsYouTypeTimeLimit();
+        final Optional<ImmutableList<RuleViolation>> violations =
+                analyzer.analyze(file, new StringReader(content), getRuleSets(), monitor, timeLimit);
+        final long duration = NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // the document might have changed while it was read or analyzed
+        if (monitor.isCanceled() || !isUnchanged(document, modificationStamp, content)) {
+            return Status.CANCEL_STATUS;
+        }
+        if (duration > timeLimit) {
+            slowAnalyses++;
+            if (slowAnalyses >= MAX_SLOW_ANALYSES) {
+                updateAnnotations(ImmutableMap.<Annotation, Position>of(), false);
+                PMDPlugin.getDefault().info("PMD took longer than " + timeLimit + " ms to analyze " + file.getFullPath() + " "
+                        + slowAnalyses + " times in a row. The file will only be analyzed when it is saved.");
+                return Status.OK_STATUS;
+            }
+        } else {
+            slowAnalyses = 0;
+        }
+        // keep the previous annotations if PMD could not analyze the content, e.g. because of a syntax error or because
+        // the analysis has been cut short
+        if (violations.isPresent()) {
+            updateAnnotations(createAnnotations(content, violations.get()), true);
+        }
+        return Status.OK_STATUS;
+    }
+
+    /**
+     * The rule sets returned by the cache are shared, so the job copies them once and then reuses its copy until the
+     * configuration of the project changes.
+     */
+    private RuleSets getRuleSets() {
+        final RuleSets current = PMDBuilder.getRuleSets(file.getProject());
+        if (current != projectRuleSets) {
+            projectRuleSets = current;
+            ruleSets = new RuleSets(current);
+        }
+        return ruleSets;
+    }
+
+    private static long getModificationStamp(final IDocument document) {
+        if (document instanceof IDocumentExtension4) {
+            return ((IDocumentExtension4) document).getModificationStamp();
+        }
+        return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+    }
+
+    private static boolean isUnchanged(final IDocument document, final long modificationStamp, final String content) {
+        if (modificationStamp == IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP) {
+            return content.equals(document.get());
+        }
+        return modificationStamp == getModificationStamp(document);
+    }
+
+    private static Map<Annotation, Position> createAnnotations(final String content, final Iterable<RuleViolation> violations) {
+        final SourceIndex index = new SourceIndex(content);
+        final Map<Annotation, Position> annotations = new LinkedHashMap<>();
+        for (final RuleViolation violation : violations) {
+            final Range range = MarkerUtil.getAbsoluteRange(index, violation);
+            final int start = Math.max(range.getStart(), 0);
+            final int end = Math.max(range.getEnd(), start);
+            final String type = violation.getBeginLine() == violation.getEndLine() ? ANNOTATION_TYPE : LONG_ANNOTATION_TYPE;
+            annotations.put(new Annotation(type, false, violation.getDescription()), new Position(start, end - start));
+        }
+        return annotations;
+    }
+
+    /**
+     * Replaces the temporary annotations in the annotation model of the buffer.
+     *
+     * @param hideMarkers {@code true} if the annotations of the PMD markers should be hidden because they are
+     *            superseded by the temporary annotations.
+     */
+    private synchronized void updateAnnotations(final Map<Annotation, Position> newAnnotations, final boolean hideMarkers) {
+        final IAnnotationModel model = buffer.getAnnotationModel();
+        if (model instanceof IAnnotationModelExtension) {
+            final Iterator<?> iterator = model.getAnnotationIterator();
+            while (iterator.hasNext()) {
+                final Annotation annotation = (Annotation) iterator.next();
+                if (MARKER_ANNOTATION_TYPES.contains(annotation.getType())) {
+                    annotation.markDeleted(hideMarkers);
+                }
+            }
+            final Annotation[] oldAnnotations = annotations.toArray(new Annotation[annotations.size()]);
+            ((IAnnotationModelExtension) model).replaceAnnotations(oldAnnotations, newAnnotations);
+            annotations = ImmutableList.copyOf(newAnnotations.keySet());
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.editor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.IFileBuffer;
+import org.eclipse.core.filebuffers.IFileBufferListener;
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.filebuffers.ITextFileBufferManager;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+import com.google.common.base.Optional;
+
+import ch.acanda.eclipse.pmd.PMDPlugin;
+import ch.acanda.eclipse.pmd.builder.Analyzer;
+import ch.acanda.eclipse.pmd.builder.PMDNature;
+
+/**
+ * Analyzes the content of open editors while it is being edited. The editor analysis listens to the text file buffers
+ * of the workspace and attaches a {@link DocumentAnalysisJob} to every buffer of a file in a PMD enabled project.
+ *
+ * @author Philip Graf
+ */
+public final class EditorAnalysis implements IFileBufferListener {
+
+    private final Analyzer analyzer = new Analyzer();
+
+    private final Map<IFileBuffer, DocumentAnalysisJob> jobs = new HashMap<>();
+
+    /**
+     * Starts analyzing the buffers that are already open and the buffers that will be opened.
+     */
+    public void start() {
+        final ITextFileBufferManager manager = FileBuffers.getTextFileBufferManager();
+        manager.addFileBufferListener(this);
+        for (final IFileBuffer buffer : manager.getFileBuffers()) {
+            bufferCreated(buffer);
+        }
+    }
+
+    /**
+     * Stops analyzing buffers and removes all temporary annotations.
+     */
+    public synchronized void stop() {
+        FileBuffers.getTextFileBufferManager().removeFileBufferListener(this);
+        for (final DocumentAnalysisJob job : jobs.values()) {
+            job.dispose();
+        }
+        jobs.clear();
+    }
+
+    @Override
+    public synchronized void bufferCreated(final IFileBuffer buffer) {
+        if (buffer instanceof ITextFileBuffer && !jobs.containsKey(buffer)) {
+            final Optional<IFile> file = getFile(buffer);
+            if (file.isPresent()) {
+                final DocumentAnalysisJob job = new DocumentAnalysisJob(file.get(), (ITextFileBuffer) buffer, analyzer);
+                jobs.put(buffer, job);
+                job.start();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void bufferDisposed(final IFileBuffer buffer) {
+        final DocumentAnalysisJob job = jobs.remove(buffer);
+        if (job != null) {
+            job.dispose();
+        }
+    }
+
+    @Override
+    public synchronized void dirtyStateChanged(final IFileBuffer buffer, final boolean isDirty) {
+        final DocumentAnalysisJob job = jobs.get(buffer);
+        // once the buffer has been saved or reverted, the markers of the builder show the violations again
+        if (job != null && !isDirty) {
+            job.reset();
+        }
+    }
+
+    @Override
+    public void underlyingFileMoved(final IFileBuffer buffer, final IPath path) {
+        bufferDisposed(buffer);
+    }
+
+    @Override
+    public void underlyingFileDeleted(final IFileBuffer buffer) {
+        bufferDisposed(buffer);
+    }
+
+    @Override
+    public void bufferContentAboutToBeReplaced(final IFileBuffer buffer) {
+        // the document listener of the job takes care of the new content
+    }
+
+    @Override
+    public void bufferContentReplaced(final IFileBuffer buffer) {
+        // the document listener of the job takes care of the new content
+    }
+
+    @Override
+    public void stateChanging(final IFileBuffer buffer) {
+        // not relevant for the analysis
+    }
+
+    @Override
+    public void stateValidationChanged(final IFileBuffer buffer, final boolean isStateValidated) {
+        // not relevant for the analysis
+    }
+
+    @Override
+    public void stateChangeFailed(final IFileBuffer buffer) {
+        // not relevant for the analysis
+    }
+
+    /**
+     * @return The file of the buffer if it is a file in a PMD enabled project, {@code Optional.absent()} otherwise.
+     */
+    private static Optional<IFile> getFile(final IFileBuffer buffer) {
+        final IPath location = buffer.getLocation();
+        if (location == null || location.segmentCount() < 2) {
+            return Optional.absent();
+        }
+        final IFile file = ResourcesPlugin.getWorkspace().getRoot().getFile(location);
+        final IProject project = file.getProject();
+        try {
+            if (project.isAccessible() && project.hasNature(PMDNature.ID)) {
+                return Optional.of(file);
+            }
+        } catch (final CoreException e) {
+            PMDPlugin.getDefault().warn("Could not determine whether PMD is enabled for project " + project.getName(), e);
+        }
+        return Optional.absent();
+    }
+
+}
@@ -0,0 +1,150 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.editor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.ISelectionListener;
+import org.eclipse.ui.IWindowListener;
+import org.eclipse.ui.IWorkbench;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.IWorkbenchPart;
+import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.ui.IWorkingSet;
+import org.eclipse.ui.PlatformUI;
+
+import ch.acanda.eclipse.pmd.builder.FilePrioritizer;
+
+/**
+ * Reports the activated editors and the selected resources of the workbench windows to the {@link FilePrioritizer}, so
+ * the files the user is working on are analyzed first.
+ *
+ * @author Philip Graf
+ */
+public final class WorkbenchFocusTracker implements ISelectionListener, IWindowListener {
+
+    private final FilePrioritizer prioritizer;
+
+    private IWorkbenchPart activePart;
+
+    public WorkbenchFocusTracker(final FilePrioritizer prioritizer) {
+        this.prioritizer = prioritizer;
+    }
+
+    /**
+     * Starts tracking the workbench windows. The listeners are registered asynchronously on the UI thread.
+     */
+    public void start() {
+        if (PlatformUI.isWorkbenchRunning()) {
+            final IWorkbench workbench = PlatformUI.getWorkbench();
+            workbench.getDisplay().asyncExec(new Runnable() {
+                @Override
+                public void run() {
+                    workbench.addWindowListener(WorkbenchFocusTracker.this);
+                    for (final IWorkbenchWindow window : workbench.getWorkbenchWindows()) {
+                        windowOpened(window);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops tracking the workbench windows if the workbench is still running.
+     */
+    public void stop() {
+        if (PlatformUI.isWorkbenchRunning()) {
+            final IWorkbench workbench = PlatformUI.getWorkbench();
+            final Display display = workbench.getDisplay();
+            if (!display.isDisposed()) {
+                display.asyncExec(new Runnable() {
+                    @Override
+                    public void run() {
+                        workbench.removeWindowListener(WorkbenchFocusTracker.this);
+                        for (final IWorkbenchWindow window : workbench.getWorkbenchWindows()) {
+                            windowClosed(window);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    @Override
+    public void selectionChanged(final IWorkbenchPart part, final ISelection selection) {
+        if (part instanceof IEditorPart) {
+            // the caret movements of the active editor are reported as well but do not change the priorities
+            if (part != activePart) {
+                prioritizer.editorActivated();
+            }
+        } else if (selection instanceof IStructuredSelection) {
+            final List<IResource> resources = new ArrayList<>();
+            addResources(((IStructuredSelection) selection).toArray(), resources);
+            final IWorkingSet workingSet = getWorkingSet(part);
+            if (workingSet != null) {
+                addResources(workingSet.getElements(), resources);
+            }
+            prioritizer.setSelectedResources(resources);
+        }
+        activePart = part;
+    }
+
+    private static IWorkingSet getWorkingSet(final IWorkbenchPart part) {
+        final IWorkbenchPage page = part.getSite().getPage();
+        if (page == null) {
+            return null;
+        }
+        final IWorkingSet workingSet = page.getAggregateWorkingSet();
+        return workingSet == null || workingSet.isEmpty() ? null : workingSet;
+    }
+
+    private static void addResources(final Object[] elements, final List<IResource> resources) {
+        for (final Object element : elements) {
+            if (element instanceof IResource) {
+                resources.add((IResource) element);
+            } else if (element instanceof IAdaptable) {
+                final IResource resource = ((IAdaptable) element).getAdapter(IResource.class);
+                if (resource != null) {
+                    resources.add(resource);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void windowOpened(final IWorkbenchWindow window) {
+        window.getSelectionService().addPostSelectionListener(this);
+    }
+
+    @Override
+    public void windowClosed(final IWorkbenchWindow window) {
+        window.getSelectionService().removePostSelectionListener(this);
+    }
+
+    @Override
+    public void windowActivated(final IWorkbenchWindow window) {
+        // the selection service reports the selection of the activated window
+    }
+
+    @Override
+    public void windowDeactivated(final IWorkbenchWindow window) {
+        // the selection of a deactivated window remains relevant until another window is activated
+    }
+
+}
@@ -29,10 +29,12 @@ import ch.acanda.eclipse.pmd.PMDPlugin;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 
 /**
- * Watches files and notifies registered listeners when they have changed.
+ * Watches files and notifies registered listeners when they have changed. Subscribing and cancelling subscriptions is
+ * thread-safe.
  *
  * @author Philip Graf
  */
@@ -64,7 +66,7 @@ public final class FileWatcher {
         watchedFiles = HashMultimap.create();
     }
 
-    public Subscription subscribe(final Path file, final FileChangedListener listener) throws IOException {
+    public synchronized Subscription subscribe(final Path file, final FileChangedListener listener) throws IOException {
         final Path absoluteFile = file.toAbsolutePath();
         listeners.put(absoluteFile, listener);
 
@@ -82,18 +84,24 @@ public final class FileWatcher {
         return new Subscription() {
             @Override
             public void cancel() {
-                listeners.remove(absoluteFile, listener);
-                watchedFiles.remove(absoluteDirectory, absoluteFile);
-                if (!watchedFiles.containsKey(absoluteDirectory)) {
-                    watchKeys.remove(absoluteDirectory);
-                    if (watchKeys.isEmpty()) {
-                        stopWatcher();
+                synchronized (FileWatcher.this) {
+                    listeners.remove(absoluteFile, listener);
+                    watchedFiles.remove(absoluteDirectory, absoluteFile);
+                    if (!watchedFiles.containsKey(absoluteDirectory)) {
+                        watchKeys.remove(absoluteDirectory);
+                        if (watchKeys.isEmpty()) {
+                            stopWatcher();
+                        }
                     }
                 }
             }
         };
     }
 
+    private synchronized ImmutableSet<FileChangedListener> getListeners(final Path file) {
+        return ImmutableSet.copyOf(listeners.get(file));
+    }
+
     private void startWatcher() {
         final WatcherThread watcher = new WatcherThread();
         watcherThread = Optional.of(watcher);
@@ -125,7 +133,8 @@ public final class FileWatcher {
                                 final String filename = event.context().toString();
                                 final Path file = directory.resolve(filename);
                                 PMDPlugin.getDefault().info(event.kind() + ": " + file);
-                                for (final FileChangedListener listener : listeners.get(file)) {
+                                PMDPlugin.getDefault().getAnalysisMetrics().fileWatcherEvent();
+                                for (final FileChangedListener listener : getListeners(file)) {
                                     listener.fileChanged(file);
                                 }
                             }
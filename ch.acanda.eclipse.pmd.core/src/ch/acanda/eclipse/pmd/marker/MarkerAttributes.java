@@ -0,0 +1,119 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.marker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+
+import com.google.common.base.Objects;
+
+/**
+ * The type and the attributes of a PMD marker that has not yet been created. Computing the attributes before the
+ * marker is created allows all attributes to be written at once.
+ *
+ * @author Philip Graf
+ */
+public final class MarkerAttributes {
+
+    private final String type;
+    private final String[] names;
+    private final Object[] values;
+
+    private MarkerAttributes(final String type, final String[] names, final Object[] values) {
+        this.type = type;
+        this.names = names;
+        this.values = values;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Creates a marker with this type and these attributes on the provided resource. All attributes are set with a
+     * single call to {@link IMarker#setAttributes(String[], Object[])}.
+     *
+     * @return The created marker.
+     */
+    public IMarker createMarker(final IResource resource) throws CoreException {
+        final IMarker marker = resource.createMarker(type);
+        marker.setAttributes(names, values);
+        return marker;
+    }
+
+    /**
+     * Replaces the attributes of an existing marker with these attributes.
+     */
+    void applyTo(final IMarker marker) throws CoreException {
+        marker.setAttributes(names, values);
+    }
+
+    /**
+     * @return The value of the attribute or {@code null} if this marker does not have such an attribute.
+     */
+    Object getAttribute(final String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return {@code true} if the marker's type is equal to this type and the marker has the same values for all of
+     *         these attributes.
+     */
+    boolean isEqualTo(final String markerType, final Map<String, Object> markerAttributes) {
+        if (!type.equals(markerType)) {
+            return false;
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (!Objects.equal(values[i], markerAttributes.get(names[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static Builder builder(final String type) {
+        return new Builder(type);
+    }
+
+    static final class Builder {
+
+        private final String type;
+        private final List<String> names = new ArrayList<>();
+        private final List<Object> values = new ArrayList<>();
+
+        private Builder(final String type) {
+            this.type = type;
+        }
+
+        public Builder put(final String name, final Object value) {
+            names.add(name);
+            values.add(value);
+            return this;
+        }
+
+        public MarkerAttributes build() {
+            return new MarkerAttributes(type, names.toArray(new String[names.size()]), values.toArray());
+        }
+
+    }
+
+}
@@ -0,0 +1,37 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.marker;
+
+/**
+ * The number of markers an update of the markers of a file has created and deleted.
+ *
+ * @author Philip Graf
+ */
+public final class MarkerChanges {
+
+    private final int created;
+    private final int deleted;
+
+    MarkerChanges(final int created, final int deleted) {
+        this.created = created;
+        this.deleted = deleted;
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public int getDeleted() {
+        return deleted;
+    }
+
+}
@@ -0,0 +1,128 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.marker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+/**
+ * Replaces the PMD markers of a file with new markers by changing only what differs, so that a small edit of a file
+ * only causes a small number of marker deltas.
+ * <p>
+ * A new marker is matched with an existing marker with the same type, rule id, message and range first. If there is
+ * no such marker, it is matched with an existing marker with the same type, rule id and message, i.e. a marker that
+ * has been shifted by an edit, whose attributes are updated in place. New markers without a match are created and
+ * existing markers without a match are deleted.
+ *
+ * @author Philip Graf
+ */
+final class MarkerReconciler {
+
+    private static final Joiner KEY_JOINER = Joiner.on('\u0000').useForNull("");
+
+    private final IFile file;
+
+    MarkerReconciler(final IFile file) {
+        this.file = file;
+    }
+
+    /**
+     * @return The number of markers that have been created and deleted.
+     */
+    public MarkerChanges reconcile(final String markerType, final Collection<MarkerAttributes> markers) throws CoreException {
+        final ListMultimap<String, IMarker> byRange = ArrayListMultimap.create();
+        for (final IMarker marker : file.findMarkers(markerType, true, IResource.DEPTH_ZERO)) {
+            byRange.put(createRangeKey(marker), marker);
+        }
+
+        final List<MarkerAttributes> unmatched = new ArrayList<>();
+        for (final MarkerAttributes attributes : markers) {
+            final IMarker marker = remove(byRange, createRangeKey(attributes));
+            if (marker == null) {
+                unmatched.add(attributes);
+            } else {
+                updateIfChanged(marker, attributes);
+            }
+        }
+
+        final ListMultimap<String, IMarker> byMessage = ArrayListMultimap.create();
+        for (final IMarker marker : byRange.values()) {
+            byMessage.put(createMessageKey(marker), marker);
+        }
+        int created = 0;
+        for (final MarkerAttributes attributes : unmatched) {
+            final IMarker marker = remove(byMessage, createMessageKey(attributes));
+            if (marker == null) {
+                attributes.createMarker(file);
+                created++;
+            } else {
+                attributes.applyTo(marker);
+            }
+        }
+
+        if (!byMessage.isEmpty()) {
+            final Collection<IMarker> obsolete = byMessage.values();
+            file.getWorkspace().deleteMarkers(obsolete.toArray(new IMarker[obsolete.size()]));
+        }
+        return new MarkerChanges(created, byMessage.size());
+    }
+
+    private static void updateIfChanged(final IMarker marker, final MarkerAttributes attributes) throws CoreException {
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> markerAttributes = marker.getAttributes();
+        if (!attributes.isEqualTo(marker.getType(), markerAttributes)) {
+            attributes.applyTo(marker);
+        }
+    }
+
+    private static IMarker remove(final ListMultimap<String, IMarker> markers, final String key) {
+        final Iterator<IMarker> iterator = markers.get(key).iterator();
+        if (iterator.hasNext()) {
+            final IMarker marker = iterator.next();
+            iterator.remove();
+            return marker;
+        }
+        return null;
+    }
+
+    private static String createRangeKey(final IMarker marker) throws CoreException {
+        return KEY_JOINER.join(createMessageKey(marker), marker.getAttribute(IMarker.CHAR_START),
+                marker.getAttribute(IMarker.CHAR_END));
+    }
+
+    private static String createRangeKey(final MarkerAttributes attributes) {
+        return KEY_JOINER.join(createMessageKey(attributes), attributes.getAttribute(IMarker.CHAR_START),
+                attributes.getAttribute(IMarker.CHAR_END));
+    }
+
+    private static String createMessageKey(final IMarker marker) throws CoreException {
+        return KEY_JOINER.join(marker.getType(), marker.getAttribute(WrappingPMDMarker.RULE_ID), marker.getAttribute(IMarker.MESSAGE));
+    }
+
+    private static String createMessageKey(final MarkerAttributes attributes) {
+        return KEY_JOINER.join(attributes.getType(), attributes.getAttribute(WrappingPMDMarker.RULE_ID),
+                attributes.getAttribute(IMarker.MESSAGE));
+    }
+
+}
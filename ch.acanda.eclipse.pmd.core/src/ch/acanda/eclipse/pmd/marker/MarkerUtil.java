@@ -11,35 +11,34 @@
 
 package ch.acanda.eclipse.pmd.marker;
 
+import java.util.Collection;
 import java.util.Locale;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jface.text.BadLocationException;
-import org.eclipse.jface.text.Document;
 
+import com.google.common.base.Joiner;
+
+import ch.acanda.eclipse.pmd.repository.ProjectModelRepository;
 import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleViolation;
 
 /**
- * Utility for creating, adding and removing PMD markers.
+ * Utility for creating, adding and removing PMD markers. The utility does not have any state and can be used by several
+ * threads at the same time.
  *
  * @author Philip Graf
  */
 public final class MarkerUtil {
 
-    /*
-     * The tab size is used to calculate the correct start and end character for the marker. {@link
-     * RuleViolation#getBeginColumn()} and {@link RuleViolation#getEndColumn()} count a tabulator character as {@code
-     * JavaCharStream.tabSize} characters, while the marker counts a tabulator as one character.
-     */
-    private static final int PMD_TAB_SIZE = 8;
-
     private static final String MARKER_TYPE = "ch.acanda.eclipse.pmd.core.pmdMarker";
     private static final String LONG_MARKER_TYPE = "ch.acanda.eclipse.pmd.core.pmdLongMarker";
+    private static final String QUARANTINE_MARKER_TYPE = "ch.acanda.eclipse.pmd.core.pmdQuarantineMarker";
 
     private MarkerUtil() {
         // hide constructor of utility class
@@ -52,6 +51,13 @@ public final class MarkerUtil {
         file.deleteMarkers(MARKER_TYPE, true, IResource.DEPTH_ZERO);
     }
 
+    /**
+     * Removes all PMD markers from the files of a folder and its subfolders.
+     */
+    public static void removeAllMarkers(final IFolder folder) throws CoreException {
+        folder.deleteMarkers(MARKER_TYPE, true, IResource.DEPTH_INFINITE);
+    }
+
     /**
      * Removes all PMD markers from a project and all the files it contains.
      */
@@ -59,6 +65,44 @@ public final class MarkerUtil {
         project.deleteMarkers(MARKER_TYPE, true, IResource.DEPTH_INFINITE);
     }
 
+    /**
+     * Replaces the quarantine marker of a project. The marker is put on the project's PMD configuration file, or on
+     * the project itself if it does not have a configuration file, and lists the rules that have been quarantined
+     * because they repeatedly exceeded their time budget. If there are no quarantined rules, the marker is removed.
+     *
+     * @param project The project whose rules have been quarantined.
+     * @param ruleIds The ids of the quarantined rules.
+     * @param budgetMillis The time budget of a rule in milliseconds.
+     */
+    public static void updateQuarantineMarker(final IProject project, final Collection<String> ruleIds, final long budgetMillis)
+            throws CoreException {
+        project.deleteMarkers(QUARANTINE_MARKER_TYPE, false, IResource.DEPTH_ONE);
+        if (!ruleIds.isEmpty()) {
+            final IFile configFile = project.getFile(ProjectModelRepository.PMD_CONFIG_FILENAME);
+            final String message = String.format("PMD does not apply the following rules because they repeatedly took longer than "
+                    + "%d ms to analyze a file: %s. Change the PMD configuration of the project to apply them again.",
+                    budgetMillis, Joiner.on(", ").join(ruleIds));
+            MarkerAttributes.builder(QUARANTINE_MARKER_TYPE)
+                    .put(IMarker.MESSAGE, message)
+                    .put(IMarker.SEVERITY, IMarker.SEVERITY_WARNING)
+                    .build()
+                    .createMarker(configFile.exists() ? configFile : project);
+        }
+    }
+
+    /**
+     * Replaces the PMD markers of a file with the provided markers. Existing markers that are equal to a new marker are
+     * kept and markers that only moved are updated in place, so only the actual changes cause marker deltas.
+     *
+     * @param file The file whose markers are replaced.
+     * @param markers The new markers of the file.
+     * @return The number of markers that have been created and deleted.
+     * @throws CoreException Thrown when the file does not exist or its project is closed.
+     */
+    public static MarkerChanges updateMarkers(final IFile file, final Collection<MarkerAttributes> markers) throws CoreException {
+        return new MarkerReconciler(file).reconcile(MARKER_TYPE, markers);
+    }
+
     /**
      * Adds a PMD Marker to a file.
      *
@@ -69,27 +113,51 @@ public final class MarkerUtil {
      * @throws CoreException Thrown when the file does not exist or its project is closed.
      */
     public static IMarker addMarker(final IFile file, final String content, final RuleViolation violation) throws CoreException {
+        return addMarker(file, new SourceIndex(content), violation);
+    }
+
+    /**
+     * Adds a PMD Marker to a file. Use this method instead of {@link #addMarker(IFile, String, RuleViolation)} when
+     * adding several markers to the same file, so the content of the file is only indexed once.
+     *
+     * @param file The marker will be added to this file.
+     * @param index The index of the file's content.
+     * @param violation The PMD rule violation.
+     * @return The created marker.
+     * @throws CoreException Thrown when the file does not exist or its project is closed.
+     */
+    public static IMarker addMarker(final IFile file, final SourceIndex index, final RuleViolation violation) throws CoreException {
+        return createMarkerAttributes(index, violation).createMarker(file);
+    }
+
+    /**
+     * Computes the type and the attributes of the PMD marker of a rule violation without creating the marker.
+     *
+     * @param index The index of the content of the file that contains the violation.
+     * @param violation The PMD rule violation.
+     * @return The type and attributes of the marker.
+     */
+    public static MarkerAttributes createMarkerAttributes(final SourceIndex index, final RuleViolation violation) {
         final boolean isLongMarker = violation.getBeginLine() != violation.getEndLine();
-        final IMarker marker = file.createMarker(isLongMarker ? LONG_MARKER_TYPE : MARKER_TYPE);
-        final WrappingPMDMarker pmdMarker = new WrappingPMDMarker(marker);
-        marker.setAttribute(IMarker.MESSAGE, violation.getDescription());
-        marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
-        marker.setAttribute(IMarker.LINE_NUMBER, Math.max(violation.getBeginLine(), 0));
-        final Range range = getAbsoluteRange(content, violation);
+        final MarkerAttributes.Builder attributes = MarkerAttributes.builder(isLongMarker ? LONG_MARKER_TYPE : MARKER_TYPE);
+        attributes.put(IMarker.MESSAGE, violation.getDescription());
+        attributes.put(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
+        attributes.put(IMarker.LINE_NUMBER, Math.max(violation.getBeginLine(), 0));
+        final Range range = getAbsoluteRange(index, violation);
         final int start = Math.max(range.getStart(), 0);
-        marker.setAttribute(IMarker.CHAR_START, start);
+        attributes.put(IMarker.CHAR_START, start);
         final int end = Math.max(range.getEnd(), 0);
-        marker.setAttribute(IMarker.CHAR_END, end);
+        attributes.put(IMarker.CHAR_END, end);
         if (!isLongMarker) {
-            pmdMarker.setMarkerText(content.substring(start, end));
+            attributes.put(WrappingPMDMarker.MARKER_TEXT, index.getContent().subSequence(start, end).toString());
         }
         final Rule rule = violation.getRule();
-        pmdMarker.setRuleId(createRuleId(rule));
-        pmdMarker.setViolationClassName(violation.getClassName());
-        pmdMarker.setVariableName(violation.getVariableName());
-        pmdMarker.setRuleName(rule.getName());
-        pmdMarker.setLanguage(violation.getRule().getLanguage().getTerseName());
-        return marker;
+        attributes.put(WrappingPMDMarker.RULE_ID, createRuleId(rule));
+        attributes.put(WrappingPMDMarker.VIOLATION_CLASS_NAME, violation.getClassName());
+        attributes.put(WrappingPMDMarker.VARIABLE_NAME, violation.getVariableName());
+        attributes.put(WrappingPMDMarker.RULE_NAME, rule.getName());
+        attributes.put(WrappingPMDMarker.LANGUAGE, rule.getLanguage().getTerseName());
+        return attributes.build();
     }
 
     public static String createRuleId(final Rule rule) {
@@ -97,21 +165,23 @@ public final class MarkerUtil {
     }
 
     public static Range getAbsoluteRange(final String content, final RuleViolation violation) {
+        return getAbsoluteRange(new SourceIndex(content), violation);
+    }
+
+    public static Range getAbsoluteRange(final SourceIndex index, final RuleViolation violation) {
         Range range;
         try {
-            range = calculateAbsoluteRange(content, violation);
+            range = calculateAbsoluteRange(index, violation);
         } catch (final BadLocationException e) {
             range = new Range(0, 0);
         }
         return range;
     }
 
-    private static Range calculateAbsoluteRange(final String content, final RuleViolation violation) throws BadLocationException {
-        final Document document = new Document(content);
-
+    private static Range calculateAbsoluteRange(final SourceIndex index, final RuleViolation violation) throws BadLocationException {
         // violation line and column start at one, the marker's start and end positions at zero
-        final int start = getAbsolutePosition(content, document.getLineOffset(violation.getBeginLine() - 1), violation.getBeginColumn());
-        final int end = getAbsolutePosition(content, document.getLineOffset(violation.getEndLine() - 1), violation.getEndColumn());
+        final int start = index.getAbsolutePosition(violation.getBeginLine() - 1, violation.getBeginColumn());
+        final int end = index.getAbsolutePosition(violation.getEndLine() - 1, violation.getEndColumn());
 
         // for some rules PMD creates violations with the end position before the start position
         final Range range;
@@ -124,25 +194,6 @@ public final class MarkerUtil {
         return range;
     }
 
-    private static int getAbsolutePosition(final String content, final int lineOffset, final int pmdCharOffset) {
-        int pmdCharCounter = 0;
-        int absoluteOffset = lineOffset;
-        while (pmdCharCounter < pmdCharOffset) {
-            if (absoluteOffset < content.length()) {
-                final char c = content.charAt(absoluteOffset);
-                if (c == '\t') {
-                    pmdCharCounter = (pmdCharCounter / PMD_TAB_SIZE + 1) * PMD_TAB_SIZE;
-                } else {
-                    pmdCharCounter++;
-                }
-            } else {
-                break;
-            }
-            absoluteOffset++;
-        }
-        return absoluteOffset;
-    }
-
     public static final class Range {
         private final int start;
         private final int end;
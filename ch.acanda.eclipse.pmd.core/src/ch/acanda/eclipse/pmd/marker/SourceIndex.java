@@ -0,0 +1,126 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.marker;
+
+import java.util.Arrays;
+
+import org.eclipse.jface.text.BadLocationException;
+
+/**
+ * An index of the line start offsets and the tabulator positions of a file's content. The index is created once per
+ * file and maps the line and column of a PMD rule violation to an absolute offset without scanning the content again.
+ * An index is immutable and can be shared between threads.
+ *
+ * @author Philip Graf
+ */
+public final class SourceIndex {
+
+    /*
+     * {@link RuleViolation#getBeginColumn()} and {@link RuleViolation#getEndColumn()} count a tabulator character as
+     * {@code JavaCharStream.tabSize} characters, while the marker counts a tabulator as one character.
+     */
+    private static final int PMD_TAB_SIZE = 8;
+
+    private final CharSequence content;
+
+    /** The offsets of the first character of each line. The first line always starts at offset 0. */
+    private final int[] lineOffsets;
+    private final int lineCount;
+
+    /** The offsets of all tabulator characters in ascending order. */
+    private final int[] tabOffsets;
+    private final int tabCount;
+
+    public SourceIndex(final CharSequence content) {
+        this.content = content;
+        int[] lines = new int[16];
+        int linesSize = 1;
+        int[] tabs = new int[16];
+        int tabsSize = 0;
+        final int length = content.length();
+        for (int i = 0; i < length; i++) {
+            final char c = content.charAt(i);
+            if (c == '\t') {
+                tabs = ensureCapacity(tabs, tabsSize);
+                tabs[tabsSize++] = i;
+            } else if (c == '\n' || c == '\r' && (i + 1 == length || content.charAt(i + 1) != '\n')) {
+                // a line delimiter is either \n, \r or \r\n
+                lines = ensureCapacity(lines, linesSize);
+                lines[linesSize++] = i + 1;
+            }
+        }
+        lineOffsets = lines;
+        lineCount = linesSize;
+        tabOffsets = tabs;
+        tabCount = tabsSize;
+    }
+
+    private static int[] ensureCapacity(final int[] array, final int size) {
+        return size < array.length ? array : Arrays.copyOf(array, array.length * 2);
+    }
+
+    public CharSequence getContent() {
+        return content;
+    }
+
+    public int getNumberOfLines() {
+        return lineCount;
+    }
+
+    /**
+     * @param line The zero-based line number.
+     * @return The offset of the first character of the line.
+     * @throws BadLocationException Thrown if the line does not exist.
+     */
+    public int getLineOffset(final int line) throws BadLocationException {
+        if (line < 0 || line >= lineCount) {
+            throw new BadLocationException("Line " + line + " does not exist");
+        }
+        return lineOffsets[line];
+    }
+
+    /**
+     * Calculates the absolute offset of a position reported by PMD.
+     *
+     * @param line The zero-based line number.
+     * @param pmdColumn The column as counted by PMD, i.e. with tabulators expanded to the next multiple of
+     *            {@value #PMD_TAB_SIZE}.
+     * @return The offset after the character at the provided position. The offset is never larger than the length of
+     *         the content.
+     * @throws BadLocationException Thrown if the line does not exist.
+     */
+    public int getAbsolutePosition(final int line, final int pmdColumn) throws BadLocationException {
+        int absoluteOffset = getLineOffset(line);
+        int pmdCharCounter = 0;
+        int tab = firstTabAtOrAfter(absoluteOffset);
+        final int length = content.length();
+        while (pmdCharCounter < pmdColumn && absoluteOffset < length) {
+            // skip all characters up to the next tabulator at once
+            final int nextTab = tab < tabCount ? tabOffsets[tab] : length;
+            final int plainChars = Math.min(nextTab - absoluteOffset, pmdColumn - pmdCharCounter);
+            absoluteOffset += plainChars;
+            pmdCharCounter += plainChars;
+            if (pmdCharCounter < pmdColumn && absoluteOffset < length) {
+                pmdCharCounter = (pmdCharCounter / PMD_TAB_SIZE + 1) * PMD_TAB_SIZE;
+                absoluteOffset++;
+                tab++;
+            }
+        }
+        return absoluteOffset;
+    }
+
+    private int firstTabAtOrAfter(final int offset) {
+        final int index = Arrays.binarySearch(tabOffsets, 0, tabCount, offset);
+        return index >= 0 ? index : -index - 1;
+    }
+
+}
@@ -24,12 +24,12 @@ import com.google.common.base.Preconditions;
 public class WrappingPMDMarker implements PMDMarker {
 
     private static final String DEFAULT_VALUE = "";
-    private static final String RULE_ID = "ruleId";
-    private static final String RULE_NAME = "ruleName";
-    private static final String VIOLATION_CLASS_NAME = "violationClassName";
-    private static final String VARIABLE_NAME = "variableName";
-    private static final String MARKER_TEXT = "markerText";
-    private static final String LANGUAGE = "language";
+    static final String RULE_ID = "ruleId";
+    static final String RULE_NAME = "ruleName";
+    static final String VIOLATION_CLASS_NAME = "violationClassName";
+    static final String VARIABLE_NAME = "variableName";
+    static final String MARKER_TEXT = "markerText";
+    static final String LANGUAGE = "language";
 
     private final IMarker marker;
 
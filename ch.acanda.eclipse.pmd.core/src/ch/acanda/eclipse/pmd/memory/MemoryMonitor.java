@@ -0,0 +1,235 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.memory;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Watches the heap and notifies its listeners when the heap comes under pressure and when it recovers. The heap is
+ * under pressure when a heap memory pool is still more than {@value #PRESSURE_PERCENT}% full right after a garbage
+ * collection. The monitor sets the collection usage threshold of the heap memory pools accordingly, so the JVM
+ * notifies it as soon as this happens. The JVM does not notify when the usage drops again, so while the heap is under
+ * pressure, the monitor checks the pools periodically. The heap has recovered when all pools are less than
+ * {@value #RECOVERY_PERCENT}% full after a garbage collection. The gap between the two thresholds keeps the monitor
+ * from switching back and forth when the usage hovers around a single threshold.
+ *
+ * @author Philip Graf
+ */
+public final class MemoryMonitor {
+
+    private static final int PRESSURE_PERCENT = 85;
+    private static final int RECOVERY_PERCENT = 70;
+    private static final long RECOVERY_CHECK_INTERVAL_SECONDS = 5;
+
+    /**
+     * The heap memory pools that support a collection usage threshold and have a maximum size.
+     */
+    private final ImmutableList<MemoryPoolMXBean> pools;
+
+    private final List<MemoryPressureListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final NotificationListener notificationListener = new ThresholdListener();
+
+    /**
+     * The collection usage thresholds of the pools before the monitor has been started. Guarded by {@code this}.
+     */
+    private final Map<MemoryPoolMXBean, Long> previousThresholds = new HashMap<>();
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private boolean isUnderPressure;
+
+    /**
+     * The scheduler of the periodic checks. Guarded by {@code this}.
+     */
+    private Optional<ScheduledExecutorService> scheduler = Optional.absent();
+
+    public MemoryMonitor() {
+        this(ManagementFactory.getMemoryPoolMXBeans());
+    }
+
+    MemoryMonitor(final List<MemoryPoolMXBean> memoryPools) {
+        final ImmutableList.Builder<MemoryPoolMXBean> heapPools = ImmutableList.builder();
+        for (final MemoryPoolMXBean pool : memoryPools) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && pool.getUsage().getMax() > 0) {
+                heapPools.add(pool);
+            }
+        }
+        pools = heapPools.build();
+    }
+
+    /**
+     * Sets the collection usage thresholds of the heap memory pools and starts listening to the notifications of the
+     * JVM.
+     */
+    public synchronized void start() {
+        if (scheduler.isPresent()) {
+            return;
+        }
+        for (final MemoryPoolMXBean pool : pools) {
+            previousThresholds.put(pool, pool.getCollectionUsageThreshold());
+            pool.setCollectionUsageThreshold(pool.getUsage().getMax() * PRESSURE_PERCENT / 100);
+        }
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(notificationListener, null, null);
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("eclipse-pmd memory monitor").setDaemon(true).build());
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkRecovery();
+            }
+        }, RECOVERY_CHECK_INTERVAL_SECONDS, RECOVERY_CHECK_INTERVAL_SECONDS, SECONDS);
+        scheduler = Optional.of(executor);
+    }
+
+    /**
+     * Stops listening to the notifications of the JVM and restores the previous collection usage thresholds.
+     */
+    public synchronized void stop() {
+        if (!scheduler.isPresent()) {
+            return;
+        }
+        scheduler.get().shutdownNow();
+        scheduler = Optional.absent();
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(notificationListener);
+        } catch (final ListenerNotFoundException e) {
+            // the listener has already been removed
+        }
+        for (final Map.Entry<MemoryPoolMXBean, Long> threshold : previousThresholds.entrySet()) {
+            threshold.getKey().setCollectionUsageThreshold(threshold.getValue());
+        }
+        previousThresholds.clear();
+    }
+
+    public void addListener(final MemoryPressureListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(final MemoryPressureListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return {@code true} if the heap is under pressure, i.e. if the monitor has notified its listeners that memory is
+     *         low and the heap has not yet recovered.
+     */
+    public synchronized boolean isUnderPressure() {
+        return isUnderPressure;
+    }
+
+    /**
+     * Notifies the listeners if the usage of a pool after the last garbage collection exceeds the pressure threshold.
+     */
+    void checkPressure() {
+        synchronized (this) {
+            if (isUnderPressure || !isAnyPoolAbove(PRESSURE_PERCENT)) {
+                return;
+            }
+            isUnderPressure = true;
+        }
+        for (final MemoryPressureListener listener : listeners) {
+            listener.memoryLow();
+        }
+    }
+
+    /**
+     * Notifies the listeners if the usage of all pools after the last garbage collection is below the recovery
+     * threshold again.
+     */
+    void checkRecovery() {
+        synchronized (this) {
+            if (!isUnderPressure || isAnyPoolAbove(RECOVERY_PERCENT)) {
+                return;
+            }
+            isUnderPressure = false;
+        }
+        for (final MemoryPressureListener listener : listeners) {
+            listener.memoryRecovered();
+        }
+    }
+
+    private boolean isAnyPoolAbove(final int percent) {
+        for (final MemoryPoolMXBean pool : pools) {
+            final MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null && usage.getMax() > 0 && usage.getUsed() * 100 > usage.getMax() * percent) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return A description of the usage of the heap memory pools after the last garbage collection, e.g.
+     *         {@code "G1 Old Gen: 3500 of 4096 MB"}.
+     */
+    public String describeUsage() {
+        final StringBuilder description = new StringBuilder();
+        for (final MemoryPoolMXBean pool : pools) {
+            final MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null && usage.getMax() > 0) {
+                if (description.length() > 0) {
+                    description.append(", ");
+                }
+                description.append(pool.getName()).append(": ").append(usage.getUsed() >> 20).append(" of ").append(usage.getMax() >> 20)
+                        .append(" MB");
+            }
+        }
+        return description.toString();
+    }
+
+    /**
+     * Checks the pools when the JVM notifies that a pool exceeded its collection usage threshold. The notifications are
+     * sent by a JVM thread which should not be blocked by the listeners, so the pools are checked on the thread of the
+     * monitor.
+     */
+    private final class ThresholdListener implements NotificationListener {
+        @Override
+        public void handleNotification(final Notification notification, final Object handback) {
+            if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                synchronized (MemoryMonitor.this) {
+                    if (scheduler.isPresent()) {
+                        scheduler.get().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                checkPressure();
+                            }
+                        });
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,31 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.memory;
+
+/**
+ * Is notified by the {@link MemoryMonitor} when the heap comes under pressure and when it recovers.
+ *
+ * @author Philip Graf
+ */
+public interface MemoryPressureListener {
+
+    /**
+     * Called when the heap comes under pressure. The listener should release as much memory as it can.
+     */
+    void memoryLow();
+
+    /**
+     * Called when the heap has recovered from the pressure.
+     */
+    void memoryRecovered();
+
+}
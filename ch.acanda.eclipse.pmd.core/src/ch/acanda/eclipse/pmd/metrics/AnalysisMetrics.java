@@ -0,0 +1,228 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+
+import ch.acanda.eclipse.pmd.PMDPlugin;
+
+/**
+ * Collects the metrics of the analysis. The counters are updated by the analysis and are cheap enough to be always on.
+ * The gauges are read from their sources, e.g. the rule sets cache, whenever they are queried. The metrics are
+ * thread-safe.
+ *
+ * @author Philip Graf
+ */
+public final class AnalysisMetrics implements AnalysisMetricsMXBean {
+
+    public static final String OBJECT_NAME = "ch.acanda.eclipse.pmd:type=AnalysisMetrics";
+
+    private final AtomicLong filesAnalyzed = new AtomicLong();
+    private final AtomicLong violations = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> analysisNanosByLanguage = new ConcurrentHashMap<>();
+    private final AtomicLong fileWatcherEvents = new AtomicLong();
+    private final AtomicLong markersCreated = new AtomicLong();
+    private final AtomicLong markersDeleted = new AtomicLong();
+
+    private volatile Supplier<CacheStats> ruleSetsCacheStats = Suppliers.ofInstance(new CacheStats(0, 0, 0, 0, 0, 0));
+    private volatile Supplier<Map<String, Integer>> ruleSetsCacheWeights = Suppliers.<Map<String, Integer>>ofInstance(
+            ImmutableMap.<String, Integer>of());
+    private volatile Supplier<Integer> queueDepth = Suppliers.ofInstance(0);
+
+    private Optional<ServiceRegistration<?>> serviceRegistration = Optional.absent();
+    private Optional<ObjectName> objectName = Optional.absent();
+
+    /**
+     * Counts a file that PMD has analyzed.
+     *
+     * @param language The terse name of the language of the file.
+     * @param nanos The wall time in nanoseconds PMD spent analyzing the file.
+     * @param violationCount The number of violations PMD found in the file.
+     */
+    public void fileAnalyzed(final String language, final long nanos, final int violationCount) {
+        filesAnalyzed.incrementAndGet();
+        violations.addAndGet(violationCount);
+        AtomicLong languageNanos = analysisNanosByLanguage.get(language);
+        if (languageNanos == null) {
+            final AtomicLong newNanos = new AtomicLong();
+            languageNanos = analysisNanosByLanguage.putIfAbsent(language, newNanos);
+            if (languageNanos == null) {
+                languageNanos = newNanos;
+            }
+        }
+        languageNanos.addAndGet(nanos);
+    }
+
+    public void markersChanged(final int created, final int deleted) {
+        markersCreated.addAndGet(created);
+        markersDeleted.addAndGet(deleted);
+    }
+
+    public void fileWatcherEvent() {
+        fileWatcherEvents.incrementAndGet();
+    }
+
+    /**
+     * Sets the source of the statistics of the rule sets cache.
+     */
+    public void setRuleSetsCacheStats(final Supplier<CacheStats> stats) {
+        ruleSetsCacheStats = stats;
+    }
+
+    /**
+     * Sets the source of the estimated weights of the entries of the rule sets cache.
+     */
+    public void setRuleSetsCacheWeights(final Supplier<Map<String, Integer>> weights) {
+        ruleSetsCacheWeights = weights;
+    }
+
+    /**
+     * Sets the source of the number of files waiting to be analyzed.
+     */
+    public void setQueueDepth(final Supplier<Integer> depth) {
+        queueDepth = depth;
+    }
+
+    /**
+     * Publishes the metrics as an OSGi service and registers them as a platform MBean.
+     */
+    public synchronized void register(final BundleContext context) {
+        serviceRegistration = Optional.<ServiceRegistration<?>>of(context.registerService(AnalysisMetricsMXBean.class, this, null));
+        try {
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                // a previous instance of the plug-in has not been stopped properly
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            objectName = Optional.of(name);
+        } catch (final JMException e) {
+            PMDPlugin.getDefault().warn("Could not register the PMD analysis metrics MBean " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Withdraws the OSGi service and unregisters the platform MBean.
+     */
+    public synchronized void unregister() {
+        if (serviceRegistration.isPresent()) {
+            serviceRegistration.get().unregister();
+            serviceRegistration = Optional.absent();
+        }
+        if (objectName.isPresent()) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName.get());
+            } catch (final JMException e) {
+                PMDPlugin.getDefault().warn("Could not unregister the PMD analysis metrics MBean " + OBJECT_NAME, e);
+            }
+            objectName = Optional.absent();
+        }
+    }
+
+    @Override
+    public long getFilesAnalyzed() {
+        return filesAnalyzed.get();
+    }
+
+    @Override
+    public long getViolations() {
+        return violations.get();
+    }
+
+    @Override
+    public Map<String, Long> getAnalysisTimeMillisByLanguage() {
+        final ImmutableMap.Builder<String, Long> millis = ImmutableMap.builder();
+        for (final Map.Entry<String, AtomicLong> entry : analysisNanosByLanguage.entrySet()) {
+            millis.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().get()));
+        }
+        return millis.build();
+    }
+
+    @Override
+    public long getRuleSetsCacheHits() {
+        return ruleSetsCacheStats.get().hitCount();
+    }
+
+    @Override
+    public long getRuleSetsCacheMisses() {
+        return ruleSetsCacheStats.get().missCount();
+    }
+
+    @Override
+    public long getRuleSetsCacheLoads() {
+        return ruleSetsCacheStats.get().loadCount();
+    }
+
+    @Override
+    public long getRuleSetsCacheLoadTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(ruleSetsCacheStats.get().totalLoadTime());
+    }
+
+    @Override
+    public long getRuleSetsCacheEvictions() {
+        return ruleSetsCacheStats.get().evictionCount();
+    }
+
+    @Override
+    public Map<String, Integer> getRuleSetsCacheWeightByProject() {
+        return ruleSetsCacheWeights.get();
+    }
+
+    @Override
+    public long getRuleSetsCacheWeight() {
+        long weight = 0;
+        for (final Integer projectWeight : ruleSetsCacheWeights.get().values()) {
+            weight += projectWeight;
+        }
+        return weight;
+    }
+
+    @Override
+    public long getFileWatcherEvents() {
+        return fileWatcherEvents.get();
+    }
+
+    @Override
+    public long getMarkersCreated() {
+        return markersCreated.get();
+    }
+
+    @Override
+    public long getMarkersDeleted() {
+        return markersDeleted.get();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+}
@@ -0,0 +1,75 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.metrics;
+
+import java.util.Map;
+
+/**
+ * The live counters and gauges of the analysis. The metrics are registered as a platform MBean with the object name
+ * {@value AnalysisMetrics#OBJECT_NAME} and published as an OSGi service with this interface. All counters start at
+ * zero when the plug-in is started.
+ *
+ * @author Philip Graf
+ */
+public interface AnalysisMetricsMXBean {
+
+    /**
+     * @return The number of files PMD has analyzed during the builds. Files whose violations were taken from the
+     *         analysis cache are not included.
+     */
+    long getFilesAnalyzed();
+
+    /**
+     * @return The number of violations PMD has found in the analyzed files.
+     */
+    long getViolations();
+
+    /**
+     * @return The wall time in milliseconds PMD spent analyzing files, mapped by the terse name of the language.
+     */
+    Map<String, Long> getAnalysisTimeMillisByLanguage();
+
+    long getRuleSetsCacheHits();
+
+    long getRuleSetsCacheMisses();
+
+    long getRuleSetsCacheLoads();
+
+    long getRuleSetsCacheLoadTimeMillis();
+
+    long getRuleSetsCacheEvictions();
+
+    /**
+     * @return The estimated heap in kilobytes retained by the cached rule sets, mapped by the project name.
+     */
+    Map<String, Integer> getRuleSetsCacheWeightByProject();
+
+    /**
+     * @return The estimated heap in kilobytes retained by all cached rule sets.
+     */
+    long getRuleSetsCacheWeight();
+
+    /**
+     * @return The number of changes of watched rule set files.
+     */
+    long getFileWatcherEvents();
+
+    long getMarkersCreated();
+
+    long getMarkersDeleted();
+
+    /**
+     * @return The number of files waiting to be analyzed.
+     */
+    int getQueueDepth();
+
+}
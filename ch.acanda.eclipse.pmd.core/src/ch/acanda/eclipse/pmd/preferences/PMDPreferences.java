@@ -0,0 +1,175 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.preferences;
+
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.IPreferencesService;
+
+import ch.acanda.eclipse.pmd.PMDPlugin;
+
+/**
+ * Provides access to the workspace wide settings of eclipse-pmd. The settings are looked up in the preference scopes
+ * of the plug-in {@value PMDPlugin#ID}, so they can be set in the workspace preferences or in a
+ * {@code plugin_customization.ini}, e.g.:
+ *
+ * <pre>
+ * ch.acanda.eclipse.pmd.core/fullBuild.threads=8
+ * </pre>
+ *
+ * @author Philip Graf
+ */
+public final class PMDPreferences {
+
+    /**
+     * The number of threads used to analyze the files in the background after a build. A value of 1 analyzes the files
+     * sequentially on the thread of the analysis job. Defaults to the number of available processors.
+     */
+    public static final String FULL_BUILD_THREADS = "fullBuild.threads";
+
+    /**
+     * The maximum size of the persistent analysis cache, measured as the number of cached files plus the number of
+     * their violations. A value of 0 disables the cache. Defaults to 200000.
+     */
+    public static final String ANALYSIS_CACHE_MAX_WEIGHT = "analysisCache.maxWeight";
+
+    /**
+     * The maximum size of the rule sets cache in kilobytes, measured as the estimated heap retained by the rule sets of
+     * the cached projects. The rule sets of the least recently used projects are evicted when the cache grows beyond
+     * this size. The parsed rules that the projects share are bounded by the same size separately. Defaults to 65536,
+     * i.e. 64 MB.
+     */
+    public static final String RULE_SETS_CACHE_MAX_WEIGHT = "ruleSetsCache.maxWeight";
+
+    /**
+     * The time in milliseconds a file must not have changed before it is analyzed. Changes within this period are
+     * coalesced into a single analysis. Defaults to 300 milliseconds.
+     */
+    public static final String ANALYSIS_QUIET_PERIOD = "analysis.quietPeriod";
+
+    /**
+     * The time in milliseconds after which PMD stops applying rules to a single file. Once the budget is exhausted, the
+     * rules that have not yet been applied to the file are skipped. The time spent parsing the file counts towards the
+     * budget, but the budget is only checked before each rule, so it neither interrupts the parser nor a rule that is
+     * already running. A value of 0 disables the budget. Defaults to 30000 milliseconds.
+     */
+    public static final String FILE_TIME_BUDGET = "analysis.fileTimeBudget";
+
+    /**
+     * The time in milliseconds a single rule may spend on a single file. A value of 0 disables the budget. Defaults to
+     * 5000 milliseconds.
+     */
+    public static final String RULE_TIME_BUDGET = "analysis.ruleTimeBudget";
+
+    /**
+     * The number of times a rule may exceed its time budget before it is no longer applied to the files of a project.
+     * Defaults to 3.
+     */
+    public static final String QUARANTINE_THRESHOLD = "analysis.quarantineThreshold";
+
+    /**
+     * Whether the content of open editors is analyzed while it is being edited. The violations are shown as temporary
+     * annotations in the editor until the file is saved. Defaults to {@code false}.
+     */
+    public static final String AS_YOU_TYPE_ENABLED = "asYouType.enabled";
+
+    /**
+     * The time in milliseconds the content of an editor must not have changed before it is analyzed. Defaults to 500
+     * milliseconds.
+     */
+    public static final String AS_YOU_TYPE_DELAY = "asYouType.delay";
+
+    /**
+     * The time in milliseconds the analysis of the content of an editor may take. Once the time is up, the remaining
+     * rules are skipped and the result is discarded. If the analysis of a file exceeds the time limit several times in a
+     * row, the file is only analyzed when it is saved. Defaults to 2000 milliseconds.
+     */
+    public static final String AS_YOU_TYPE_TIME_LIMIT = "asYouType.timeLimit";
+
+    /**
+     * Whether the build profiler records the costs of the rules from the start. The profiler can also be enabled and
+     * disabled in the PMD Rule Cost view. Defaults to {@code false}.
+     */
+    public static final String PROFILING_ENABLED = "profiling.enabled";
+
+    private PMDPreferences() {
+        // hide constructor of utility class
+    }
+
+    public static int getFullBuildThreads() {
+        return Math.max(1, getInt(FULL_BUILD_THREADS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public static long getAnalysisCacheMaxWeight() {
+        return Math.max(0, getLong(ANALYSIS_CACHE_MAX_WEIGHT, 200_000));
+    }
+
+    public static long getRuleSetsCacheMaxWeight() {
+        return Math.max(1, getLong(RULE_SETS_CACHE_MAX_WEIGHT, 65_536));
+    }
+
+    public static long getAnalysisQuietPeriod() {
+        return Math.max(0, getLong(ANALYSIS_QUIET_PERIOD, 300));
+    }
+
+    public static long getFileTimeBudget() {
+        return Math.max(0, getLong(FILE_TIME_BUDGET, 30_000));
+    }
+
+    public static long getRuleTimeBudget() {
+        return Math.max(0, getLong(RULE_TIME_BUDGET, 5_000));
+    }
+
+    public static int getQuarantineThreshold() {
+        return Math.max(1, getInt(QUARANTINE_THRESHOLD, 3));
+    }
+
+    public static boolean isAsYouTypeEnabled() {
+        return getBoolean(AS_YOU_TYPE_ENABLED, false);
+    }
+
+    public static long getAsYouTypeDelay() {
+        return Math.max(0, getLong(AS_YOU_TYPE_DELAY, 500));
+    }
+
+    public static long getAsYouTypeTimeLimit() {
+        return Math.max(1, getLong(AS_YOU_TYPE_TIME_LIMIT, 2000));
+    }
+
+    public static boolean isProfilingEnabled() {
+        return getBoolean(PROFILING_ENABLED, false);
+    }
+
+    private static boolean getBoolean(final String key, final boolean defaultValue) {
+        final IPreferencesService service = Platform.getPreferencesService();
+        if (service == null) {
+            return defaultValue;
+        }
+        return service.getBoolean(PMDPlugin.ID, key, defaultValue, null);
+    }
+
+    private static int getInt(final String key, final int defaultValue) {
+        final IPreferencesService service = Platform.getPreferencesService();
+        if (service == null) {
+            return defaultValue;
+        }
+        return service.getInt(PMDPlugin.ID, key, defaultValue, null);
+    }
+
+    private static long getLong(final String key, final long defaultValue) {
+        final IPreferencesService service = Platform.getPreferencesService();
+        if (service == null) {
+            return defaultValue;
+        }
+        return service.getLong(PMDPlugin.ID, key, defaultValue, null);
+    }
+
+}
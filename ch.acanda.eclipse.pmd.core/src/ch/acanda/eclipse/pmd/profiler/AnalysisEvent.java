@@ -0,0 +1,222 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.profiler;
+
+import org.eclipse.core.resources.IResource;
+
+import com.google.common.base.Optional;
+
+import ch.acanda.eclipse.pmd.PMDPlugin;
+import net.sourceforge.pmd.RuleSets;
+
+/**
+ * A Java Flight Recorder event that covers a phase of the analysis, e.g. reading a file or updating its markers. The
+ * events show up in a regular JFR recording next to the garbage collections and the UI freezes of the IDE.
+ * <p>
+ * An event is only created if the runtime supports JFR and a running recording records events of its type. Otherwise
+ * {@link #begin(Type)} returns a shared event that ignores all calls, so an event costs next to nothing while nobody is
+ * recording. An event is used by a single thread:
+ *
+ * <pre>
+ * final AnalysisEvent event = AnalysisEvent.begin(AnalysisEvent.Type.FILE_READ).resource(file);
+ * try {
+ *     ...
+ *     event.bytes(size);
+ * } finally {
+ *     event.commit();
+ * }
+ * </pre>
+ *
+ * @author Philip Graf
+ */
+public final class AnalysisEvent {
+
+    /**
+     * The phases of the analysis that are recorded as events.
+     */
+    public enum Type {
+        RULE_SETS_LOADING("RuleSetsLoading", "Rule Sets Loading", "Loads the rule sets of a project"),
+        RULE_SETS_INVALIDATION("RuleSetsInvalidation", "Rule Sets Invalidation", "Invalidates the cached rule sets of a project"),
+        FILE_READ("FileRead", "File Read", "Reads and decodes the content of a file"),
+        ANALYSIS("Analysis", "Analysis", "Runs PMD on a file"),
+        MARKER_ANNOTATION("MarkerAnnotation", "Marker Annotation", "Replaces the PMD markers of analyzed files"),
+        QUICK_FIX("QuickFix", "Quick Fix", "Parses a file and rewrites it to fix PMD markers");
+
+        private final String name;
+        private final String label;
+        private final String description;
+
+        Type(final String name, final String label, final String description) {
+            this.name = name;
+            this.label = label;
+            this.description = description;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getLabel() {
+            return label;
+        }
+
+        String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * The fields every event carries. Fields that do not apply to a phase stay empty.
+     */
+    enum Field {
+        FILE("file", "File", String.class),
+        PROJECT("project", "Project", String.class),
+        FINGERPRINT("fingerprint", "Rule Sets Fingerprint", String.class),
+        BYTES("bytes", "Bytes", long.class);
+
+        private final String name;
+        private final String label;
+        private final Class<?> type;
+
+        Field(final String name, final String label, final Class<?> type) {
+            this.name = name;
+            this.label = label;
+            this.type = type;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getLabel() {
+            return label;
+        }
+
+        Class<?> getType() {
+            return type;
+        }
+    }
+
+    private static final AnalysisEvent DISABLED = new AnalysisEvent(null);
+
+    private static volatile Optional<FlightRecorderBridge> bridge = FlightRecorderBridge.create();
+
+    /**
+     * The JFR event or {@code null} if this event is disabled.
+     */
+    private final Object event;
+
+    private AnalysisEvent(final Object event) {
+        this.event = event;
+    }
+
+    /**
+     * Starts a new event of the provided type.
+     *
+     * @return The new event or a disabled event if no recording records events of this type.
+     */
+    public static AnalysisEvent begin(final Type type) {
+        final Optional<FlightRecorderBridge> recorder = bridge;
+        if (recorder.isPresent()) {
+            try {
+                if (recorder.get().isEnabled(type)) {
+                    return new AnalysisEvent(recorder.get().begin(type));
+                }
+            } catch (final IllegalStateException e) {
+                disable(e);
+            }
+        }
+        return DISABLED;
+    }
+
+    /**
+     * @return {@code true} if this event will be recorded. Callers only need to check this before computing an
+     *         expensive value.
+     */
+    public boolean isEnabled() {
+        return event != null;
+    }
+
+    /**
+     * Sets the file and the project of the event to the provided resource and its project.
+     */
+    public AnalysisEvent resource(final IResource resource) {
+        if (event != null) {
+            set(Field.FILE, resource.getFullPath().toString());
+            set(Field.PROJECT, resource.getProject() == null ? null : resource.getProject().getName());
+        }
+        return this;
+    }
+
+    public AnalysisEvent project(final String projectName) {
+        if (event != null) {
+            set(Field.PROJECT, projectName);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the fingerprint of the rule sets, i.e. their checksum, which changes whenever the rules or their properties
+     * change.
+     */
+    public AnalysisEvent ruleSets(final RuleSets ruleSets) {
+        if (event != null) {
+            set(Field.FINGERPRINT, Long.toHexString(ruleSets.getChecksum()));
+        }
+        return this;
+    }
+
+    /**
+     * Sets the number of bytes the phase has processed.
+     */
+    public AnalysisEvent bytes(final long bytes) {
+        if (event != null) {
+            set(Field.BYTES, bytes);
+        }
+        return this;
+    }
+
+    /**
+     * Ends the event and commits it to the running recordings.
+     */
+    public void commit() {
+        if (event != null) {
+            final Optional<FlightRecorderBridge> recorder = bridge;
+            if (recorder.isPresent()) {
+                try {
+                    recorder.get().commit(event);
+                } catch (final IllegalStateException e) {
+                    disable(e);
+                }
+            }
+        }
+    }
+
+    private void set(final Field field, final Object value) {
+        final Optional<FlightRecorderBridge> recorder = bridge;
+        if (recorder.isPresent()) {
+            try {
+                recorder.get().set(event, field, value);
+            } catch (final IllegalStateException e) {
+                disable(e);
+            }
+        }
+    }
+
+    private static void disable(final IllegalStateException e) {
+        if (bridge.isPresent()) {
+            bridge = Optional.absent();
+            PMDPlugin.getDefault().warn("Cannot record Java Flight Recorder events. The PMD events will not be recorded.", e);
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.profiler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ImmutableList;
+
+import ch.acanda.eclipse.pmd.profiler.Cost.Category;
+
+/**
+ * Records the CPU and wall time the builds spend on each rule, on parsing the files of each language and on updating
+ * the markers. The costs are accumulated over all builds until the profiler is reset. Profiling is opt-in: as long as
+ * the profiler is disabled, nothing is recorded. The profiler is thread-safe.
+ * <p>
+ * The CPU time is measured with the {@link ThreadMXBean}. If the JVM does not support measuring the CPU time of
+ * threads, only the wall time is recorded.
+ *
+ * @author Philip Graf
+ */
+public final class BuildProfiler {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private volatile boolean enabled;
+
+    private final ConcurrentMap<String, Statistics> rules = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Statistics> parsers = new ConcurrentHashMap<>();
+    private final Statistics markers = new Statistics();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables profiling. Enabling the profiler also enables the measurement of the CPU time of threads if
+     * the JVM supports it.
+     */
+    public void setEnabled(final boolean enabled) {
+        if (enabled && THREADS.isCurrentThreadCpuTimeSupported() && !THREADS.isThreadCpuTimeEnabled()) {
+            THREADS.setThreadCpuTimeEnabled(true);
+        }
+        this.enabled = enabled;
+    }
+
+    /**
+     * Discards all recorded costs.
+     */
+    public void reset() {
+        rules.clear();
+        parsers.clear();
+        markers.clear();
+    }
+
+    /**
+     * @return The CPU time of the current thread in nanoseconds or 0 if it cannot be measured.
+     */
+    public static long currentThreadCpuTime() {
+        if (THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled()) {
+            return Math.max(0, THREADS.getCurrentThreadCpuTime());
+        }
+        return 0;
+    }
+
+    void recordRule(final String ruleId, final long cpuNanos, final long wallNanos) {
+        if (enabled) {
+            get(rules, ruleId).record(cpuNanos, wallNanos);
+        }
+    }
+
+    void recordViolations(final String ruleId, final long violations) {
+        if (enabled) {
+            get(rules, ruleId).violations.addAndGet(violations);
+        }
+    }
+
+    void recordParser(final String language, final long cpuNanos, final long wallNanos) {
+        if (enabled) {
+            get(parsers, language).record(cpuNanos, wallNanos);
+        }
+    }
+
+    /**
+     * Records the time it took to update the markers of one or more files.
+     */
+    public void recordMarkers(final long cpuNanos, final long wallNanos) {
+        if (enabled) {
+            markers.record(cpuNanos, wallNanos);
+        }
+    }
+
+    /**
+     * @return The costs recorded since the profiler has been reset, the rules first and the markers last.
+     */
+    public ImmutableList<Cost> getCosts() {
+        final ImmutableList.Builder<Cost> costs = ImmutableList.builder();
+        for (final Map.Entry<String, Statistics> entry : rules.entrySet()) {
+            costs.add(entry.getValue().toCost(Category.RULE, entry.getKey()));
+        }
+        for (final Map.Entry<String, Statistics> entry : parsers.entrySet()) {
+            costs.add(entry.getValue().toCost(Category.PARSER, entry.getKey()));
+        }
+        if (markers.count.get() > 0) {
+            costs.add(markers.toCost(Category.MARKERS, "Markers"));
+        }
+        return costs.build();
+    }
+
+    private static Statistics get(final ConcurrentMap<String, Statistics> map, final String key) {
+        Statistics statistics = map.get(key);
+        if (statistics == null) {
+            map.putIfAbsent(key, new Statistics());
+            statistics = map.get(key);
+        }
+        return statistics;
+    }
+
+    /**
+     * The accumulated cost of a single activity.
+     */
+    private static final class Statistics {
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong cpuNanos = new AtomicLong();
+        private final AtomicLong wallNanos = new AtomicLong();
+        private final AtomicLong violations = new AtomicLong();
+        private volatile LatencyHistogram histogram = new LatencyHistogram();
+
+        void record(final long cpu, final long wall) {
+            count.incrementAndGet();
+            cpuNanos.addAndGet(cpu);
+            wallNanos.addAndGet(wall);
+            histogram.record(wall);
+        }
+
+        void clear() {
+            count.set(0);
+            cpuNanos.set(0);
+            wallNanos.set(0);
+            violations.set(0);
+            histogram = new LatencyHistogram();
+        }
+
+        Cost toCost(final Category category, final String name) {
+            return new Cost(category, name, count.get(), cpuNanos.get(), wallNanos.get(), histogram.getPercentile(95),
+                    violations.get());
+        }
+
+    }
+
+}
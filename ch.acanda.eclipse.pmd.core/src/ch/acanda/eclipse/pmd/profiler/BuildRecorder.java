@@ -0,0 +1,73 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.profiler;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Records the time it took to analyze each file of the most recent builds. A build comprises the files analyzed by
+ * one run of the background analysis. Unlike the costs of the rules, the times of the files are always recorded as
+ * they only cost a few clock readings per file. The recorder is thread-safe.
+ *
+ * @author Philip Graf
+ */
+public final class BuildRecorder {
+
+    private static final int MAX_BUILDS = 10;
+    private static final int FILES_PER_BUILD = 4096;
+
+    private final Deque<BuildReport> builds = new ArrayDeque<>(MAX_BUILDS);
+
+    private volatile BuildReport current;
+
+    /**
+     * Starts a new build. The files recorded from now on belong to the new build.
+     */
+    public synchronized void startBuild() {
+        if (current != null && current.getFileCount() == 0) {
+            // a build without any analyzed files would only push an interesting build out of the history
+            builds.remove(current);
+        }
+        if (builds.size() == MAX_BUILDS) {
+            builds.removeLast();
+        }
+        current = new BuildReport(System.currentTimeMillis(), FILES_PER_BUILD);
+        builds.addFirst(current);
+    }
+
+    /**
+     * Records the times of a file of the current build. If no build has been started yet, the record is discarded.
+     */
+    public void record(final FileRecord record) {
+        final BuildReport build = current;
+        if (build != null) {
+            build.record(record);
+        }
+    }
+
+    /**
+     * @return The reports of the most recent builds that analyzed at least one file, the most recent build first.
+     */
+    public synchronized ImmutableList<BuildReport> getBuilds() {
+        final ImmutableList.Builder<BuildReport> reports = ImmutableList.builder();
+        for (final BuildReport build : builds) {
+            if (build.getFileCount() > 0) {
+                reports.add(build);
+            }
+        }
+        return reports.build();
+    }
+
+}
@@ -0,0 +1,99 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.profiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The times of the files analyzed in a single build. The latency histogram covers all files of the build, whereas the
+ * records of the individual files are kept in a ring buffer of fixed capacity: if a build analyzes more files than the
+ * buffer holds, only the most recent files are kept. Recording a file neither locks nor allocates anything but the
+ * record itself, so the report can be updated by several threads at the same time.
+ *
+ * @author Philip Graf
+ */
+public final class BuildReport {
+
+    private final long startTimeMillis;
+    private final AtomicReferenceArray<FileRecord> records;
+    private final int mask;
+    private final AtomicLong count = new AtomicLong();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    /**
+     * @param capacity The capacity of the ring buffer. It is rounded up to the next power of two.
+     */
+    BuildReport(final long startTimeMillis, final int capacity) {
+        this.startTimeMillis = startTimeMillis;
+        final int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        records = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    void record(final FileRecord record) {
+        final long index = count.getAndIncrement();
+        records.set((int) (index & mask), record);
+        histogram.record(record.getTotalNanos());
+    }
+
+    /**
+     * @return The time the build started in milliseconds since the epoch.
+     */
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    /**
+     * @return The number of files analyzed in the build.
+     */
+    public long getFileCount() {
+        return count.get();
+    }
+
+    /**
+     * @return The histogram of the total times of all files analyzed in the build.
+     */
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * @param limit The maximum number of returned files.
+     * @return The slowest files of the build that are still in the ring buffer, the slowest file first.
+     */
+    public ImmutableList<FileRecord> getSlowestFiles(final int limit) {
+        final List<FileRecord> files = new ArrayList<>(records.length());
+        for (int i = 0; i < records.length(); i++) {
+            final FileRecord record = records.get(i);
+            if (record != null) {
+                files.add(record);
+            }
+        }
+        Collections.sort(files, new SlowestFirst());
+        return ImmutableList.copyOf(files.subList(0, Math.min(limit, files.size())));
+    }
+
+    private static final class SlowestFirst implements Comparator<FileRecord> {
+        @Override
+        public int compare(final FileRecord r1, final FileRecord r2) {
+            return Long.compare(r2.getTotalNanos(), r1.getTotalNanos());
+        }
+    }
+
+}
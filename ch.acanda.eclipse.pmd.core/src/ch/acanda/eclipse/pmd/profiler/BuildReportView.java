@@ -0,0 +1,325 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.profiler;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.SashForm;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Combo;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.ui.part.ViewPart;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+import ch.acanda.eclipse.pmd.PMDPlugin;
+import ch.acanda.eclipse.pmd.ui.util.SelectionAdapter;
+
+/**
+ * Shows where the most recent builds spent their time: the slowest files of a build with the time it took to parse
+ * them, to apply the rules and to update their markers, and the latency histogram of all files of the build. The view
+ * refreshes itself every few seconds while it is open.
+ *
+ * @author Philip Graf
+ */
+public final class BuildReportView extends ViewPart {
+
+    public static final String ID = "ch.acanda.eclipse.pmd.profiler.BuildReportView";
+
+    private static final int REFRESH_INTERVAL_MILLIS = 2000;
+    private static final int SLOWEST_FILES = 50;
+    private static final int MAX_BAR_LENGTH = 40;
+    private static final double[] PERCENTILES = { 50, 90, 95, 99, 100 };
+
+    private final BuildRecorder recorder = PMDPlugin.getDefault().getBuildRecorder();
+
+    private ImmutableList<BuildReport> builds = ImmutableList.of();
+
+    private Combo buildSelector;
+    private Label summary;
+    private TableViewer filesViewer;
+    private TableViewer histogramViewer;
+
+    @Override
+    public void createPartControl(final Composite parent) {
+        parent.setLayout(new GridLayout(2, false));
+        buildSelector = new Combo(parent, SWT.READ_ONLY);
+        buildSelector.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(final SelectionEvent e) {
+                showSelectedBuild();
+            }
+        });
+        summary = new Label(parent, SWT.NONE);
+        summary.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
+        final SashForm sash = new SashForm(parent, SWT.HORIZONTAL);
+        sash.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 2, 1));
+        filesViewer = createViewer(sash, FileColumn.values());
+        histogramViewer = createViewer(sash, BucketColumn.values());
+        sash.setWeights(new int[] { 3, 2 });
+
+        new Refresher().run();
+    }
+
+    private static TableViewer createViewer(final Composite parent, final Column[] columns) {
+        final TableViewer viewer = new TableViewer(parent, SWT.FULL_SELECTION | SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL);
+        viewer.getTable().setHeaderVisible(true);
+        viewer.getTable().setLinesVisible(true);
+        for (final Column column : columns) {
+            final TableViewerColumn viewerColumn = new TableViewerColumn(viewer, column.getStyle());
+            viewerColumn.getColumn().setText(column.getLabel());
+            viewerColumn.getColumn().setWidth(column.getWidth());
+            viewerColumn.setLabelProvider(new ColumnTextProvider(column));
+        }
+        viewer.setContentProvider(ArrayContentProvider.getInstance());
+        return viewer;
+    }
+
+    @Override
+    public void setFocus() {
+        filesViewer.getControl().setFocus();
+    }
+
+    private void refresh() {
+        final int selection = Math.max(0, buildSelector.getSelectionIndex());
+        builds = recorder.getBuilds();
+        final DateFormat format = DateFormat.getTimeInstance(DateFormat.MEDIUM);
+        final String[] items = new String[builds.size()];
+        for (int i = 0; i < items.length; i++) {
+            final BuildReport build = builds.get(i);
+            items[i] = String.format("Build of %s (%d files)", format.format(new Date(build.getStartTimeMillis())), build.getFileCount());
+        }
+        buildSelector.setItems(items);
+        if (items.length > 0) {
+            buildSelector.select(Math.min(selection, items.length - 1));
+        }
+        buildSelector.getParent().layout();
+        showSelectedBuild();
+    }
+
+    private void showSelectedBuild() {
+        final int selection = buildSelector.getSelectionIndex();
+        if (selection < 0 || selection >= builds.size()) {
+            summary.setText("No files have been analyzed yet.");
+            filesViewer.setInput(ImmutableList.of());
+            histogramViewer.setInput(ImmutableList.of());
+            return;
+        }
+        final BuildReport build = builds.get(selection);
+        final LatencyHistogram histogram = build.getHistogram();
+        final StringBuilder text = new StringBuilder();
+        for (final double percentile : PERCENTILES) {
+            text.append(text.length() == 0 ? "" : ", ").append(percentile == 100 ? "max" : String.format(Locale.ROOT, "p%.0f", percentile));
+            text.append(": ").append(CostCsvWriter.toMillis(histogram.getPercentile(percentile))).append(" ms");
+        }
+        summary.setText(text.toString());
+        filesViewer.setInput(build.getSlowestFiles(SLOWEST_FILES));
+        histogramViewer.setInput(Bucket.of(histogram));
+    }
+
+    /**
+     * Refreshes the view and schedules itself again until the view is closed.
+     */
+    private final class Refresher implements Runnable {
+        @Override
+        public void run() {
+            if (!filesViewer.getControl().isDisposed()) {
+                refresh();
+                filesViewer.getControl().getDisplay().timerExec(REFRESH_INTERVAL_MILLIS, this);
+            }
+        }
+    }
+
+    /**
+     * A non-empty bucket of the latency histogram.
+     */
+    private static final class Bucket {
+
+        private final long lowerBound;
+        private final long upperBound;
+        private final long count;
+        private final long cumulativeCount;
+        private final long totalCount;
+        private final long maxCount;
+
+        Bucket(final long lowerBound, final long upperBound, final long count, final long cumulativeCount, final long totalCount,
+                final long maxCount) {
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+            this.count = count;
+            this.cumulativeCount = cumulativeCount;
+            this.totalCount = totalCount;
+            this.maxCount = maxCount;
+        }
+
+        static List<Bucket> of(final LatencyHistogram histogram) {
+            final long[] counts = histogram.getCounts();
+            long total = 0;
+            long max = 0;
+            for (final long count : counts) {
+                total += count;
+                max = Math.max(max, count);
+            }
+            final List<Bucket> buckets = new ArrayList<>();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    cumulative += counts[i];
+                    buckets.add(new Bucket(LatencyHistogram.getLowerBound(i), LatencyHistogram.getUpperBound(i), counts[i], cumulative,
+                            total, max));
+                }
+            }
+            return buckets;
+        }
+
+    }
+
+    private interface Column {
+        String getLabel();
+
+        int getStyle();
+
+        int getWidth();
+
+        String getText(Object element);
+    }
+
+    private enum FileColumn implements Column {
+        PATH("File", SWT.LEFT, 300),
+        SIZE("Size [KB]", SWT.RIGHT, 70),
+        PARSE("Parse [ms]", SWT.RIGHT, 80),
+        RULES("Rules [ms]", SWT.RIGHT, 80),
+        MARKERS("Markers [ms]", SWT.RIGHT, 80),
+        TOTAL("Total [ms]", SWT.RIGHT, 80);
+
+        private final String label;
+        private final int style;
+        private final int width;
+
+        FileColumn(final String label, final int style, final int width) {
+            this.label = label;
+            this.style = style;
+            this.width = width;
+        }
+
+        @Override
+        public String getLabel() {
+            return label;
+        }
+
+        @Override
+        public int getStyle() {
+            return style;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public String getText(final Object element) {
+            final FileRecord record = (FileRecord) element;
+            switch (this) {
+                case PATH:
+                    return record.getPath();
+                case SIZE:
+                    return String.format(Locale.ROOT, "%.1f", record.getSize() / 1024.0);
+                case PARSE:
+                    return CostCsvWriter.toMillis(record.getParseNanos());
+                case RULES:
+                    return CostCsvWriter.toMillis(record.getRuleNanos());
+                case MARKERS:
+                    return CostCsvWriter.toMillis(record.getMarkerNanos());
+                default:
+                    return CostCsvWriter.toMillis(record.getTotalNanos());
+            }
+        }
+    }
+
+    private enum BucketColumn implements Column {
+        LATENCY("Latency [ms]", SWT.LEFT, 150),
+        FILES("Files", SWT.RIGHT, 60),
+        CUMULATIVE("Cumulative", SWT.RIGHT, 80),
+        DISTRIBUTION("Distribution", SWT.LEFT, 250);
+
+        private final String label;
+        private final int style;
+        private final int width;
+
+        BucketColumn(final String label, final int style, final int width) {
+            this.label = label;
+            this.style = style;
+            this.width = width;
+        }
+
+        @Override
+        public String getLabel() {
+            return label;
+        }
+
+        @Override
+        public int getStyle() {
+            return style;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public String getText(final Object element) {
+            final Bucket bucket = (Bucket) element;
+            switch (this) {
+                case LATENCY:
+                    return CostCsvWriter.toMillis(bucket.lowerBound) + " - " + CostCsvWriter.toMillis(bucket.upperBound);
+                case FILES:
+                    return Long.toString(bucket.count);
+                case CUMULATIVE:
+                    return String.format(Locale.ROOT, "%.1f%%", 100.0 * bucket.cumulativeCount / bucket.totalCount);
+                default:
+                    return Strings.repeat("#", (int) Math.max(1, MAX_BAR_LENGTH * bucket.count / bucket.maxCount));
+            }
+        }
+    }
+
+    private static final class ColumnTextProvider extends ColumnLabelProvider {
+
+        private final Column column;
+
+        ColumnTextProvider(final Column column) {
+            this.column = column;
+        }
+
+        @Override
+        public String getText(final Object element) {
+            return column.getText(element);
+        }
+
+    }
+
+}
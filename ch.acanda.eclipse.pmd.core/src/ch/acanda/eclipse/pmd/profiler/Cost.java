@@ -0,0 +1,107 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.profiler;
+
+/**
+ * The accumulated cost of an activity of the analysis, e.g. of a single rule, at the time it was taken from the
+ * {@link BuildProfiler}. All times are in nanoseconds.
+ *
+ * @author Philip Graf
+ */
+public final class Cost {
+
+    /**
+     * The activities whose costs are recorded.
+     */
+    public enum Category {
+        /** Applying a single rule to a file. The name of the cost is the id of the rule. */
+        RULE("Rule"),
+        /**
+         * Parsing a file and preparing its syntax tree, e.g. building the symbol table. The name of the cost is the
+         * language of the file.
+         */
+        PARSER("Parser"),
+        /** Replacing the markers of the analyzed files. */
+        MARKERS("Markers");
+
+        private final String label;
+
+        Category(final String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final Category category;
+    private final String name;
+    private final long count;
+    private final long cpuNanos;
+    private final long wallNanos;
+    private final long p95WallNanos;
+    private final long violations;
+
+    Cost(final Category category, final String name, final long count, final long cpuNanos, final long wallNanos,
+            final long p95WallNanos, final long violations) {
+        this.category = category;
+        this.name = name;
+        this.count = count;
+        this.cpuNanos = cpuNanos;
+        this.wallNanos = wallNanos;
+        this.p95WallNanos = p95WallNanos;
+        this.violations = violations;
+    }
+
+    public Category getCategory() {
+        return category;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return How many times the activity has been performed, e.g. to how many files a rule has been applied.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The CPU time spent on the activity or 0 if the JVM does not support measuring the CPU time of threads.
+     */
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public long getMeanWallNanos() {
+        return count == 0 ? 0 : wallNanos / count;
+    }
+
+    public long getP95WallNanos() {
+        return p95WallNanos;
+    }
+
+    /**
+     * @return The number of violations found by a rule. Always 0 for the other categories.
+     */
+    public long getViolations() {
+        return violations;
+    }
+
+}
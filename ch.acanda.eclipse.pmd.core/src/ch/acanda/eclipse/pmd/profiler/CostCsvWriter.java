@@ -0,0 +1,57 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.profiler;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Writes costs as comma separated values. The first line contains the column headers, every following line a single
+ * cost. Times are written in milliseconds.
+ *
+ * @author Philip Graf
+ */
+public final class CostCsvWriter {
+
+    private static final String HEADER = "Category,Name,Count,CPU time [ms],Wall time [ms],Mean wall time [ms],"
+            + "95th percentile wall time [ms],Violations";
+
+    private CostCsvWriter() {
+        // hide constructor of utility class
+    }
+
+    public static void write(final Iterable<Cost> costs, final Appendable out) throws IOException {
+        out.append(HEADER).append('\n');
+        for (final Cost cost : costs) {
+            out.append(cost.getCategory().getLabel()).append(',');
+            out.append(quote(cost.getName())).append(',');
+            out.append(Long.toString(cost.getCount())).append(',');
+            out.append(toMillis(cost.getCpuNanos())).append(',');
+            out.append(toMillis(cost.getWallNanos())).append(',');
+            out.append(toMillis(cost.getMeanWallNanos())).append(',');
+            out.append(toMillis(cost.getP95WallNanos())).append(',');
+            out.append(Long.toString(cost.getViolations())).append('\n');
+        }
+    }
+
+    static String toMillis(final long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String quote(final String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+}
@@ -0,0 +1,126 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.profiler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.acanda.eclipse.pmd.marker.MarkerUtil;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleViolation;
+
+/**
+ * Profiles the analysis of a single file. The profile is passed to the rules as an attribute of the rule context, so
+ * the rules can report their time. When the analysis is finished, the time that has not been spent in the rules is
+ * taken as the time it took to parse the file.
+ * <p>
+ * The profile always measures the wall time of the file, which costs next to nothing. Only if the build profiler is
+ * enabled when the profile is created, it also measures the CPU time and records the costs of the rules and the parser
+ * with the build profiler. A file is only analyzed by one thread at a time, so the profile is not thread-safe.
+ *
+ * @author Philip Graf
+ */
+public final class FileProfile {
+
+    private static final String ATTRIBUTE = FileProfile.class.getName();
+
+    private final BuildProfiler profiler;
+    private long startCpu;
+    private long startWall;
+    private long ruleCpu;
+    private long ruleWall;
+    private long parseWall;
+
+    /**
+     * @param profiler The profiler that records the costs of the rules and the parser if it is enabled, or
+     *            {@code null} if only the wall time of the file should be measured.
+     */
+    public FileProfile(final BuildProfiler profiler) {
+        this.profiler = profiler != null && profiler.isEnabled() ? profiler : null;
+    }
+
+    /**
+     * Attaches this profile to the rule context of a file and starts the clock.
+     */
+    public void attachTo(final RuleContext context) {
+        context.setAttribute(ATTRIBUTE, this);
+        startWall = System.nanoTime();
+        startCpu = currentCpuTime();
+    }
+
+    /**
+     * @return The profile attached to the rule context or a new profile that is not attached to any file if there is
+     *         none.
+     */
+    public static FileProfile of(final RuleContext context) {
+        final Object profile = context.getAttribute(ATTRIBUTE);
+        return profile instanceof FileProfile ? (FileProfile) profile : new FileProfile(null);
+    }
+
+    /**
+     * @return The CPU time of the current thread in nanoseconds, or 0 if this profile does not measure the CPU time.
+     */
+    public long currentCpuTime() {
+        return profiler == null ? 0 : BuildProfiler.currentThreadCpuTime();
+    }
+
+    /**
+     * Records the time it took to apply a rule to the file.
+     */
+    public void ruleCompleted(final String ruleId, final long cpuNanos, final long wallNanos) {
+        ruleWall += wallNanos;
+        if (profiler != null) {
+            ruleCpu += cpuNanos;
+            profiler.recordRule(ruleId, cpuNanos, wallNanos);
+        }
+    }
+
+    /**
+     * Finishes profiling the analysis of the file. The time that has not been spent in the rules is taken as the time
+     * it took to parse the file, and the violations are counted for the rules that found them.
+     *
+     * @param language The terse name of the language of the file.
+     * @param violations The violations found in the file.
+     */
+    public void finish(final String language, final Iterable<RuleViolation> violations) {
+        parseWall = Math.max(0, System.nanoTime() - startWall - ruleWall);
+        if (profiler != null) {
+            final long cpu = BuildProfiler.currentThreadCpuTime() - startCpu - ruleCpu;
+            profiler.recordParser(language, Math.max(0, cpu), parseWall);
+            final Map<String, Long> counts = new HashMap<>();
+            for (final RuleViolation violation : violations) {
+                final String ruleId = MarkerUtil.createRuleId(violation.getRule());
+                final Long count = counts.get(ruleId);
+                counts.put(ruleId, count == null ? 1L : count + 1);
+            }
+            for (final Map.Entry<String, Long> entry : counts.entrySet()) {
+                profiler.recordViolations(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return The wall time in nanoseconds it took to parse the file. Unless the build profiler is enabled, this
+     *         includes the time of the rules that PMD applied with its rule chain.
+     */
+    public long getParseNanos() {
+        return parseWall;
+    }
+
+    /**
+     * @return The wall time in nanoseconds the rules spent on the file.
+     */
+    public long getRuleNanos() {
+        return ruleWall;
+    }
+
+}
@@ -0,0 +1,63 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.profiler;
+
+/**
+ * The time it took to analyze a single file and to update its markers. All times are wall times in nanoseconds.
+ *
+ * @author Philip Graf
+ */
+public final class FileRecord {
+
+    private final String path;
+    private final long size;
+    private final long parseNanos;
+    private final long ruleNanos;
+    private final long markerNanos;
+
+    /**
+     * @param path The full path of the file in the workspace.
+     * @param size The size of the file in bytes.
+     */
+    public FileRecord(final String path, final long size, final long parseNanos, final long ruleNanos, final long markerNanos) {
+        this.path = path;
+        this.size = size;
+        this.parseNanos = parseNanos;
+        this.ruleNanos = ruleNanos;
+        this.markerNanos = markerNanos;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    public long getRuleNanos() {
+        return ruleNanos;
+    }
+
+    public long getMarkerNanos() {
+        return markerNanos;
+    }
+
+    public long getTotalNanos() {
+        return parseNanos + ruleNanos + markerNanos;
+    }
+
+}
@@ -0,0 +1,172 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.profiler;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Optional;
+
+import ch.acanda.eclipse.pmd.profiler.AnalysisEvent.Field;
+import ch.acanda.eclipse.pmd.profiler.AnalysisEvent.Type;
+
+/**
+ * Defines the analysis events with the Java Flight Recorder and creates, fills and commits them. The plug-in still
+ * runs on Java 7, so it cannot subclass {@code jdk.jfr.Event}. Instead the event types are defined at runtime with
+ * {@code jdk.jfr.EventFactory} and all calls to the JFR API are made through reflection.
+ *
+ * @author Philip Graf
+ */
+final class FlightRecorderBridge {
+
+    private static final String CATEGORY = "Eclipse PMD";
+    private static final String NAME_PREFIX = "ch.acanda.eclipse.pmd.";
+
+    private final Map<Type, Object> factories = new EnumMap<>(Type.class);
+    private final Map<Type, Object> eventTypes = new EnumMap<>(Type.class);
+
+    private final Method newEvent;
+    private final Method isEnabled;
+    private final Method begin;
+    private final Method end;
+    private final Method commit;
+    private final Method set;
+
+    private FlightRecorderBridge() throws ReflectiveOperationException {
+        final Class<?> factoryClass = load("jdk.jfr.EventFactory");
+        final Class<?> eventClass = load("jdk.jfr.Event");
+        final Class<?> eventTypeClass = load("jdk.jfr.EventType");
+        newEvent = factoryClass.getMethod("newEvent");
+        isEnabled = eventTypeClass.getMethod("isEnabled");
+        begin = eventClass.getMethod("begin");
+        end = eventClass.getMethod("end");
+        commit = eventClass.getMethod("commit");
+        set = eventClass.getMethod("set", int.class, Object.class);
+
+        final Method create = factoryClass.getMethod("create", List.class, List.class);
+        final Method getEventType = factoryClass.getMethod("getEventType");
+        final Annotations annotations = new Annotations();
+        final List<Object> fields = new ArrayList<>();
+        for (final Field field : Field.values()) {
+            fields.add(annotations.newField(field));
+        }
+        for (final Type type : Type.values()) {
+            final Object factory = create.invoke(null, annotations.newEventAnnotations(type), fields);
+            factories.put(type, factory);
+            eventTypes.put(type, getEventType.invoke(factory));
+        }
+    }
+
+    /**
+     * @return The bridge to the Java Flight Recorder or {@code Optional.absent()} if the runtime does not support it.
+     */
+    static Optional<FlightRecorderBridge> create() {
+        try {
+            return Optional.of(new FlightRecorderBridge());
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            return Optional.absent();
+        }
+    }
+
+    private static Class<?> load(final String className) throws ClassNotFoundException {
+        // the JFR classes are not visible to the bundle class loader
+        return Class.forName(className, true, ClassLoader.getSystemClassLoader());
+    }
+
+    /**
+     * @return {@code true} if a running recording records the events of the provided type.
+     */
+    boolean isEnabled(final Type type) {
+        return (Boolean) invoke(isEnabled, eventTypes.get(type));
+    }
+
+    /**
+     * Creates a new event of the provided type and starts its clock.
+     */
+    Object begin(final Type type) {
+        final Object event = invoke(newEvent, factories.get(type));
+        invoke(begin, event);
+        return event;
+    }
+
+    void set(final Object event, final Field field, final Object value) {
+        invoke(set, event, field.ordinal(), value);
+    }
+
+    /**
+     * Stops the clock of the event and commits it to the running recordings.
+     */
+    void commit(final Object event) {
+        invoke(end, event);
+        invoke(commit, event);
+    }
+
+    private static Object invoke(final Method method, final Object target, final Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException("Cannot access " + method, e);
+        } catch (final InvocationTargetException e) {
+            throw new IllegalStateException("Failed to invoke " + method, e.getCause());
+        }
+    }
+
+    /**
+     * Creates the annotations that describe the event types and their fields.
+     */
+    private static final class Annotations {
+
+        private final Constructor<?> newAnnotation;
+        private final Constructor<?> newValueDescriptor;
+        private final Class<? extends Annotation> name;
+        private final Class<? extends Annotation> label;
+        private final Class<? extends Annotation> description;
+        private final Class<? extends Annotation> category;
+        private final Class<? extends Annotation> dataAmount;
+
+        Annotations() throws ReflectiveOperationException {
+            newAnnotation = load("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+            newValueDescriptor = load("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+            name = load("jdk.jfr.Name").asSubclass(Annotation.class);
+            label = load("jdk.jfr.Label").asSubclass(Annotation.class);
+            description = load("jdk.jfr.Description").asSubclass(Annotation.class);
+            category = load("jdk.jfr.Category").asSubclass(Annotation.class);
+            dataAmount = load("jdk.jfr.DataAmount").asSubclass(Annotation.class);
+        }
+
+        List<Object> newEventAnnotations(final Type type) throws ReflectiveOperationException {
+            final List<Object> annotations = new ArrayList<>();
+            annotations.add(newAnnotation.newInstance(name, NAME_PREFIX + type.getName()));
+            annotations.add(newAnnotation.newInstance(label, type.getLabel()));
+            annotations.add(newAnnotation.newInstance(description, type.getDescription()));
+            annotations.add(newAnnotation.newInstance(category, new String[] { CATEGORY }));
+            return annotations;
+        }
+
+        Object newField(final Field field) throws ReflectiveOperationException {
+            final List<Object> annotations = new ArrayList<>();
+            annotations.add(newAnnotation.newInstance(label, field.getLabel()));
+            if (field == Field.BYTES) {
+                annotations.add(newAnnotation.newInstance(dataAmount, "BYTES"));
+            }
+            return newValueDescriptor.newInstance(field.getType(), field.getName(), annotations);
+        }
+
+    }
+
+}
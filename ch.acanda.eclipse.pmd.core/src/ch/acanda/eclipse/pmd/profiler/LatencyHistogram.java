@@ -0,0 +1,110 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.profiler;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations with a fixed relative precision. Every power of two is divided into eight buckets of equal
+ * width, so a percentile is accurate to within 12.5% regardless of the magnitude of the durations. The histogram uses
+ * a fixed amount of memory and recording a duration neither allocates nor locks, so it can be updated by several
+ * threads at the same time.
+ *
+ * @author Philip Graf
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * @param nanos The duration in nanoseconds. Negative durations are recorded as 0.
+     */
+    public void record(final long nanos) {
+        counts.incrementAndGet(getIndex(Math.max(0, nanos)));
+    }
+
+    /**
+     * @return The number of recorded durations.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile The percentile between 0 and 100.
+     * @return The duration in nanoseconds at the provided percentile, i.e. the midpoint of the bucket that contains it,
+     *         or 0 if no duration has been recorded.
+     */
+    public long getPercentile(final double percentile) {
+        final long[] snapshot = getCounts();
+        long total = 0;
+        for (final long count : snapshot) {
+            total += count;
+        }
+        final long rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen > 0 && seen >= rank) {
+                return (getLowerBound(i) + getUpperBound(i)) / 2;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return A copy of the number of durations in each bucket. The bounds of a bucket are returned by
+     *         {@link #getLowerBound(int)} and {@link #getUpperBound(int)}.
+     */
+    public long[] getCounts() {
+        final long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return The smallest duration in nanoseconds of the bucket with the provided index.
+     */
+    public static long getLowerBound(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    }
+
+    /**
+     * @return The largest duration in nanoseconds of the bucket with the provided index.
+     */
+    public static long getUpperBound(final int index) {
+        return index + 1 < BUCKETS ? getLowerBound(index + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    static int getIndex(final long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        final int shift = Long.SIZE - Long.numberOfLeadingZeros(nanos) - 1 - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (nanos >>> shift) - SUB_BUCKETS;
+    }
+
+}
@@ -0,0 +1,283 @@
+// =====================================================================
+//
+// Copyright (C) 2012 - 2020, Philip Graf
+//
+// All rights reserved. This program and the accompanying materials
+// are made available under the terms of the Eclipse Public License v1.0
+// which accompanies this distribution, and is available at
+// http://www.eclipse.org/legal/epl-v10.html
+//
+// =====================================================================
+
+package ch.acanda.eclipse.pmd.profiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.ui.ISharedImages;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.part.ViewPart;
+
+import ch.acanda.eclipse.pmd.PMDPlugin;
+import ch.acanda.eclipse.pmd.ui.util.SelectionAdapter;
+
+/**
+ * Shows the costs recorded by the {@link BuildProfiler}: the CPU and wall time spent on each rule, on parsing the files
+ * of each language and on updating the markers. The costs can be sorted by every column and exported as comma
+ * separated values. The view refreshes itself every few seconds while it is open.
+ *
+ * @author Philip Graf
+ */
+public final class RuleCostView extends ViewPart {
+
+    public static final String ID = "ch.acanda.eclipse.pmd.profiler.RuleCostView";
+
+    private static final int REFRESH_INTERVAL_MILLIS = 2000;
+
+    private final BuildProfiler profiler = PMDPlugin.getDefault().getBuildProfiler();
+
+    private TableViewer viewer;
+
+    private final Runnable refresher = new Refresher();
+
+    @Override
+    public void createPartControl(final Composite parent) {
+        viewer = new TableViewer(parent, SWT.FULL_SELECTION | SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL);
+        final Table table = viewer.getTable();
+        table.setHeaderVisible(true);
+        table.setLinesVisible(true);
+        final CostComparator comparator = new CostComparator();
+        for (final Column column : Column.values()) {
+            final TableViewerColumn viewerColumn = new TableViewerColumn(viewer, column.style);
+            viewerColumn.getColumn().setText(column.label);
+            viewerColumn.getColumn().setWidth(column.width);
+            viewerColumn.getColumn().setMoveable(true);
+            viewerColumn.getColumn().addSelectionListener(new SortListener(comparator, column));
+            viewerColumn.setLabelProvider(new CostLabelProvider(column));
+        }
+        viewer.setContentProvider(ArrayContentProvider.getInstance());
+        viewer.setComparator(comparator);
+        table.setSortColumn(table.getColumn(Column.WALL_TIME.ordinal()));
+        table.setSortDirection(SWT.DOWN);
+
+        final IToolBarManager toolBar = getViewSite().getActionBars().getToolBarManager();
+        toolBar.add(new ToggleProfilingAction());
+        toolBar.add(new ResetAction());
+        toolBar.add(new ExportAction());
+
+        refresher.run();
+    }
+
+    @Override
+    public void setFocus() {
+        viewer.getControl().setFocus();
+    }
+
+    private void refresh() {
+        viewer.setInput(profiler.getCosts());
+    }
+
+    /**
+     * Refreshes the view and schedules itself again until the view is closed.
+     */
+    private final class Refresher implements Runnable {
+        @Override
+        public void run() {
+            if (!viewer.getControl().isDisposed()) {
+                refresh();
+                viewer.getControl().getDisplay().timerExec(REFRESH_INTERVAL_MILLIS, this);
+            }
+        }
+    }
+
+    private enum Column {
+        CATEGORY("Category", SWT.LEFT, 80),
+        NAME("Name", SWT.LEFT, 300),
+        COUNT("Count", SWT.RIGHT, 70),
+        CPU_TIME("CPU [ms]", SWT.RIGHT, 90),
+        WALL_TIME("Wall [ms]", SWT.RIGHT, 90),
+        MEAN_WALL_TIME("Mean [ms]", SWT.RIGHT, 80),
+        P95_WALL_TIME("P95 [ms]", SWT.RIGHT, 80),
+        VIOLATIONS("Violations", SWT.RIGHT, 80);
+
+        private final String label;
+        private final int style;
+        private final int width;
+
+        Column(final String label, final int style, final int width) {
+            this.label = label;
+            this.style = style;
+            this.width = width;
+        }
+
+        @SuppressWarnings({ "rawtypes", "PMD.CyclomaticComplexity" })
+        Comparable getValue(final Cost cost) {
+            switch (this) {
+                case CATEGORY:
+                    return cost.getCategory().getLabel();
+                case NAME:
+                    return cost.getName();
+                case COUNT:
+                    return cost.getCount();
+                case CPU_TIME:
+                    return cost.getCpuNanos();
+                case WALL_TIME:
+                    return cost.getWallNanos();
+                case MEAN_WALL_TIME:
+                    return cost.getMeanWallNanos();
+                case P95_WALL_TIME:
+                    return cost.getP95WallNanos();
+                default:
+                    return cost.getViolations();
+            }
+        }
+
+        String getText(final Cost cost) {
+            switch (this) {
+                case CPU_TIME:
+                case WALL_TIME:
+                case MEAN_WALL_TIME:
+                case P95_WALL_TIME:
+                    return CostCsvWriter.toMillis((Long) getValue(cost));
+                default:
+                    return String.valueOf(getValue(cost));
+            }
+        }
+    }
+
+    private static final class CostLabelProvider extends ColumnLabelProvider {
+
+        private final Column column;
+
+        CostLabelProvider(final Column column) {
+            this.column = column;
+        }
+
+        @Override
+        public String getText(final Object element) {
+            return column.getText((Cost) element);
+        }
+
+    }
+
+    private static final class CostComparator extends ViewerComparator {
+
+        private Column column = Column.WALL_TIME;
+        private boolean descending = true;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compare(final Viewer viewer, final Object e1, final Object e2) {
+            final int result = column.getValue((Cost) e1).compareTo(column.getValue((Cost) e2));
+            return descending ? -result : result;
+        }
+
+    }
+
+    /**
+     * Sorts the costs by a column. Selecting the column again reverses the order.
+     */
+    private final class SortListener extends SelectionAdapter {
+
+        private final CostComparator comparator;
+        private final Column column;
+
+        SortListener(final CostComparator comparator, final Column column) {
+            this.comparator = comparator;
+            this.column = column;
+        }
+
+        @Override
+        public void widgetSelected(final SelectionEvent e) {
+            comparator.descending = comparator.column != column || !comparator.descending;
+            comparator.column = column;
+            final Table table = viewer.getTable();
+            table.setSortColumn((TableColumn) e.widget);
+            table.setSortDirection(comparator.descending ? SWT.DOWN : SWT.UP);
+            viewer.refresh();
+        }
+
+    }
+
+    /**
+     * Enables or disables the profiler. The rules are profiled from the next file that is analyzed on.
+     */
+    private final class ToggleProfilingAction extends Action {
+
+        ToggleProfilingAction() {
+            super("Profile Builds", IAction.AS_CHECK_BOX);
+            setToolTipText("Records the costs of the rules while the projects are built. This slows down the builds.");
+            setImageDescriptor(PlatformUI.getWorkbench().getSharedImages().getImageDescriptor(ISharedImages.IMG_TOOL_FORWARD));
+            setChecked(profiler.isEnabled());
+        }
+
+        @Override
+        public void run() {
+            profiler.setEnabled(isChecked());
+        }
+
+    }
+
+    private final class ResetAction extends Action {
+
+        ResetAction() {
+            super("Reset");
+            setToolTipText("Discards the recorded costs");
+            setImageDescriptor(PlatformUI.getWorkbench().getSharedImages().getImageDescriptor(ISharedImages.IMG_ELCL_REMOVEALL));
+        }
+
+        @Override
+        public void run() {
+            profiler.reset();
+            refresh();
+        }
+
+    }
+
+    private final class ExportAction extends Action {
+
+        ExportAction() {
+            super("Export as CSV...");
+            setToolTipText("Exports the recorded costs as comma separated values");
+            setImageDescriptor(PlatformUI.getWorkbench().getSharedImages().getImageDescriptor(ISharedImages.IMG_ETOOL_SAVEAS_EDIT));
+        }
+
+        @Override
+        public void run() {
+            final FileDialog dialog = new FileDialog(getSite().getShell(), SWT.SAVE);
+            dialog.setFilterExtensions(new String[] { "*.csv" });
+            dialog.setFileName("pmd-rule-cost.csv");
+            dialog.setOverwrite(true);
+            final String path = dialog.open();
+            if (path != null) {
+                try (Writer writer = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8)) {
+                    CostCsvWriter.write(profiler.getCosts(), writer);
+                } catch (final IOException e) {
+                    PMDPlugin.getDefault().error("Could not export the PMD rule costs to " + path, e);
+                    MessageDialog.openError(getSite().getShell(), "PMD Rule Cost", "Could not export the rule costs: " + e.getMessage());
+                }
+            }
+        }
+
+    }
+
+}
@@ -12,6 +12,7 @@
 package ch.acanda.eclipse.pmd.repository;
 
 import static ch.acanda.eclipse.pmd.repository.ProjectModelSerializer.ATTRIBUTE_NAME_NAME;
+import static ch.acanda.eclipse.pmd.repository.ProjectModelSerializer.ATTRIBUTE_NAME_PATTERN;
 import static ch.acanda.eclipse.pmd.repository.ProjectModelSerializer.ATTRIBUTE_NAME_REF;
 import static ch.acanda.eclipse.pmd.repository.ProjectModelSerializer.ATTRIBUTE_NAME_REFCONTEXT;
 import static ch.acanda.eclipse.pmd.repository.ProjectModelSerializer.ATTRIBUTE_VALUE_FILESYSTEM;
@@ -28,6 +29,7 @@ import ch.acanda.eclipse.pmd.domain.LocationContext;
 import ch.acanda.eclipse.pmd.domain.ProjectModel;
 import ch.acanda.eclipse.pmd.domain.RuleSetModel;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSet.Builder;
 
@@ -40,11 +42,15 @@ final class ProjectConfigurationContentHandler extends DefaultHandler {
 
     private boolean isPMDEnabled;
     private final Builder<RuleSetModel> builder = ImmutableSet.builder();
+    private final ImmutableList.Builder<String> includePatterns = ImmutableList.builder();
+    private final ImmutableList.Builder<String> excludePatterns = ImmutableList.builder();
 
     public ProjectModel getProjectModel(final String projectName) {
         final ProjectModel model = new ProjectModel(projectName);
         model.setPMDEnabled(isPMDEnabled);
         model.setRuleSets(builder.build());
+        model.setIncludePatterns(includePatterns.build());
+        model.setExcludePatterns(excludePatterns.build());
         return model;
     }
 
@@ -60,6 +66,14 @@ final class ProjectConfigurationContentHandler extends DefaultHandler {
                 builder.add(createRuleSet(attributes));
                 break;
 
+            case ProjectModelSerializer.TAG_NAME_INCLUDE:
+                includePatterns.add(attributes.getValue(ATTRIBUTE_NAME_PATTERN));
+                break;
+
+            case ProjectModelSerializer.TAG_NAME_EXCLUDE:
+                excludePatterns.add(attributes.getValue(ATTRIBUTE_NAME_PATTERN));
+                break;
+
             default:
                 break;
         }
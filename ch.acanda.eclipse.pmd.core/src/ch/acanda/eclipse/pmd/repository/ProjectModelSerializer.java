@@ -26,6 +26,7 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
 import com.google.common.base.Function;
+import com.google.common.xml.XmlEscapers;
 
 import ch.acanda.eclipse.pmd.PMDPlugin;
 import ch.acanda.eclipse.pmd.domain.ProjectModel;
@@ -48,9 +49,15 @@ import ch.acanda.eclipse.pmd.domain.RuleSetModel;
  *     <ruleset name="Sonar"
  *              ref="http://example.org/profiles/export?format=pmd&language=java&name=MyProfile" refcontext="remote" />
  *   </rulesets>
+ *   <files>
+ *     <include pattern="src/**" />
+ *     <exclude pattern="src/generated/**" />
+ *   </files>
  * </eclipse-pmd>
  * }
  * </pre>
+ * The {@code <files>} element has been added with version 0.9 of the schema. A configuration without file patterns is
+ * still written with version 0.8, so the configurations of existing projects do not change.
  *
  * @author Philip Graf
  */
@@ -60,6 +67,9 @@ public class ProjectModelSerializer {
     static final String TAG_NAME_ANALYSIS = "analysis";
     static final String TAG_NAME_RULESETS = "rulesets";
     static final String TAG_NAME_RULESET = "ruleset";
+    static final String TAG_NAME_FILES = "files";
+    static final String TAG_NAME_INCLUDE = "include";
+    static final String TAG_NAME_EXCLUDE = "exclude";
     static final String ATTRIBUTE_VALUE_REMOTE = "remote";
     static final String ATTRIBUTE_VALUE_FILESYSTEM = "filesystem";
     static final String ATTRIBUTE_VALUE_PROJECT = "project";
@@ -68,7 +78,9 @@ public class ProjectModelSerializer {
     static final String ATTRIBUTE_NAME_REF = "ref";
     static final String ATTRIBUTE_NAME_REFCONTEXT = "refcontext";
     static final String ATTRIBUTE_NAME_NAME = "name";
+    static final String ATTRIBUTE_NAME_PATTERN = "pattern";
     static final String SCHEMA_VERSION = "0.8";
+    static final String SCHEMA_VERSION_WITH_FILES = "0.9";
 
     public static final Charset ENCODING = StandardCharsets.UTF_8;
 
@@ -77,12 +89,13 @@ public class ProjectModelSerializer {
     public String serialize(final ProjectModel model) {
         final StringWriter result = new StringWriter(1024);
         final PrintWriter writer = new PrintWriter(result);
+        final boolean hasFilePatterns = !model.getIncludePatterns().isEmpty() || !model.getExcludePatterns().isEmpty();
         writer.format("<?xml version=\"1.0\" encoding=\"%s\"?>\n", ENCODING);
         writer.format("<%s xmlns=\"http://acanda.ch/eclipse-pmd/%2$s\""
                 + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
                 + " xsi:schemaLocation=\"http://acanda.ch/eclipse-pmd/%2$s"
                 + " http://acanda.ch/eclipse-pmd/eclipse-pmd-%2$s.xsd\">\n",
-                TAG_NAME_ECLIPSE_PMD, SCHEMA_VERSION);
+                TAG_NAME_ECLIPSE_PMD, hasFilePatterns ? SCHEMA_VERSION_WITH_FILES : SCHEMA_VERSION);
         writer.format("  <%s %s=\"%b\" />\n", TAG_NAME_ANALYSIS, ATTRIBUTE_NAME_ENABLED, model.isPMDEnabled());
         if (!model.getRuleSets().isEmpty()) {
             writer.format("  <%s>\n", TAG_NAME_RULESETS);
@@ -91,10 +104,22 @@ public class ProjectModelSerializer {
             }
             writer.format("  </%s>\n", TAG_NAME_RULESETS);
         }
+        if (hasFilePatterns) {
+            writer.format("  <%s>\n", TAG_NAME_FILES);
+            writePatterns(writer, TAG_NAME_INCLUDE, model.getIncludePatterns());
+            writePatterns(writer, TAG_NAME_EXCLUDE, model.getExcludePatterns());
+            writer.format("  </%s>\n", TAG_NAME_FILES);
+        }
         writer.format("</%s>", TAG_NAME_ECLIPSE_PMD);
         return result.toString();
     }
 
+    private static void writePatterns(final PrintWriter writer, final String tagName, final Iterable<String> patterns) {
+        for (final String pattern : patterns) {
+            writer.format("    <%s %s=\"%s\" />\n", tagName, ATTRIBUTE_NAME_PATTERN, XmlEscapers.xmlAttributeEscaper().escape(pattern));
+        }
+    }
+
     public ProjectModel deserialize(final InputStream configurationStream, final String projectName) throws IOException {
 
         final ProjectConfigurationContentHandler contentHandler = new ProjectConfigurationContentHandler();
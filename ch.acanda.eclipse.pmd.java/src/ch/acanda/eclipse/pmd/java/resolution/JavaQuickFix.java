@@ -60,6 +60,7 @@ import org.eclipse.ui.views.markers.WorkbenchMarkerResolution;
 import com.google.common.base.Optional;
 
 import ch.acanda.eclipse.pmd.marker.PMDMarker;
+import ch.acanda.eclipse.pmd.profiler.AnalysisEvent;
 import ch.acanda.eclipse.pmd.ui.util.PMDPluginImages;
 
 /**
@@ -174,6 +175,10 @@ public abstract class JavaQuickFix<T extends ASTNode> extends WorkbenchMarkerRes
         final ICompilationUnit compilationUnit = optionalCompilationUnit.get();
         ITextFileBufferManager bufferManager = null;
         final IPath path = compilationUnit.getPath();
+        final AnalysisEvent event = AnalysisEvent.begin(AnalysisEvent.Type.QUICK_FIX).resource(file);
+        if (event.isEnabled() && file.getLocation() != null) {
+            event.bytes(file.getLocation().toFile().length());
+        }
 
         try {
             bufferManager = FileBuffers.getTextFileBufferManager();
@@ -238,6 +243,7 @@ public abstract class JavaQuickFix<T extends ASTNode> extends WorkbenchMarkerRes
                     // PMDPlugin.getDefault().error("Error processing quickfix", e);
                 }
             }
+            event.commit();
         }
     }
 